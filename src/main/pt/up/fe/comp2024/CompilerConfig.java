@@ -1,5 +1,7 @@
 package pt.up.fe.comp2024;
 
+import pt.up.fe.comp2024.utils.Diagnostics;
+
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
@@ -10,6 +12,13 @@ public class CompilerConfig {
     private static final String INPUT_FILE = "inputFile";
     private static final String OPTIMIZE = "optimize";
     private static final String REGISTER = "registerAllocation";
+    private static final String OUTPUT_DIR = "outputDir";
+    private static final String RUN = "run";
+    private static final String PROFILE = "profile";
+    private static final String PROFILE_DATA = "profileData";
+    private static final String DUMP_OLLIR = "dumpOllir";
+    private static final String DUMP_JASMIN = "dumpJasmin";
+    private static final String LOG_LEVEL = "logLevel";
 
 
     static Map<String, String> shortToLong = new HashMap<>();
@@ -18,6 +27,19 @@ public class CompilerConfig {
         shortToLong.put("i", CompilerConfig.INPUT_FILE);
         shortToLong.put("o", CompilerConfig.OPTIMIZE);
         shortToLong.put("r", CompilerConfig.REGISTER);
+        shortToLong.put("d", CompilerConfig.OUTPUT_DIR);
+        shortToLong.put("x", CompilerConfig.RUN);
+    }
+
+    // options only available in the long form, e.g. '--dump-ollir=out.ollir'
+    static Map<String, String> longOptions = new HashMap<>();
+
+    static {
+        longOptions.put("dump-ollir", CompilerConfig.DUMP_OLLIR);
+        longOptions.put("dump-jasmin", CompilerConfig.DUMP_JASMIN);
+        longOptions.put("log-level", CompilerConfig.LOG_LEVEL);
+        longOptions.put("profile", CompilerConfig.PROFILE);
+        longOptions.put("profile-data", CompilerConfig.PROFILE_DATA);
     }
 
 
@@ -41,6 +63,82 @@ public class CompilerConfig {
     }
 
 
+    public static File getOutputDir(Map<String, String> config) {
+        return new File(config.getOrDefault(OUTPUT_DIR, "."));
+    }
+
+
+    public static boolean getRun(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(RUN, "false"));
+    }
+
+
+    /**
+     * @return true if the class counts the calls and the branches of its methods, and writes them to a file when the
+     * program exits
+     */
+    public static boolean getProfile(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(PROFILE, "false"));
+    }
+
+    /**
+     * @return the file a class compiled with profiling writes its profile to, named after the class, next to the class
+     * file; empty if the class is compiled without profiling
+     */
+    public static Optional<File> getProfileOutput(Map<String, String> config, String className) {
+        if (!getProfile(config)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new File(getOutputDir(config), className + ".profile").getAbsoluteFile());
+    }
+
+    /**
+     * @return the profile written by a class compiled with '--profile', which guides the optimizations
+     */
+    public static Optional<File> getProfileData(Map<String, String> config) {
+        var profileData = config.get(PROFILE_DATA);
+
+        if (profileData == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new File(profileData));
+    }
+
+    /**
+     * @return the file the OLLIR code is written to, by default named after the class, in the output directory
+     */
+    public static Optional<File> getDumpOllir(Map<String, String> config, String className) {
+        return getDumpFile(config, DUMP_OLLIR, className + ".ollir");
+    }
+
+    /**
+     * @return the file the Jasmin code is written to, by default named after the class, in the output directory
+     */
+    public static Optional<File> getDumpJasmin(Map<String, String> config, String className) {
+        return getDumpFile(config, DUMP_JASMIN, className + ".j");
+    }
+
+    private static Optional<File> getDumpFile(Map<String, String> config, String option, String defaultName) {
+        var dumpFile = config.get(option);
+
+        if (dumpFile == null || dumpFile.equals("false")) {
+            return Optional.empty();
+        }
+
+        if (dumpFile.equals("true")) {
+            return Optional.of(new File(getOutputDir(config), defaultName));
+        }
+
+        return Optional.of(new File(dumpFile));
+    }
+
+    public static Diagnostics.Level getLogLevel(Map<String, String> config) {
+        return Diagnostics.Level.fromString(config.getOrDefault(LOG_LEVEL, "warn"));
+    }
+
+
     public static Map<String, String> getDefault() {
 
         var config = new HashMap<String, String>();
@@ -72,6 +170,11 @@ public class CompilerConfig {
                 throw new RuntimeException("Arguments should start with '-'");
             }
 
+            if (arg.startsWith("--")) {
+                parseLongOpt(arg, config);
+                continue;
+            }
+
             String shortOption = arg.substring(1, 2);
             if (!isShortOpt(shortOption)) {
                 throw new RuntimeException("Unrecognized option '-" + shortOption + "'");
@@ -80,10 +183,12 @@ public class CompilerConfig {
             String value = "true";
             if (arg.length() > 2) {
                 String equalSign = arg.substring(2, 3);
-                if (equalSign.equals("=")) {
-
-                    value = arg.substring(3);
+                if (!equalSign.equals("=")) {
+                    throw new RuntimeException("Unrecognized option '" + arg + "', expected '-" + shortOption
+                            + "' or '-" + shortOption + "=<VALUE>'");
                 }
+
+                value = arg.substring(3);
             }
 
             config.put(getLongOpt(shortOption), value);
@@ -106,9 +211,30 @@ public class CompilerConfig {
         // Verify if values are valid
         getOptimize(config);
         getRegisterAllocation(config);
+        getRun(config);
+        getProfile(config);
+        getLogLevel(config);
+
+        var profileData = getProfileData(config);
+        if (profileData.isPresent() && !profileData.get().isFile()) {
+            throw new RuntimeException("Could not find profile '" + profileData.get() + "'");
+        }
 
         return config;
     }
 
+    private static void parseLongOpt(String arg, Map<String, String> config) {
+        int equalSign = arg.indexOf('=');
+
+        String longOption = equalSign == -1 ? arg.substring(2) : arg.substring(2, equalSign);
+        if (!longOptions.containsKey(longOption)) {
+            throw new RuntimeException("Unrecognized option '--" + longOption + "'");
+        }
+
+        String value = equalSign == -1 ? "true" : arg.substring(equalSign + 1);
+
+        config.put(longOptions.get(longOption), value);
+    }
+
 
 }
@@ -1,17 +1,25 @@
 package pt.up.fe.comp2024;
 
+import org.specs.comp.ollir.ClassUnit;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
-import pt.up.fe.comp.jmm.jasmin.JasminResult;
-import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
-import pt.up.fe.comp2024.backend.JasminBackendImpl;
+import pt.up.fe.comp2024.backend.ClassFileWriter;
+import pt.up.fe.comp2024.backend.JasminClass;
+import pt.up.fe.comp2024.backend.JasminGenerator;
+import pt.up.fe.comp2024.backend.JasminRunner;
 import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
+import pt.up.fe.comp2024.optimization.OllirPrinter;
+import pt.up.fe.comp2024.optimization.Profile;
 import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.comp2024.utils.Diagnostics;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsSystem;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Map;
 
 public class Launcher {
@@ -20,6 +28,7 @@ public class Launcher {
         SpecsSystem.programStandardInit();
 
         Map<String, String> config = CompilerConfig.parseArgs(args);
+        Diagnostics.setLevel(CompilerConfig.getLogLevel(config));
 
         var inputFile = CompilerConfig.getInputFile(config).orElseThrow();
         if (!inputFile.isFile()) {
@@ -41,21 +50,51 @@ public class Launcher {
         TestUtils.noErrors(semanticsResult.getReports());
 
 
-        // Optimization stage
+        // Optimization stage, the OLLIR class is built directly without going through OLLIR code
         JmmOptimizationImpl ollirGen = new JmmOptimizationImpl();
-        OllirResult ollirResult = ollirGen.toOllir(semanticsResult);
-        TestUtils.noErrors(ollirResult.getReports());
+        ollirGen.optimize(semanticsResult);
+        ClassUnit ollirClass = ollirGen.toClassUnit(semanticsResult);
 
-        // Print OLLIR code
-        //System.out.println(ollirResult.getOllirCode());
+        // an instrumented class keeps the labels of the OLLIR code, so its profile can be matched to a later build
+        boolean profile = CompilerConfig.getProfile(config);
 
-        // Code generation stage
-        JasminBackendImpl jasminGen = new JasminBackendImpl();
-        JasminResult jasminResult = jasminGen.toJasmin(ollirResult);
-        TestUtils.noErrors(jasminResult.getReports());
+        if (CompilerConfig.getOptimize(config) && !profile) {
+            var profileData = CompilerConfig.getProfileData(config).map(Profile::read).orElse(Profile.NONE);
+            ollirGen.optimize(ollirClass, profileData);
+        }
+
+        var className = ollirClass.getClassName();
+
+        // Dump OLLIR code, printed from the class that is compiled
+        CompilerConfig.getDumpOllir(config, className)
+                .ifPresent(file -> writeFile(file, OllirPrinter.print(ollirClass).getBytes()));
+
+        // Code generation stage, the class file is written directly without assembling Jasmin code
+        var profileOutput = CompilerConfig.getProfileOutput(config, className);
+        JasminGenerator jasminGen = new JasminGenerator(ollirClass, profileOutput);
+        JasminClass jasminClass = jasminGen.buildClass();
+        byte[] classFile = new ClassFileWriter(jasminClass).write();
+
+        writeFile(new File(CompilerConfig.getOutputDir(config), className + ".class"), classFile);
+
+        // Dump Jasmin code, written from the same class as the class file
+        CompilerConfig.getDumpJasmin(config, className)
+                .ifPresent(file -> writeFile(file, jasminGen.build().getBytes()));
+
+        // Run the compiled class inside this JVM
+        if (CompilerConfig.getRun(config)) {
+            JasminRunner.run(className, classFile);
+        }
+    }
+
+    private static void writeFile(File file, byte[] contents) {
+        try {
+            Files.write(file.toPath(), contents);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write file '" + file + "'", e);
+        }
 
-        // Print Jasmin code
-        //System.out.println(jasminResult.getJasminCode());
+        Diagnostics.info(() -> "Wrote " + file);
     }
 
 }
@@ -6,6 +6,7 @@ import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.utils.Diagnostics;
 
 import java.util.List;
 import java.util.Objects;
@@ -111,6 +112,16 @@ public class TypeUtils {
             return new Type("1", false);
         }
 
+        return getOperatorType(operator);
+    }
+
+    /**
+     * Gets the type of the result of a binary operator, without checking the types of its operands.
+     *
+     * @param operator
+     * @return
+     */
+    public static Type getOperatorType(String operator) {
         return switch (operator) {
             case "+", "-", "*", "/" ->
                     new Type("int", false);
@@ -134,9 +145,18 @@ public class TypeUtils {
     }
 
     private static Type getVarExprType(JmmNode varRefExpr, SymbolTable table) {
-        String varName = varRefExpr.get("name");
-        String currentMethod = findCurrentMethodName(varRefExpr);
+        return getVarType(varRefExpr.get("name"), findCurrentMethodName(varRefExpr), table);
+    }
 
+    /**
+     * Gets the type of a variable used in the given method, without looking for the method in the tree.
+     *
+     * @param varName
+     * @param currentMethod
+     * @param table
+     * @return
+     */
+    public static Type getVarType(String varName, String currentMethod, SymbolTable table) {
         //Var is a local variable
         List<Symbol> locals = table.getLocalVariables(currentMethod);
 
@@ -220,12 +240,12 @@ public class TypeUtils {
             if (mNode.getAttributes().contains("name")) {
                 return mNode.get("name");
             } else {
-                System.out.println("Method node does not contain 'name' attribute: " + mNode);
+                Diagnostics.debug(() -> "Method node does not contain 'name' attribute: " + mNode);
                 return "main";
             }
 
         } else {
-            System.out.println("Failed to find METHOD_DECL ancestor for node: " + node);
+            Diagnostics.debug(() -> "Failed to find METHOD_DECL ancestor for node: " + node);
             return "main";
         }
     }
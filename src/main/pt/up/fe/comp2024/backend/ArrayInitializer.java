@@ -0,0 +1,149 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+import org.specs.comp.ollir.tree.TreeNode;
+import pt.up.fe.comp2024.optimization.OptUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.getDef;
+import static pt.up.fe.comp2024.optimization.InstructionUtils.getUses;
+
+/**
+ * A new array followed by the stores of its first elements, in order, e.g. the code of {@code [1, 2, a]} or of the
+ * arguments of a varargs call: {@code t :=.array.i32 new(array, 3.i32).array.i32; t[0.i32].i32 :=.i32 1.i32; ...}.
+ * <p>
+ * The stored values are literals, other variables, or a variable computed right before the store, e.g.
+ * {@code tmp1.i32 :=.i32 a.i32 +.i32 1.i32; t[2.i32].i32 :=.i32 tmp1.i32}. The array can then be kept on the stack
+ * while they run and be stored in its variable at the end, and the temporaries only read by the store are never
+ * stored.
+ *
+ * @param dest   the variable that holds the array
+ * @param length the length of the array
+ * @param values the values stored in the first elements of the array: elements, the right-hand sides that compute
+ *               them, or the assignments of the variables that also keep them
+ * @param size   the number of instructions after the new array that belong to the initializer
+ */
+record ArrayInitializer(Operand dest, int length, List<TreeNode> values, int size) {
+
+    /**
+     * @return the initializer that starts at the given position of the method, if any
+     */
+    static Optional<ArrayInitializer> match(Method method, int index) {
+        var code = method.getInstructions();
+
+        if (!(code.get(index) instanceof AssignInstruction assign)
+                || !(assign.getRhs() instanceof CallInstruction call)
+                || call.getInvocationType() != CallType.NEW
+                || call.getCaller().getType().getTypeOfElement() != ElementType.ARRAYREF
+                || !(assign.getDest() instanceof Operand dest) || dest instanceof ArrayOperand
+                || !(call.getArguments().get(0) instanceof LiteralElement size)) {
+            return Optional.empty();
+        }
+
+        int length = Integer.parseInt(size.getLiteral());
+        var values = new ArrayList<TreeNode>();
+
+        int next = index + 1;
+        while (next < code.size() && values.size() < length) {
+            var store = getStore(method, next, dest.getName(), values.size());
+            if (store.isPresent()) {
+                values.add(store.get());
+                next++;
+                continue;
+            }
+
+            var computed = getComputedStore(method, next, dest.getName(), values.size());
+            if (computed.isEmpty()) {
+                break;
+            }
+
+            values.add(computed.get());
+            next += 2;
+        }
+
+        return Optional.of(new ArrayInitializer(dest, length, values, next - index - 1));
+    }
+
+    /**
+     * @return the value the instruction at the given position stores in the given element of the array, if it is a
+     * literal or another variable and no jump leads to the instruction
+     */
+    private static Optional<Element> getStore(Method method, int position, String array, int index) {
+        var instruction = method.getInstructions().get(position);
+
+        if (!method.getLabels(instruction).isEmpty()
+                || !(instruction instanceof AssignInstruction assign)
+                || !(assign.getDest() instanceof ArrayOperand element) || !element.getName().equals(array)
+                || element.getIndexOperands().size() != 1
+                || !(element.getIndexOperands().get(0) instanceof LiteralElement literalIndex)
+                || !literalIndex.getLiteral().equals(String.valueOf(index))
+                || !(assign.getRhs() instanceof SingleOpInstruction single)) {
+            return Optional.empty();
+        }
+
+        var value = single.getSingleOperand();
+        if (value.isLiteral()) {
+            return Optional.of(value);
+        }
+
+        if (value instanceof Operand operand && !(operand instanceof ArrayOperand) && !operand.getName().equals(array)) {
+            return Optional.of(value);
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * @return the computation of a variable that the next instruction stores in the given element of the array, if
+     * the computation does not read the array, which is not in its variable yet: the right-hand side alone when the
+     * variable is a temporary read nowhere else, or the whole assignment otherwise
+     */
+    private static Optional<Instruction> getComputedStore(Method method, int position, String array, int index) {
+        var code = method.getInstructions();
+        if (position + 1 >= code.size()) {
+            return Optional.empty();
+        }
+
+        var instruction = code.get(position);
+        var dest = getDef(instruction);
+        if (dest.isEmpty() || dest.get().equals(array) || !method.getLabels(instruction).isEmpty()
+                || getUses(instruction).contains(array)) {
+            return Optional.empty();
+        }
+
+        var stored = getStore(method, position + 1, array, index);
+        if (stored.isEmpty() || !(stored.get() instanceof Operand operand) || !operand.getName().equals(dest.get())) {
+            return Optional.empty();
+        }
+
+        long reads = code.stream().filter(other -> getUses(other).contains(dest.get())).count();
+        if (OptUtils.isTemp(dest.get()) && reads == 1) {
+            return Optional.of(((AssignInstruction) instruction).getRhs());
+        }
+
+        return Optional.of(instruction);
+    }
+
+    /**
+     * @return the values of all the elements, if the initializer stores a literal in each one
+     */
+    Optional<List<Integer>> getConstants() {
+        if (values.size() != length) {
+            return Optional.empty();
+        }
+
+        var constants = new ArrayList<Integer>(length);
+        for (var value : values) {
+            if (!(value instanceof LiteralElement literal)) {
+                return Optional.empty();
+            }
+
+            constants.add(Integer.parseInt(literal.getLiteral()));
+        }
+
+        return Optional.of(constants);
+    }
+}
@@ -0,0 +1,98 @@
+package pt.up.fe.comp2024.backend;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interned table of the methods called by a class, so the reference of each callee (e.g. "io/println(I)V") is built
+ * once, no matter how many instructions call it.
+ * <p>
+ * Instructions keep the interned {@link CallSite}, which {@link ClassFileWriter} maps to a single constant pool entry
+ * without parsing the reference again. Shared by the generators of all the methods of a class, which may run at the
+ * same time.
+ */
+public class CallSiteTable {
+
+    private final Map<Key, CallSite> callSites = new ConcurrentHashMap<>();
+
+    private final LongAdder lookups = new LongAdder();
+
+    /**
+     * @param methodLiteral the name of the method as it is in OLLIR, between quotes
+     */
+    public CallSite get(String owner, String methodLiteral, String descriptor) {
+        lookups.increment();
+
+        return callSites.computeIfAbsent(new Key(owner, methodLiteral, descriptor),
+                key -> new CallSite(owner, methodLiteral.substring(1, methodLiteral.length() - 1), descriptor));
+    }
+
+    /**
+     * @return the number of distinct methods called
+     */
+    public int size() {
+        return callSites.size();
+    }
+
+    /**
+     * @return the number of calls that reused a call site already in the table
+     */
+    public long getHits() {
+        return getLookups() - size();
+    }
+
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    @Override
+    public String toString() {
+        return size() + " call sites, " + getHits() + " hits out of " + getLookups() + " lookups";
+    }
+
+    private record Key(String owner, String methodLiteral, String descriptor) {
+    }
+
+    /**
+     * A method called by the class, identified by its owner, name and descriptor.
+     */
+    public static class CallSite {
+
+        private final String owner;
+        private final String name;
+        private final String descriptor;
+        private final String reference;
+
+        private CallSite(String owner, String name, String descriptor) {
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.reference = owner + "/" + name + descriptor;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        /**
+         * @return the reference used by Jasmin, e.g. "io/println(I)V"
+         */
+        public String getReference() {
+            return reference;
+        }
+
+        @Override
+        public String toString() {
+            return reference;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static pt.up.fe.comp2024.backend.JasminOpcode.*;
+
+/**
+ * Writes a generated class directly as the bytes of a class file, without going through Jasmin.
+ * <p>
+ * Classes are written with version 49 (Java 5), which is verified by type inference. Since the generated code only
+ * uses ints, booleans and references, the verifier does not need StackMapTable frames for these classes.
+ * <p>
+ * Local variable instructions whose register, or increment for iinc, does not fit in a byte are written with the
+ * wide prefix, as Jasmin does.
+ */
+public class ClassFileWriter {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int MAJOR_VERSION = 49;
+    private static final int MINOR_VERSION = 0;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int LDC_W = 0x13;
+    private static final int WIDE = 0xc4;
+    private static final int T_INT = 10;
+
+    private final JasminClass jasminClass;
+    private final ConstantPool constantPool;
+
+    // call sites are interned, so each one is looked up in the constant pool only once
+    private final Map<CallSiteTable.CallSite, Integer> methodRefs;
+
+    public ClassFileWriter(JasminClass jasminClass) {
+        this.jasminClass = jasminClass;
+        this.constantPool = new ConstantPool();
+        this.methodRefs = new IdentityHashMap<>();
+    }
+
+    public byte[] write() {
+        // the constant pool is written first but only known once the rest of the class is written
+        var body = new ByteArrayOutputStream();
+        var out = new DataOutputStream(body);
+
+        try {
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(constantPool.getClass(jasminClass.getName()));
+            out.writeShort(constantPool.getClass(jasminClass.getSuperName()));
+
+            out.writeShort(jasminClass.getInterfaces().size());
+            for (var implemented : jasminClass.getInterfaces()) {
+                out.writeShort(constantPool.getClass(implemented));
+            }
+
+            out.writeShort(jasminClass.getFields().size());
+            for (var field : jasminClass.getFields()) {
+                out.writeShort(getAccessFlags(field.getModifiers()));
+                out.writeShort(constantPool.getUtf8(field.getName()));
+                out.writeShort(constantPool.getUtf8(field.getDescriptor()));
+                out.writeShort(0);
+            }
+
+            out.writeShort(jasminClass.getMethods().size());
+            for (var method : jasminClass.getMethods()) {
+                writeMethod(method, out);
+            }
+
+            // class attributes
+            out.writeShort(0);
+
+            var classFile = new ByteArrayOutputStream();
+            var header = new DataOutputStream(classFile);
+            header.writeInt(MAGIC);
+            header.writeShort(MINOR_VERSION);
+            header.writeShort(MAJOR_VERSION);
+            constantPool.write(header);
+            body.writeTo(classFile);
+
+            return classFile.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeMethod(JasminMethod method, DataOutputStream out) throws IOException {
+        out.writeShort(getAccessFlags(method.getModifiers()));
+        out.writeShort(constantPool.getUtf8(method.getName()));
+        out.writeShort(constantPool.getUtf8(method.getDescriptor()));
+
+        var code = assemble(method.getBody());
+
+        // attributes, only Code
+        out.writeShort(1);
+        out.writeShort(constantPool.getUtf8("Code"));
+        // max_stack + max_locals + code_length + code + exception_table_length + attributes_count
+        out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+        out.writeShort(method.getMaxStack());
+        out.writeShort(method.getMaxLocals());
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    private static int getAccessFlags(List<String> modifiers) {
+        int flags = 0;
+
+        for (var modifier : modifiers) {
+            flags |= switch (modifier) {
+                case "public" -> ACC_PUBLIC;
+                case "private" -> ACC_PRIVATE;
+                case "protected" -> ACC_PROTECTED;
+                case "static" -> ACC_STATIC;
+                case "final" -> ACC_FINAL;
+                default -> throw new NotImplementedException(modifier);
+            };
+        }
+
+        return flags;
+    }
+
+    private byte[] assemble(List<JasminInstruction> body) throws IOException {
+        // instruction sizes do not depend on the offsets, so labels can be resolved in a first pass
+        var labels = new HashMap<String, Integer>();
+        var offsets = new ArrayList<Integer>(body.size());
+
+        int offset = 0;
+        for (var inst : body) {
+            offsets.add(offset);
+
+            if (inst.isLabel()) {
+                labels.put(inst.getLabel(), offset);
+            } else {
+                offset += getSize(inst);
+            }
+        }
+
+        var bytes = new ByteArrayOutputStream(offset);
+        var out = new DataOutputStream(bytes);
+
+        for (int i = 0; i < body.size(); i++) {
+            var inst = body.get(i);
+            if (!inst.isLabel()) {
+                writeInstruction(inst, offsets.get(i), labels, out);
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private int getSize(JasminInstruction inst) {
+        var opcode = inst.getOpcode();
+
+        if (opcode.isShortForm()) {
+            return 1;
+        }
+
+        return switch (opcode) {
+            case BIPUSH, NEWARRAY -> 2;
+            case ILOAD, ALOAD, ISTORE, ASTORE -> isWide(inst) ? 4 : 2;
+            case IINC -> isWide(inst) ? 6 : 3;
+            case LDC -> getConstant(inst) <= 0xFF ? 2 : 3;
+            case SIPUSH -> 3;
+            case GETFIELD, PUTFIELD, GETSTATIC, PUTSTATIC, INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, NEW,
+                    ANEWARRAY, CHECKCAST -> 3;
+            default -> opcode.isBranch() ? 3 : 1;
+        };
+    }
+
+    private void writeInstruction(JasminInstruction inst, int offset, Map<String, Integer> labels,
+                                  DataOutputStream out) throws IOException {
+        var opcode = inst.getOpcode();
+
+        if (opcode == LDC) {
+            int index = getConstant(inst);
+            if (index <= 0xFF) {
+                out.writeByte(LDC.getCode());
+                out.writeByte(index);
+            } else {
+                out.writeByte(LDC_W);
+                out.writeShort(index);
+            }
+
+            return;
+        }
+
+        if (isWide(inst)) {
+            writeWide(inst, out);
+            return;
+        }
+
+        out.writeByte(opcode.getCode());
+
+        if (opcode.isShortForm()) {
+            return;
+        }
+
+        if (opcode.isBranch()) {
+            var target = labels.get(inst.getBranchTarget());
+            if (target == null) {
+                throw new RuntimeException("Unknown branch target in instruction '" + inst + "'");
+            }
+
+            int jump = target - offset;
+            if (jump < Short.MIN_VALUE || jump > Short.MAX_VALUE) {
+                throw new NotImplementedException("Branch offset out of range in instruction '" + inst + "'");
+            }
+
+            out.writeShort(jump);
+            return;
+        }
+
+        switch (opcode) {
+            case BIPUSH -> out.writeByte(parseInt(inst));
+            case SIPUSH -> out.writeShort(parseInt(inst));
+            case ILOAD, ALOAD, ISTORE, ASTORE -> out.writeByte(inst.getLocalIndex().orElseThrow());
+            case IINC -> {
+                out.writeByte(inst.getLocalIndex().orElseThrow());
+                out.writeByte(getIncrement(inst));
+            }
+            case NEWARRAY -> {
+                if (!inst.getOperand(0).equals("int")) {
+                    throw new NotImplementedException(inst.getOperand(0));
+                }
+                out.writeByte(T_INT);
+            }
+            case NEW, ANEWARRAY, CHECKCAST -> out.writeShort(constantPool.getClass(inst.getOperand(0)));
+            case GETFIELD, PUTFIELD, GETSTATIC, PUTSTATIC -> out.writeShort(getFieldRef(inst));
+            case INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC -> out.writeShort(getMethodRef(inst));
+            default -> {
+                if (!inst.getOperands().isEmpty()) {
+                    throw new NotImplementedException(inst.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the index of the constant loaded by an ldc, either an int or a quoted string
+     */
+    private int getConstant(JasminInstruction inst) {
+        var operand = inst.getOperand(0);
+        if (operand.length() >= 2 && operand.startsWith("\"") && operand.endsWith("\"")) {
+            return constantPool.getString(operand.substring(1, operand.length() - 1));
+        }
+
+        return constantPool.getInteger(parseInt(inst));
+    }
+
+    private static int parseInt(JasminInstruction inst) {
+        return inst.getIntConstant()
+                .orElseThrow(() -> new NotImplementedException("Non-integer constant in '" + inst + "'"));
+    }
+
+    /**
+     * @return true if the instruction needs the wide prefix, since its register does not fit in a byte, or it is an
+     * iinc whose increment does not fit in a byte
+     */
+    private static boolean isWide(JasminInstruction inst) {
+        if (!inst.getOpcode().accessesLocal() || inst.getOpcode().isShortForm()) {
+            return false;
+        }
+
+        if (inst.getLocalIndex().orElseThrow() > 0xFF) {
+            return true;
+        }
+
+        return inst.is(IINC) && (getIncrement(inst) < Byte.MIN_VALUE || getIncrement(inst) > Byte.MAX_VALUE);
+    }
+
+    /**
+     * Writes the wide form of a local variable instruction, with a two byte register and, for iinc, a two byte
+     * increment.
+     */
+    private static void writeWide(JasminInstruction inst, DataOutputStream out) throws IOException {
+        out.writeByte(WIDE);
+        out.writeByte(inst.getOpcode().getCode());
+        out.writeShort(inst.getLocalIndex().orElseThrow());
+
+        if (inst.is(IINC)) {
+            int increment = getIncrement(inst);
+            if (increment < Short.MIN_VALUE || increment > Short.MAX_VALUE) {
+                throw new NotImplementedException("Increment out of range in instruction '" + inst + "'");
+            }
+
+            out.writeShort(increment);
+        }
+    }
+
+    private static int getIncrement(JasminInstruction inst) {
+        return Integer.parseInt(inst.getOperand(1));
+    }
+
+    /**
+     * @param inst e.g. "getfield Owner/name I"
+     */
+    private int getFieldRef(JasminInstruction inst) {
+        var reference = inst.getOperand(0);
+        int slash = reference.lastIndexOf('/');
+
+        return constantPool.getFieldRef(reference.substring(0, slash), reference.substring(slash + 1),
+                inst.getOperand(1));
+    }
+
+    /**
+     * @param inst e.g. "invokevirtual Owner/name(I)V"
+     */
+    private int getMethodRef(JasminInstruction inst) {
+        var callSite = inst.getCallSite();
+        if (callSite.isPresent()) {
+            return methodRefs.computeIfAbsent(callSite.get(), site ->
+                    constantPool.getMethodRef(site.getOwner(), site.getName(), site.getDescriptor()));
+        }
+
+        var reference = inst.getOperand(0);
+        int paren = reference.indexOf('(');
+        int slash = reference.lastIndexOf('/', paren);
+
+        if (slash == -1) {
+            throw new RuntimeException("Missing owner class in instruction '" + inst + "'");
+        }
+
+        return constantPool.getMethodRef(reference.substring(0, slash), reference.substring(slash + 1, paren),
+                reference.substring(paren));
+    }
+
+    /**
+     * Constant pool of the class being written, each constant is only added once.
+     */
+    private static class ConstantPool {
+
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_INTEGER = 3;
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_STRING = 8;
+        private static final int CONSTANT_FIELDREF = 9;
+        private static final int CONSTANT_METHODREF = 10;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        // index 0 is not used
+        private int count = 1;
+
+        int getUtf8(String value) {
+            return getOrAdd("Utf8:" + value, () -> {
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(value);
+            });
+        }
+
+        int getInteger(int value) {
+            return getOrAdd("Integer:" + value, () -> {
+                out.writeByte(CONSTANT_INTEGER);
+                out.writeInt(value);
+            });
+        }
+
+        int getString(String value) {
+            int valueIndex = getUtf8(value);
+            return getOrAdd("String:" + value, () -> {
+                out.writeByte(CONSTANT_STRING);
+                out.writeShort(valueIndex);
+            });
+        }
+
+        int getClass(String name) {
+            int nameIndex = getUtf8(name);
+            return getOrAdd("Class:" + name, () -> {
+                out.writeByte(CONSTANT_CLASS);
+                out.writeShort(nameIndex);
+            });
+        }
+
+        int getNameAndType(String name, String descriptor) {
+            int nameIndex = getUtf8(name);
+            int descriptorIndex = getUtf8(descriptor);
+            return getOrAdd("NameAndType:" + name + ":" + descriptor, () -> {
+                out.writeByte(CONSTANT_NAME_AND_TYPE);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+        }
+
+        int getFieldRef(String owner, String name, String descriptor) {
+            return getMemberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+        }
+
+        int getMethodRef(String owner, String name, String descriptor) {
+            return getMemberRef(CONSTANT_METHODREF, owner, name, descriptor);
+        }
+
+        private int getMemberRef(int tag, String owner, String name, String descriptor) {
+            int classIndex = getClass(owner);
+            int nameAndTypeIndex = getNameAndType(name, descriptor);
+            return getOrAdd(tag + ":" + owner + "." + name + ":" + descriptor, () -> {
+                out.writeByte(tag);
+                out.writeShort(classIndex);
+                out.writeShort(nameAndTypeIndex);
+            });
+        }
+
+        void write(DataOutputStream classFile) throws IOException {
+            classFile.writeShort(count);
+            bytes.writeTo(classFile);
+        }
+
+        private int getOrAdd(String key, ConstantWriter writer) {
+            var index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+
+            try {
+                writer.write();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            indexes.put(key, count);
+            return count++;
+        }
+
+        private interface ConstantWriter {
+            void write() throws IOException;
+        }
+    }
+}
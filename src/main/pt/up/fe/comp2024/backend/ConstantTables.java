@@ -0,0 +1,89 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.ClassUnit;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.backend.JasminOpcode.*;
+
+/**
+ * The large arrays of constants of a class, e.g. lookup tables, which are built once in a static field by the static
+ * initializer of the class instead of element by element each time they are created.
+ * <p>
+ * Each use clones the field, so the code that changes the array still gets its own copy. Arrays with the same
+ * elements share one field.
+ * <p>
+ * The tables are collected before the methods are generated, in the order of the methods, so their names do not
+ * depend on the order in which the methods are generated.
+ */
+class ConstantTables {
+
+    // below this length, storing each element costs less than loading and cloning the table
+    private static final int MIN_TABLE_LENGTH = 16;
+
+    private static final String ARRAY_DESCRIPTOR = "[I";
+    private static final String FIELD_PREFIX = "table$";
+
+    private final String className;
+    private final Map<List<Integer>, String> fields = new LinkedHashMap<>();
+
+    ConstantTables(ClassUnit classUnit) {
+        this.className = classUnit.getClassName();
+
+        var usedNames = new HashSet<String>();
+        classUnit.getFields().forEach(field -> usedNames.add(field.getFieldName()));
+
+        for (var method : classUnit.getMethods()) {
+            for (int i = 0; i < method.getInstructions().size(); i++) {
+                ArrayInitializer.match(method, i)
+                        .flatMap(ConstantTables::getTableValues)
+                        .ifPresent(values -> fields.computeIfAbsent(values, key -> getFreshName(usedNames)));
+            }
+        }
+    }
+
+    private String getFreshName(Set<String> usedNames) {
+        var name = FIELD_PREFIX + fields.size();
+        while (!usedNames.add(name)) {
+            name = "_" + name;
+        }
+
+        return name;
+    }
+
+    private static Optional<List<Integer>> getTableValues(ArrayInitializer initializer) {
+        return initializer.getConstants().filter(values -> values.size() >= MIN_TABLE_LENGTH);
+    }
+
+    /**
+     * @return the instructions that push a copy of the table with the values of the initializer, if there is one
+     */
+    Optional<List<JasminInstruction>> load(ArrayInitializer initializer, CallSiteTable callSites) {
+        return getTableValues(initializer).map(fields::get).map(field -> List.of(
+                JasminInstruction.of(GETSTATIC, className + "/" + field, ARRAY_DESCRIPTOR),
+                JasminInstruction.invoke(INVOKEVIRTUAL,
+                        callSites.get(ARRAY_DESCRIPTOR, "\"clone\"", "()Ljava/lang/Object;")),
+                JasminInstruction.of(CHECKCAST, ARRAY_DESCRIPTOR)));
+    }
+
+    /**
+     * Adds the fields of the tables to the class, and the code that fills them to its static initializer.
+     */
+    void addTo(JasminClass jasminClass, List<JasminInstruction> staticInitializer) {
+        for (var entry : fields.entrySet()) {
+            var values = entry.getKey();
+            jasminClass.addField(List.of("private", "static", "final"), entry.getValue(), ARRAY_DESCRIPTOR);
+
+            staticInitializer.add(JasminInstruction.intConstant(values.size()));
+            staticInitializer.add(JasminInstruction.of(NEWARRAY, "int"));
+            for (int i = 0; i < values.size(); i++) {
+                staticInitializer.add(JasminInstruction.of(DUP));
+                staticInitializer.add(JasminInstruction.intConstant(i));
+                staticInitializer.add(JasminInstruction.intConstant(values.get(i)));
+                staticInitializer.add(JasminInstruction.of(IASTORE));
+            }
+            staticInitializer.add(JasminInstruction.of(PUTSTATIC, className + "/" + entry.getValue(),
+                    ARRAY_DESCRIPTOR));
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package pt.up.fe.comp2024.backend;
 
+import org.specs.comp.ollir.ClassUnit;
 import pt.up.fe.comp.jmm.jasmin.JasminBackend;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.CompilerConfig;
+
+import java.io.File;
+import java.util.Optional;
 
 public class JasminBackendImpl implements JasminBackend {
 
@@ -15,4 +20,39 @@ public class JasminBackendImpl implements JasminBackend {
         return new JasminResult(ollirResult, jasminCode, jasminGenerator.getReports());
     }
 
+    /**
+     * Generates the class file directly, without going through Jasmin code.
+     *
+     * @return the bytes of the class file
+     */
+    public byte[] toClassFile(OllirResult ollirResult) {
+
+        var ollirClass = ollirResult.getOllirClass();
+
+        return toClassFile(ollirClass, CompilerConfig.getProfileOutput(ollirResult.getConfig(),
+                ollirClass.getClassName()));
+    }
+
+    /**
+     * Generates the class file of an OLLIR class that was not parsed from OLLIR code.
+     *
+     * @return the bytes of the class file
+     */
+    public byte[] toClassFile(ClassUnit ollirClass) {
+
+        return toClassFile(ollirClass, Optional.empty());
+    }
+
+    /**
+     * Generates the class file of an OLLIR class, with the counters of profiling if given the file they are written to.
+     *
+     * @return the bytes of the class file
+     */
+    public byte[] toClassFile(ClassUnit ollirClass, Optional<File> profileOutput) {
+
+        var jasminGenerator = new JasminGenerator(ollirClass, profileOutput);
+
+        return new ClassFileWriter(jasminGenerator.buildClass()).write();
+    }
+
 }
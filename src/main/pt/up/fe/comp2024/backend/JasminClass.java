@@ -0,0 +1,91 @@
+package pt.up.fe.comp2024.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class generated by the backend, before it is written either as Jasmin code or as a class file.
+ */
+public class JasminClass {
+
+    private final String name;
+    private final String superName;
+    private final List<String> interfaces;
+    private final List<Field> fields;
+    private final List<JasminMethod> methods;
+
+    public JasminClass(String name, String superName) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = new ArrayList<>();
+        this.fields = new ArrayList<>();
+        this.methods = new ArrayList<>();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSuperName() {
+        return superName;
+    }
+
+    public List<String> getInterfaces() {
+        return interfaces;
+    }
+
+    public List<Field> getFields() {
+        return fields;
+    }
+
+    public List<JasminMethod> getMethods() {
+        return methods;
+    }
+
+    /**
+     * @param name the internal name of the interface, e.g. "java/lang/Runnable"
+     */
+    public void addInterface(String name) {
+        interfaces.add(name);
+    }
+
+    public void addField(String name, String descriptor) {
+        addField(List.of(), name, descriptor);
+    }
+
+    /**
+     * @param modifiers the access and other modifiers, as written in Jasmin, e.g. "private" and "static"
+     */
+    public void addField(List<String> modifiers, String name, String descriptor) {
+        fields.add(new Field(modifiers, name, descriptor));
+    }
+
+    public void addMethod(JasminMethod method) {
+        methods.add(method);
+    }
+
+    public static class Field {
+
+        private final List<String> modifiers;
+        private final String name;
+        private final String descriptor;
+
+        public Field(List<String> modifiers, String name, String descriptor) {
+            this.modifiers = modifiers;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        public List<String> getModifiers() {
+            return modifiers;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescriptor() {
+            return descriptor;
+        }
+    }
+}
@@ -1,630 +1,164 @@
 package pt.up.fe.comp2024.backend;
 
 import org.specs.comp.ollir.*;
-import org.specs.comp.ollir.tree.TreeNode;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.report.Report;
-import pt.up.fe.specs.util.classmap.FunctionClassMap;
-import pt.up.fe.specs.util.exceptions.NotImplementedException;
-import pt.up.fe.specs.util.utilities.StringLines;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.utils.Diagnostics;
 
+import java.io.File;
+import java.io.StringWriter;
 import java.util.*;
-import java.util.stream.Collectors;
+
+import static pt.up.fe.comp2024.backend.JasminOpcode.*;
 
 /**
- * Generates Jasmin code from an OllirResult.
+ * Generates Jasmin code from an OLLIR class, either parsed into an OllirResult or built directly from the AST.
+ * <p>
+ * One JasminGenerator instance per OLLIR class.
+ * <p>
+ * Each OLLIR instruction is lowered to a list of {@link JasminInstruction}. The whole class is kept as a
+ * {@link JasminClass}, which is then written as Jasmin code by {@link JasminWriter} or as a class file by
+ * {@link ClassFileWriter}.
  * <p>
- * One JasminGenerator instance per OllirResult.
+ * Methods are generated independently of each other by {@link JasminMethodGenerator}, in parallel for classes with
+ * enough methods.
  */
 public class JasminGenerator {
 
-    private static final String NL = "\n";
-    private static final String TAB = "   ";
+    // below this number of methods, splitting the work costs more than it saves
+    private static final int PARALLEL_THRESHOLD = 8;
 
-    private final OllirResult ollirResult;
+    private final ClassUnit ollirClass;
+
+    private final Optional<File> profileOutput;
 
     List<Report> reports;
 
     String code;
 
-    Method currentMethod;
+    JasminClass jasminClass;
 
-    private final FunctionClassMap<TreeNode, String> generators;
+    private final CallSiteTable callSites;
 
     public JasminGenerator(OllirResult ollirResult) {
-        this.ollirResult = ollirResult;
+        this(ollirResult.getOllirClass(), CompilerConfig.getProfileOutput(ollirResult.getConfig(),
+                ollirResult.getOllirClass().getClassName()));
+    }
+
+    public JasminGenerator(ClassUnit ollirClass) {
+        this(ollirClass, Optional.empty());
+    }
+
+    /**
+     * @param profileOutput the file the profile is written to, to count the calls and the branches of the methods,
+     *                      see {@link ProfileCounters}; empty to generate the class without profiling
+     */
+    public JasminGenerator(ClassUnit ollirClass, Optional<File> profileOutput) {
+        this.ollirClass = ollirClass;
+        this.profileOutput = profileOutput;
 
         reports = new ArrayList<>();
         code = null;
-        currentMethod = null;
-
-        this.generators = new FunctionClassMap<>();
-        generators.put(ClassUnit.class, this::generateClassUnit);
-        generators.put(Method.class, this::generateMethod);
-        generators.put(PutFieldInstruction.class, this::generatePutField);
-        generators.put(CallInstruction.class, this::generaterateCallInstruction);
-        generators.put(AssignInstruction.class, this::generateAssign);
-        generators.put(GetFieldInstruction.class, this::generateGetField);
-        generators.put(SingleOpInstruction.class, this::generateSingleOp);
-        generators.put(LiteralElement.class, this::generateLiteral);
-        generators.put(Operand.class, this::generateOperand);
-        generators.put(BinaryOpInstruction.class, this::generateBinaryOp);
-        generators.put(ReturnInstruction.class, this::generateReturn);
-        generators.put(OpCondInstruction.class, this::generateOpCondition);
-        generators.put(GotoInstruction.class, this::generateGoto);
-        generators.put(SingleOpCondInstruction.class, this::generateSingleOpCondition);
-        generators.put(UnaryOpInstruction.class, this::generateUnaryOpInstruction);
+        jasminClass = null;
+        callSites = new CallSiteTable();
     }
 
     public List<Report> getReports() {
         return reports;
     }
 
+    /**
+     * @return the methods called by the class, filled once the class is built
+     */
+    public CallSiteTable getCallSites() {
+        return callSites;
+    }
+
+    /**
+     * @return the Jasmin code of the class
+     */
     public String build() {
 
         // This way, build is idempotent
         if (code == null) {
-            code = generators.apply(ollirResult.getOllirClass());
+            var out = new StringWriter();
+            new JasminWriter(out).write(buildClass());
+            code = out.toString();
         }
 
         return code;
     }
 
+    /**
+     * @return the class, before it is written as Jasmin code or as a class file
+     */
+    public JasminClass buildClass() {
 
-    private String generateClassUnit(ClassUnit classUnit) {
-
-        var code = new StringBuilder();
-
-        // generate class name
-        var className = ollirResult.getOllirClass().getClassName();
-        code.append(".class ").append(className).append(NL);
-
-
-        // generate super class name
-        var extended = ollirResult.getOllirClass().getSuperClass();
-
-        String defaultConstructor;
-
-        if (extended != null && !extended.equals("Object")) {
-            code.append(".super ").append(extended).append(NL);
-            defaultConstructor = """
-                ;default constructor
-                .method public <init>()V
-                    aload_0
-                    invokespecial %s/<init>()V
-                    return
-                .end method
-                """.formatted(extended);
-
-        } else {
-            code.append(".super java/lang/Object").append(NL);
-            defaultConstructor = """
-                ;default constructor
-                .method public <init>()V
-                    aload_0
-                    invokespecial java/lang/Object/<init>()V
-                    return
-                .end method
-                """;
-        }
-
-        // generate fields
-        var fields = ollirResult.getOllirClass().getFields();
-        for (var field : fields) {
-            code.append(".field ").append(field.getFieldName());
-            switch (field.getFieldType().toString()){
-                case "INT32" -> code.append(" I").append(NL);
-                case "BOOLEAN" -> code.append(" Z").append(NL);
-                default -> throw new NotImplementedException(field.getFieldType());
-            }
-        }
-
-
-        code.append(NL);
-
-        code.append(defaultConstructor);
-
-        // generate code for all other methods
-        for (var method : ollirResult.getOllirClass().getMethods()) {
-
-            // Ignore constructor, since there is always one constructor
-            // that receives no arguments, and has been already added
-            // previously
-            if (method.isConstructMethod()) {
-                continue;
-            }
-
-            code.append(generators.apply(method));
+        if (jasminClass == null) {
+            jasminClass = generateClassUnit(ollirClass);
         }
 
-        return code.toString();
-    }
-
-
-    private String generateMethod(Method method) {
-        // set method
-        currentMethod = method;
-
-        var code = new StringBuilder();
-
-        // modifier
-        var modifier = method.getMethodAccessModifier() != AccessModifier.DEFAULT ?
-                method.getMethodAccessModifier().name().toLowerCase() + " " :
-                "";
-
-
-        var methodName = method.getMethodName();
-        var extra = method.isStaticMethod() ? "static " : method.isFinalMethod() ? "final " : "";
-
-        code.append(".method ").append(modifier).append(extra).append(methodName).append("(");
-
-        // generate parameters
-        var params = method.getParams();
-        var paramCode = new StringBuilder();
-        for (Element param : params) {
-            switch (param.getType().toString()) {
-                case "INT32" -> paramCode.append("I");
-                case "INT32[]" -> paramCode.append("[I");
-                case "BOOLEAN" -> paramCode.append("Z");
-                case "STRING[]" -> paramCode.append("[Ljava/lang/String;");
-                case "VOID" -> paramCode.append("V");
-                case "SHORT" -> paramCode.append("S");
-                case "CLASS" -> paramCode.append("L");
-                case "STRING" -> paramCode.append("[Ljava/lang/String;");
-                default -> throw new NotImplementedException(param.getType());
-            }
-        }
-
-        code.append(paramCode).append(")");
-
-        //generate return type
-        var returnType = method.getReturnType().toString();
-        switch (returnType) {
-            case "INT32" -> code.append("I").append(NL);
-            case "BOOLEAN" -> code.append("Z").append(NL);
-            case "VOID" -> code.append("V").append(NL);
-            case "STRING[]" -> code.append("[Ljava/lang/String;").append(NL);
-            case "SHORT" -> code.append("S").append(NL);
-            case "INT32[]" -> code.append("[I").append(NL);
-            default -> throw new NotImplementedException(returnType);
-        }
-
-        int maxVReg = 0;
-
-        for (var var : method.getVarTable().values()) {
-            maxVReg = Math.max(maxVReg, var.getVirtualReg());
-        }
-
-        // Add limits
-        code.append(TAB).append(".limit stack 20").append(NL);
-        code.append(TAB).append(".limit locals ").append(maxVReg + 1).append(NL);
-
-
-        for (var inst : method.getInstructions()) {
-
-            for (var label : method.getLabels(inst)){
-                code.append(label).append(":").append(NL);
-            }
-
-            var instCode = StringLines.getLines(generators.apply(inst)).stream()
-                    .collect(Collectors.joining(NL + TAB, TAB, NL));
-
-            code.append(instCode);
-
-            if (inst.getInstType() == InstructionType.CALL) {
-                var callInst = (CallInstruction) inst;
-                if (callInst.getReturnType().getTypeOfElement() != ElementType.VOID) {
-                    code.append(TAB).append("pop").append(NL);
-                }
-            }
-
-        }
-
-        code.append(".end method\n");
-
-        // unset method
-        currentMethod = null;
-
-        return code.toString();
-    }
-
-    private String generateGetField(GetFieldInstruction getField) {
-        var code = new StringBuilder();
-
-        Operand op = getField.getObject();
-        String prev = generateOperand(op);
-        code.append(prev);
-
-        code.append("getfield ");
-
-        var fc = getField.getOperands().get(0).getType();
-        String fieldClass = "";
-        if (fc != null) {
-            fieldClass = fc.toString();
-        }
-
-        if (ollirResult.getOllirClass().getSuperClass() != null){
-            if (fieldClass.contains(ollirResult.getOllirClass().getSuperClass())){
-                code.append(ollirResult.getOllirClass().getSuperClass()).append("/");
-            }
-        } else {
-            code.append(ollirResult.getOllirClass().getClassName()).append("/");
-        }
-
-        var tmp = getField.getOperands().get(1);
-        Operand lhs = (Operand) tmp;
-
-        code.append(lhs.getName());
-
-        switch (tmp.getType().toString()){
-            case "INT32" -> code.append(" I");
-            case "BOOLEAN" -> code.append(" Z");
-            default -> throw new NotImplementedException(tmp.getType());
-        }
-
-        code.append(NL);
-
-
-        return code.toString();
+        return jasminClass;
     }
 
-    private String generatePutField(PutFieldInstruction putField) {
-        var code = new StringBuilder();
 
-        Operand op = putField.getObject();
-        String prev = generateOperand(op);
-        code.append(prev);
+    private JasminClass generateClassUnit(ClassUnit classUnit) {
 
-        code.append(generators.apply(putField.getOperands().get(2)));
-
-        code.append("putfield ");
-
-        var fc = putField.getOperands().get(0).getType();
-        String fieldClass = "";
-        if (fc != null) {
-            fieldClass = fc.toString();
-        }
-
-        if (ollirResult.getOllirClass().getSuperClass() != null){
-            if (fieldClass.contains(ollirResult.getOllirClass().getSuperClass())){
-                code.append(ollirResult.getOllirClass().getSuperClass()).append("/");
-            }
-        } else {
-            code.append(ollirResult.getOllirClass().getClassName()).append("/");
-        }
-
-        var tmp = putField.getOperands().get(1);
-        Operand lhs = (Operand) tmp;
-
-        code.append(lhs.getName());
-
-        switch (tmp.getType().toString()){
-            case "INT32" -> code.append(" I");
-            case "BOOLEAN" -> code.append(" Z");
-            default -> throw new NotImplementedException(tmp.getType());
-        }
-
-        return code.toString();
-    }
-
-    private String generaterateCallInstruction (CallInstruction callInstruction){
-        var code = new StringBuilder();
-        String invokeType = callInstruction.getInvocationType().toString();
-
-        switch (invokeType) {
-            case "NEW":
-                var tmp = callInstruction.getCaller();
-                Operand lhs = (Operand) tmp;
-
-                if(lhs.getType().getTypeOfElement() == ElementType.ARRAYREF) {
-                    for (var argument : callInstruction.getArguments())
-                        code.append(generators.apply(argument));
-
-                    code.append("newarray int");
-                } else {
-                    code.append("new ").append(lhs.getName()).append(NL).append("dup");
-                }
-
-                break;
-            case "invokespecial":
-                var tmp2 = callInstruction.getCaller();
-                Operand lhs2 = (Operand) tmp2;
-                code.append(generators.apply(lhs2));
-                code.append("invokespecial ");
-
-                var callerClass = lhs2.getType().toString();
-                code.append(callerClass,10,callerClass.length()-1).append("/");
-
-                //code.append(ollirResult.getOllirClass().getClassName()).append("/");
-                code.append("<init>()V");
-                break;
-            case "invokestatic":
-
-                for (var arg : callInstruction.getArguments()) {
-                    code.append(generators.apply(arg));
-                }
-                //code.append(NL);
-                code.append("invokestatic ");
-                Operand lhs3 = (Operand) callInstruction.getCaller();
-                code.append(lhs3.getName()).append("/");
-                LiteralElement le = (LiteralElement) callInstruction.getOperands().get(1);
-                code.append(le.getLiteral(), 1, le.getLiteral().length() - 1);
-
-                code.append("(");
-                for ( Element p : callInstruction.getArguments()) {
-                    var paramType = p.getType().toString();
-                    var paramTypeAppend = switch (paramType) {
-                        case "INT32" -> "I";
-                        case "BOOLEAN" -> "Z";
-                        case "STRING[]" -> "[Ljava/lang/String;";
-                        case "VOID" -> "V";
-                        case "SHORT" -> "S";
-                        case "INT32[]" -> "[I";
-                        default -> throw new NotImplementedException(paramType);
-                    };
-                    code.append(paramTypeAppend);
-                }
-                code.append(")");
-
-                var returnType = callInstruction.getReturnType().getTypeOfElement().toString();
-                var returnTypeAppend = switch (returnType) {
-                    case "INT32" -> "I";
-                    case "BOOLEAN" -> "Z";
-                    case "VOID" -> "V";
-                    case "SHORT" -> "S";
-                    case "INT32[]" -> "[I";
-                    case "STRING[]" -> "[Ljava/lang/String;";
-                    default -> throw new NotImplementedException(returnType);
-                };
-                code.append(returnTypeAppend);
-                break;
-            case "invokevirtual":
-                var call = callInstruction.getCaller();
-                var callerOp = (Operand) call;
-                code.append(generators.apply(callerOp));
-                for (var arg : callInstruction.getArguments()) {
-                    code.append(generators.apply(arg));
-                }
-                code.append("invokevirtual ");
-
-                var callerClass2 = callerOp.getType().toString();
-                if (callerClass2.contains("OBJECTREF")) {
-                    code.append(callerClass2,10,callerClass2.length()-1).append("/");
-                } else if (callerClass2.contains("THIS")) {
-                    code.append(callerClass2,5,callerClass2.length()-1).append("/");
-                } else if (callerClass2.contains("CLASS")){
-                    code.append(callerClass2,6,callerClass2.length()-1).append("/");
-                }
-
-                LiteralElement le2 = (LiteralElement) callInstruction.getOperands().get(1);
-                code.append(le2.getLiteral(), 1, le2.getLiteral().length() - 1);
-                code.append("(");
-                for ( Element p : callInstruction.getArguments()) {
-                    var paramType = p.getType().toString();
-                    var paramTypeAppend = switch (paramType) {
-                        case "INT32" -> "I";
-                        case "BOOLEAN" -> "Z";
-                        case "STRING[]" -> "[Ljava/lang/String;";
-                        case "VOID" -> "V";
-                        case "SHORT" -> "S";
-                        case "INT32[]" -> "[I";
-                        default -> throw new NotImplementedException(paramType);
-                    };
-                    code.append(paramTypeAppend);
-                }
-                code.append(")");
-
-                var returnType2 = callInstruction.getReturnType().getTypeOfElement().toString();
-                var returnTypeAppend2 = switch (returnType2) {
-                    case "INT32" -> "I";
-                    case "BOOLEAN" -> "Z";
-                    case "VOID" -> "V";
-                    case "SHORT" -> "S";
-                    case "INT32[]" -> "[I";
-                    case "STRING[]" -> "[Ljava/lang/String;";
-                    default -> throw new NotImplementedException(returnType2);
-                };
-                code.append(returnTypeAppend2);
-                break;
-            case "arraylength":
-                code.append(generators.apply(callInstruction.getOperands().get(0)));
-                code.append("arraylength");
-                break;
-        }
-
-        code.append(NL);
-        return code.toString();
-    }
-
-    private String generateAssign(AssignInstruction assign) {
-        var code = new StringBuilder();
-        var lhs = assign.getDest();
-        var rhs = assign.getRhs();
-
-        if(lhs instanceof ArrayOperand aop){
-            switch (aop.getName()) {
-                case "this" -> code.append("aload_0").append(NL);
-                default -> code.append("aload ").append(currentMethod.getVarTable().get(aop.getName()).getVirtualReg()).append(NL);
-            }
-
-            code.append(generators.apply(aop.getIndexOperands().get(0)));
-        }
-
-        if(rhs instanceof SingleOpInstruction && ((SingleOpInstruction) assign.getRhs()).getSingleOperand() instanceof ArrayOperand aop){
-
-            switch (aop.getName()) {
-                case "this" -> code.append("aload_0").append(NL);
-                default -> code.append("aload ").append(currentMethod.getVarTable().get(aop.getName()).getVirtualReg()).append(NL);
-            }
-
-            code.append(generators.apply(((ArrayOperand) ((SingleOpInstruction) assign.getRhs()).getSingleOperand()).getIndexOperands().get(0)));
-
-            code.append("iaload ").append(NL);
-
-        } else {
-            code.append(generators.apply(assign.getRhs()));
-        }
-
-
-        // store value in the stack in destination
-        if (!(lhs instanceof Operand operand)) {
-            throw new NotImplementedException(lhs.getClass());
-        }
-
-        if(operand instanceof ArrayOperand){
-            return code.append("iastore").append(NL).toString();
-        }
-
-        switch(operand.getType().toString()) {
-            case "INT32" -> code.append("istore ");
-            case "BOOLEAN" -> code.append("istore ");
-            default -> code.append("astore ");
-        }
-
-        // get register
-        var reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
-        code.append(reg).append(NL);
+        // generate super class name
+        var extended = classUnit.getSuperClass();
+        var superClass = extended != null && !extended.equals("Object") ? extended : "java/lang/Object";
 
+        var generated = new JasminClass(classUnit.getClassName(), superClass);
 
-        return code.toString();
-    }
+        // shared by all methods, so each descriptor is only built once per class
+        var descriptors = new TypeDescriptors(classUnit.getClassName());
 
-    private String generateSingleOp(SingleOpInstruction singleOp) {
-        return generators.apply(singleOp.getSingleOperand());
-    }
-
-    private String generateLiteral(LiteralElement literal) {
-        String l = literal.getLiteral();
-        int n = Integer.parseInt(l);
-
-        if (n >= 0 && n <= 5) {
-            return "iconst_" + n + NL;
-        } else if (n >=6 && n<= 127) {
-            return "bipush " + n + NL;
-        } else if (n >= 128 && n <= 32767) {
-            return "sipush " + n + NL;
-        } else {
-            return "ldc " + n + NL;
+        // generate fields
+        for (var field : classUnit.getFields()) {
+            generated.addField(field.getFieldName(), descriptors.getDescriptor(field.getFieldType()));
         }
-    }
 
-    private String generateOperand(Operand operand) {
-        var reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
-        var operandType = operand.getType().toString();
+        // found before the methods are generated, so the names of the tables do not depend on their order
+        var tables = new ConstantTables(classUnit);
+        var counters = new ProfileCounters(classUnit, profileOutput);
 
-        if (operandType.contains("OBJECTREF") || operandType.contains("ARRAYREF")) {
-            return "aload " + reg + NL;
-        }
-        else if (operandType.contains("THIS")) {
-            return "aload_0" + NL;
-        }
-        else if (operandType.contains("CLASS")) {
-            return "aload " + reg + NL;
-        }
+        // default constructor
+        generated.addMethod(new JasminMethod(List.of("public"), "<init>", "()V", 1, 1, List.of(
+                JasminInstruction.of(ALOAD_0),
+                JasminInstruction.invoke(INVOKESPECIAL, callSites.get(superClass, "\"<init>\"", "()V")),
+                JasminInstruction.of(RETURN))));
 
-        switch(operandType) {
-            case "INT32" -> {
-                return "iload " + reg + NL;
-            }
-            case "BOOLEAN" -> {
-                return "iload " + reg + NL;
-            }
-            default -> {
-                return "aload " + reg + NL;
-            }
-        }
-    }
-
-    private String generateBinaryOp(BinaryOpInstruction binaryOp) {
-        var code = new StringBuilder();
-
-        // load values on the left and on the right
-        code.append(generators.apply(binaryOp.getLeftOperand()));
-        code.append(generators.apply(binaryOp.getRightOperand()));
-
-        // apply operation
-        switch (binaryOp.getOperation().getOpType()) {
-            case ADD -> code.append("iadd").append(NL);
-            case SUB -> code.append("isub").append(NL);
-            case MUL -> code.append("imul").append(NL);
-            case DIV -> code.append("idiv").append(NL);
-            case XOR -> code.append("ixor").append(NL);
-            case AND, ANDB -> code.append("iand").append(NL);
-            case OR, ORB -> code.append("ior").append(NL);
-            case NOTB, NOT -> code.append("iconst_1\nixor").append(NL);
-            case EQ -> code.append("if_icmpeq ").append(NL);
-            case NEQ -> code.append("if_icmpne ").append(NL);
-            case SHR -> code.append("ishr").append(NL);
-            case SHL -> code.append("ishl").append(NL);
-            case SHRR -> code.append("iushr").append(NL);
-            case LTH -> code.append("isub\niflt ");
-            case GTH -> code.append("if_icmpgt ").append(NL);
-            case LTE -> code.append("if_icmplt ");
-            case GTE -> code.append("if_icmpgt ");
-            default -> throw new NotImplementedException(binaryOp.getOperation().getOpType());
-        }
+        // generate code for all other methods, the constructor is ignored since there is always one constructor
+        // that receives no arguments, and has been already added previously
+        var methods = classUnit.getMethods().stream()
+                .filter(method -> !method.isConstructMethod())
+                .toList();
 
-        return code.toString();
-    }
+        // each method has its own generator, the list keeps the order of declaration
+        var stream = methods.size() < PARALLEL_THRESHOLD ? methods.stream() : methods.parallelStream();
+        var generatedMethods = stream
+                .map(method -> new JasminMethodGenerator(classUnit, descriptors, callSites, tables, counters, method)
+                        .generate())
+                .toList();
 
-    private String generateReturn(ReturnInstruction returnInst) {
-        var code = new StringBuilder();
+        generatedMethods.forEach(generated::addMethod);
 
-        if(returnInst.getOperand() == null) {
-            return "return" + NL;
-        }
+        // the tables and the counters share the static initializer of the class
+        var staticInitializer = new ArrayList<JasminInstruction>();
+        tables.addTo(generated, staticInitializer);
+        counters.addTo(generated, staticInitializer, callSites);
 
-        code.append(generators.apply(returnInst.getOperand()));
+        if (!staticInitializer.isEmpty()) {
+            staticInitializer.add(JasminInstruction.of(RETURN));
 
-        if(Objects.equals(currentMethod.getReturnType().toString(), "INT32") || Objects.equals(currentMethod.getReturnType().toString(), "BOOLEAN")) {
-            code.append("ireturn").append(NL);
-        } else {
-            code.append("return").append(NL);
+            int maxStack = new StackSizeCalculator(staticInitializer).compute();
+            generated.addMethod(new JasminMethod(List.of("static"), "<clinit>", "()V", maxStack, 0,
+                    staticInitializer));
         }
 
-        return code.toString();
-    }
-
-    private String generateOpCondition(OpCondInstruction opCondInstruction) {
-        var code = new StringBuilder();
-        code.append(generators.apply(opCondInstruction.getCondition()));
+        Diagnostics.debug(() -> "Calls of class " + classUnit.getClassName() + ": " + callSites);
 
-        String label = opCondInstruction.getLabel();
-
-        code.append(label).append(NL);
-
-        return code.toString();
-    }
-
-    private  String generateGoto(GotoInstruction gotoInstruction){
-        var code = new StringBuilder();
-        String label = gotoInstruction.getLabel();
-        code.append("goto "+label).append(NL);
-        return code.toString();
-    }
-
-    private String generateSingleOpCondition(SingleOpCondInstruction singleOpCondInstruction) {
-        var code = new StringBuilder();
-
-        code.append(generators.apply(singleOpCondInstruction.getOperands().get(0)));
-
-        code.append("ifne ").append(singleOpCondInstruction.getLabel()).append(NL);
-
-        return code.toString();
-
-    }
-
-    private String generateUnaryOpInstruction(UnaryOpInstruction unaryOpInstruction) {
-        var code = new StringBuilder();
-
-        code.append(generators.apply(unaryOpInstruction.getOperand()));
-
-        switch (unaryOpInstruction.getOperation().getOpType()) {
-            case  NOT-> code.append("ineg").append(NL);
-            case NOTB -> code.append("iconst_1\nixor").append(NL);
-            default -> throw new NotImplementedException(unaryOpInstruction.getOperation().getOpType());
-        }
-        return code.toString();
+        return generated;
     }
-
 }
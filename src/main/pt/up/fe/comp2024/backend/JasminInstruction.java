@@ -0,0 +1,197 @@
+package pt.up.fe.comp2024.backend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static pt.up.fe.comp2024.backend.JasminOpcode.*;
+
+/**
+ * A single element of the body of a Jasmin method, either a label or an instruction with its operands.
+ */
+public class JasminInstruction {
+
+    private final String label;
+    private final JasminOpcode opcode;
+    private final List<String> operands;
+    private final CallSiteTable.CallSite callSite;
+
+    private JasminInstruction(String label, JasminOpcode opcode, List<String> operands,
+                              CallSiteTable.CallSite callSite) {
+        this.label = label;
+        this.opcode = opcode;
+        this.operands = operands;
+        this.callSite = callSite;
+    }
+
+    public static JasminInstruction label(String label) {
+        return new JasminInstruction(label, null, Collections.emptyList(), null);
+    }
+
+    public static JasminInstruction of(JasminOpcode opcode) {
+        return new JasminInstruction(null, opcode, Collections.emptyList(), null);
+    }
+
+    /**
+     * @return an invoke instruction of a method in the call site table
+     */
+    public static JasminInstruction invoke(JasminOpcode opcode, CallSiteTable.CallSite callSite) {
+        return new JasminInstruction(null, opcode, List.of(callSite.getReference()), callSite);
+    }
+
+    public static JasminInstruction of(JasminOpcode opcode, Object... operands) {
+        var strings = new ArrayList<String>(operands.length);
+        for (var operand : operands) {
+            strings.add(operand.toString());
+        }
+
+        return new JasminInstruction(null, opcode, strings, null);
+    }
+
+    /**
+     * @return the instruction that pushes the given integer, using the shortest encoding
+     */
+    public static JasminInstruction intConstant(int value) {
+        if (value >= -1 && value <= 5) {
+            return of(JasminOpcode.values()[ICONST_0.ordinal() + value]);
+        }
+
+        if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            return of(BIPUSH, value);
+        }
+
+        if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            return of(SIPUSH, value);
+        }
+
+        return of(LDC, value);
+    }
+
+    public boolean isLabel() {
+        return label != null;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public JasminOpcode getOpcode() {
+        return opcode;
+    }
+
+    public List<String> getOperands() {
+        return operands;
+    }
+
+    public String getOperand(int index) {
+        return operands.get(index);
+    }
+
+    /**
+     * @return the interned call site of an invoke instruction, if it was built from a call site table
+     */
+    public Optional<CallSiteTable.CallSite> getCallSite() {
+        return Optional.ofNullable(callSite);
+    }
+
+    public boolean is(JasminOpcode... opcodes) {
+        if (isLabel()) {
+            return false;
+        }
+
+        for (var candidate : opcodes) {
+            if (candidate == opcode) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isConditionalBranch() {
+        return !isLabel() && opcode.isConditionalBranch();
+    }
+
+    public boolean isBranch() {
+        return !isLabel() && opcode.isBranch();
+    }
+
+    /**
+     * @return true if execution never continues to the next instruction
+     */
+    public boolean isTerminator() {
+        return !isLabel() && opcode.isTerminator();
+    }
+
+    public String getBranchTarget() {
+        return isBranch() ? getOperand(0) : null;
+    }
+
+    /**
+     * @return the opcode without the register suffix, e.g. ILOAD for both "iload 1" and "iload_1"
+     */
+    public JasminOpcode getBaseOpcode() {
+        return isLabel() ? null : opcode.getBase();
+    }
+
+    /**
+     * @return the local variable read or written by this instruction, if any
+     */
+    public Optional<Integer> getLocalIndex() {
+        if (isLabel() || !opcode.accessesLocal()) {
+            return Optional.empty();
+        }
+
+        if (opcode.isShortForm()) {
+            return Optional.of(opcode.getImplicitLocal());
+        }
+
+        return Optional.of(Integer.parseInt(getOperand(0)));
+    }
+
+    public boolean isLoad() {
+        return !isLabel() && opcode.isLoad();
+    }
+
+    public boolean isStore() {
+        return !isLabel() && opcode.isStore();
+    }
+
+    /**
+     * @return the integer pushed by this instruction, if it only pushes a constant
+     */
+    public Optional<Integer> getIntConstant() {
+        if (isLabel()) {
+            return Optional.empty();
+        }
+
+        return switch (opcode) {
+            case ICONST_M1, ICONST_0, ICONST_1, ICONST_2, ICONST_3, ICONST_4, ICONST_5 ->
+                    Optional.of(opcode.ordinal() - ICONST_0.ordinal());
+            case BIPUSH, SIPUSH -> Optional.of(Integer.parseInt(getOperand(0)));
+            case LDC -> {
+                try {
+                    yield Optional.of(Integer.parseInt(getOperand(0)));
+                } catch (NumberFormatException e) {
+                    // ldc of a non-integer constant
+                    yield Optional.empty();
+                }
+            }
+            default -> Optional.empty();
+        };
+    }
+
+    @Override
+    public String toString() {
+        if (isLabel()) {
+            return label + ":";
+        }
+
+        if (operands.isEmpty()) {
+            return opcode.getMnemonic();
+        }
+
+        return opcode.getMnemonic() + " " + String.join(" ", operands);
+    }
+}
@@ -0,0 +1,54 @@
+package pt.up.fe.comp2024.backend;
+
+import java.util.List;
+
+/**
+ * A method generated by the backend, with its final body and limits.
+ */
+public class JasminMethod {
+
+    private final List<String> modifiers;
+    private final String name;
+    private final String descriptor;
+    private final int maxStack;
+    private final int maxLocals;
+    private final List<JasminInstruction> body;
+
+    /**
+     * @param modifiers  the access and other modifiers, as written in Jasmin, e.g. "public" and "static"
+     * @param descriptor the descriptor of the method, e.g. "(I)V"
+     */
+    public JasminMethod(List<String> modifiers, String name, String descriptor, int maxStack, int maxLocals,
+                        List<JasminInstruction> body) {
+        this.modifiers = modifiers;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+        this.body = body;
+    }
+
+    public List<String> getModifiers() {
+        return modifiers;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    public int getMaxLocals() {
+        return maxLocals;
+    }
+
+    public List<JasminInstruction> getBody() {
+        return body;
+    }
+}
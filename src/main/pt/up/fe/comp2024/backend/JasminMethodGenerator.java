@@ -0,0 +1,501 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+import org.specs.comp.ollir.tree.TreeNode;
+import pt.up.fe.comp2024.optimization.OptUtils;
+import pt.up.fe.comp2024.optimization.Profile;
+import pt.up.fe.specs.util.classmap.BiConsumerClassMap;
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static pt.up.fe.comp2024.backend.JasminOpcode.*;
+import static pt.up.fe.comp2024.optimization.InstructionUtils.indexInstructions;
+import static pt.up.fe.comp2024.optimization.InstructionUtils.indexLabels;
+
+/**
+ * Generates the Jasmin code of a single method of an OLLIR class.
+ * <p>
+ * All the state of the generation (the method and the counter of labels) belongs to one instance, so the methods of
+ * a class can be generated at the same time by different instances.
+ */
+class JasminMethodGenerator {
+
+    private final ClassUnit ollirClass;
+
+    private final TypeDescriptors descriptors;
+
+    private final CallSiteTable callSites;
+
+    private final ConstantTables tables;
+
+    private final ProfileCounters counters;
+
+    private final Method currentMethod;
+
+    private int labelCounter;
+
+    private final BiConsumerClassMap<TreeNode, List<JasminInstruction>> generators;
+
+    JasminMethodGenerator(ClassUnit ollirClass, TypeDescriptors descriptors, CallSiteTable callSites,
+                          ConstantTables tables, ProfileCounters counters, Method method) {
+        this.ollirClass = ollirClass;
+        this.descriptors = descriptors;
+        this.callSites = callSites;
+        this.tables = tables;
+        this.counters = counters;
+        this.currentMethod = method;
+        this.labelCounter = 0;
+
+        this.generators = new BiConsumerClassMap<>();
+        generators.put(PutFieldInstruction.class, this::generatePutField);
+        generators.put(CallInstruction.class, this::generaterateCallInstruction);
+        generators.put(AssignInstruction.class, this::generateAssign);
+        generators.put(GetFieldInstruction.class, this::generateGetField);
+        generators.put(SingleOpInstruction.class, this::generateSingleOp);
+        generators.put(LiteralElement.class, this::generateLiteral);
+        generators.put(Operand.class, this::generateOperand);
+        generators.put(BinaryOpInstruction.class, this::generateBinaryOp);
+        generators.put(ReturnInstruction.class, this::generateReturn);
+        generators.put(OpCondInstruction.class, this::generateOpCondition);
+        generators.put(GotoInstruction.class, this::generateGoto);
+        generators.put(SingleOpCondInstruction.class, this::generateSingleOpCondition);
+        generators.put(UnaryOpInstruction.class, this::generateUnaryOpInstruction);
+    }
+
+    /**
+     * @return the method, with its body optimized and its limits computed
+     */
+    JasminMethod generate() {
+        var method = currentMethod;
+
+        // modifiers
+        var modifiers = new ArrayList<String>();
+        if (method.getMethodAccessModifier() != AccessModifier.DEFAULT) {
+            modifiers.add(method.getMethodAccessModifier().name().toLowerCase());
+        }
+
+        if (method.isStaticMethod()) {
+            modifiers.add("static");
+        } else if (method.isFinalMethod()) {
+            modifiers.add("final");
+        }
+
+        var descriptor = descriptors.getMethodDescriptor(method.getParams(), method.getReturnType());
+
+        int maxVReg = 0;
+
+        for (var var : method.getVarTable().values()) {
+            maxVReg = Math.max(maxVReg, var.getVirtualReg());
+        }
+
+        // body is kept instruction by instruction, so that it can be optimized and the stack limit computed
+        // before it is written
+        var body = new ArrayList<JasminInstruction>();
+
+        // before the first label, so the jumps back to the start of the method are not counted as calls
+        body.addAll(counters.increment(Profile.entryKey(method.getMethodName())));
+
+        var instructions = method.getInstructions();
+        var labelIndexes = indexLabels(method, indexInstructions(instructions));
+
+        for (int i = 0; i < instructions.size(); i++) {
+            var inst = instructions.get(i);
+
+            for (var label : method.getLabels(inst)){
+                body.add(JasminInstruction.label(label));
+            }
+
+            // the stores of an array initializer are generated with the new array
+            var initializer = ArrayInitializer.match(method, i).filter(found -> !found.values().isEmpty());
+            if (initializer.isPresent()) {
+                generateArrayInitializer(initializer.get(), body);
+                i += initializer.get().size();
+                continue;
+            }
+
+            if (inst instanceof CondBranchInstruction branch) {
+                body.addAll(counters.increment(Profile.branchKey(method.getMethodName(), branch.getLabel())));
+                generators.accept(inst, body);
+                body.addAll(counters.increment(Profile.fallthroughKey(method.getMethodName(), branch.getLabel())));
+                continue;
+            }
+
+            if (inst instanceof GotoInstruction jump && labelIndexes.get(jump.getLabel()) <= i) {
+                body.addAll(counters.increment(Profile.backEdgeKey(method.getMethodName(), jump.getLabel())));
+            } else if (inst instanceof ReturnInstruction) {
+                body.addAll(counters.dump(method, callSites));
+            }
+
+            generators.accept(inst, body);
+
+            if (inst.getInstType() == InstructionType.CALL) {
+                var callInst = (CallInstruction) inst;
+                if (callInst.getReturnType().getTypeOfElement() != ElementType.VOID) {
+                    body.add(JasminInstruction.of(POP));
+                }
+            }
+
+        }
+
+        // only temporaries are kept on the stack instead of going through their register, which may be shared with
+        // other variables once the registers are compacted
+        var temporaries = method.getVarTable().entrySet().stream()
+                .filter(entry -> OptUtils.isTemp(entry.getKey()))
+                .map(entry -> entry.getValue().getVirtualReg())
+                .collect(Collectors.toSet());
+        method.getVarTable().entrySet().stream()
+                .filter(entry -> !OptUtils.isTemp(entry.getKey()))
+                .forEach(entry -> temporaries.remove(entry.getValue().getVirtualReg()));
+
+        new PeepholeOptimizer(temporaries).optimize(body);
+
+        // limits
+        var maxStack = new StackSizeCalculator(body).compute();
+        var generated = new JasminMethod(modifiers, method.getMethodName(), descriptor, maxStack,
+                maxVReg + 1, body);
+
+        return generated;
+    }
+
+    private void generateGetField(GetFieldInstruction getField, List<JasminInstruction> code) {
+        Operand op = getField.getObject();
+        generateOperand(op, code);
+
+        var field = (Operand) getField.getOperands().get(1);
+        code.add(JasminInstruction.of(GETFIELD, getFieldOwner(getField) + field.getName(),
+                descriptors.getDescriptor(field.getType())));
+    }
+
+    private void generatePutField(PutFieldInstruction putField, List<JasminInstruction> code) {
+        Operand op = putField.getObject();
+        generateOperand(op, code);
+
+        generators.accept(putField.getOperands().get(2), code);
+
+        var field = (Operand) putField.getOperands().get(1);
+        code.add(JasminInstruction.of(PUTFIELD, getFieldOwner(putField) + field.getName(),
+                descriptors.getDescriptor(field.getType())));
+    }
+
+    /**
+     * @return the class that declares the field, followed by a slash
+     */
+    private String getFieldOwner(FieldInstruction fieldInst) {
+        var fc = fieldInst.getOperands().get(0).getType();
+        String fieldClass = "";
+        if (fc != null) {
+            fieldClass = fc.toString();
+        }
+
+        var superClass = ollirClass.getSuperClass();
+        if (superClass != null && fieldClass.contains(superClass)){
+            return superClass + "/";
+        }
+
+        return ollirClass.getClassName() + "/";
+    }
+
+    private void generaterateCallInstruction (CallInstruction callInstruction, List<JasminInstruction> code){
+        String invokeType = callInstruction.getInvocationType().toString();
+
+        switch (invokeType) {
+            case "NEW":
+                var tmp = callInstruction.getCaller();
+                Operand lhs = (Operand) tmp;
+
+                if(lhs.getType().getTypeOfElement() == ElementType.ARRAYREF) {
+                    for (var argument : callInstruction.getArguments())
+                        generators.accept(argument, code);
+
+                    code.add(JasminInstruction.of(NEWARRAY, "int"));
+                } else {
+                    // not duplicated, the reference is stored by the assignment and loaded again for <init>
+                    code.add(JasminInstruction.of(NEW, lhs.getName()));
+                }
+
+                break;
+            case "invokespecial":
+                var tmp2 = callInstruction.getCaller();
+                Operand lhs2 = (Operand) tmp2;
+                generators.accept(lhs2, code);
+
+                code.add(JasminInstruction.invoke(INVOKESPECIAL,
+                        callSites.get(descriptors.getClassName(lhs2.getType()), "\"<init>\"", "()V")));
+                break;
+            case "invokestatic":
+
+                for (var arg : callInstruction.getArguments()) {
+                    generators.accept(arg, code);
+                }
+
+                Operand lhs3 = (Operand) callInstruction.getCaller();
+                LiteralElement le = (LiteralElement) callInstruction.getOperands().get(1);
+
+                code.add(JasminInstruction.invoke(INVOKESTATIC,
+                        callSites.get(lhs3.getName(), le.getLiteral(), getCallDescriptor(callInstruction))));
+                break;
+            case "invokevirtual":
+                var call = callInstruction.getCaller();
+                var callerOp = (Operand) call;
+                generators.accept(callerOp, code);
+                for (var arg : callInstruction.getArguments()) {
+                    generators.accept(arg, code);
+                }
+
+                var owner = descriptors.getClassName(callerOp.getType());
+
+                LiteralElement le2 = (LiteralElement) callInstruction.getOperands().get(1);
+
+                code.add(JasminInstruction.invoke(INVOKEVIRTUAL,
+                        callSites.get(owner, le2.getLiteral(), getCallDescriptor(callInstruction))));
+                break;
+            case "arraylength":
+                generators.accept(callInstruction.getOperands().get(0), code);
+                code.add(JasminInstruction.of(ARRAYLENGTH));
+                break;
+        }
+    }
+
+    private String getCallDescriptor(CallInstruction callInstruction) {
+        return descriptors.getMethodDescriptor(callInstruction.getArguments(), callInstruction.getReturnType());
+    }
+
+    private void generateAssign(AssignInstruction assign, List<JasminInstruction> code) {
+        var lhs = assign.getDest();
+        var rhs = assign.getRhs();
+
+        if(lhs instanceof ArrayOperand aop){
+            generateArrayRef(aop, code);
+            generators.accept(aop.getIndexOperands().get(0), code);
+        }
+
+        generateValue(rhs, code);
+
+        // store value in the stack in destination
+        if (!(lhs instanceof Operand operand)) {
+            throw new NotImplementedException(lhs.getClass());
+        }
+
+        if(operand instanceof ArrayOperand){
+            code.add(JasminInstruction.of(IASTORE));
+            return;
+        }
+
+        generateStore(operand, code);
+    }
+
+    /**
+     * Pushes the value computed by the right-hand side of an assignment.
+     */
+    private void generateValue(Instruction rhs, List<JasminInstruction> code) {
+        if(rhs instanceof SingleOpInstruction single && single.getSingleOperand() instanceof ArrayOperand aop){
+
+            generateArrayRef(aop, code);
+            generators.accept(aop.getIndexOperands().get(0), code);
+
+            code.add(JasminInstruction.of(IALOAD));
+
+        } else {
+            generators.accept(rhs, code);
+        }
+    }
+
+    private void generateStore(Operand operand, List<JasminInstruction> code) {
+        // get register
+        var reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
+
+        switch (operand.getType().getTypeOfElement()) {
+            case INT32, BOOLEAN -> code.add(JasminInstruction.of(ISTORE, reg));
+            default -> code.add(JasminInstruction.of(ASTORE, reg));
+        }
+    }
+
+    /**
+     * Generates a new array and the stores of its first elements, keeping the array on the stack with a dup for each
+     * store instead of loading it from its variable. Large arrays of constants are cloned from a table instead.
+     */
+    private void generateArrayInitializer(ArrayInitializer initializer, List<JasminInstruction> code) {
+        var table = tables.load(initializer, callSites);
+
+        if (table.isPresent()) {
+            code.addAll(table.get());
+        } else {
+            code.add(JasminInstruction.intConstant(initializer.length()));
+            code.add(JasminInstruction.of(NEWARRAY, "int"));
+
+            for (int i = 0; i < initializer.values().size(); i++) {
+                code.add(JasminInstruction.of(DUP));
+                code.add(JasminInstruction.intConstant(i));
+                var value = initializer.values().get(i);
+
+                // a computed value that is also read later is kept in its variable too
+                if (value instanceof AssignInstruction assign) {
+                    generateValue(assign.getRhs(), code);
+                    code.add(JasminInstruction.of(DUP));
+                    generateStore((Operand) assign.getDest(), code);
+                } else if (value instanceof Instruction rhs) {
+                    generateValue(rhs, code);
+                } else {
+                    generators.accept(value, code);
+                }
+
+                code.add(JasminInstruction.of(IASTORE));
+            }
+        }
+
+        var reg = currentMethod.getVarTable().get(initializer.dest().getName()).getVirtualReg();
+        code.add(JasminInstruction.of(ASTORE, reg));
+    }
+
+    private void generateArrayRef(ArrayOperand aop, List<JasminInstruction> code) {
+        switch (aop.getName()) {
+            case "this" -> code.add(JasminInstruction.of(ALOAD, 0));
+            default -> code.add(JasminInstruction.of(ALOAD,
+                    currentMethod.getVarTable().get(aop.getName()).getVirtualReg()));
+        }
+    }
+
+    private void generateSingleOp(SingleOpInstruction singleOp, List<JasminInstruction> code) {
+        generators.accept(singleOp.getSingleOperand(), code);
+    }
+
+    private void generateLiteral(LiteralElement literal, List<JasminInstruction> code) {
+        code.add(JasminInstruction.intConstant(Integer.parseInt(literal.getLiteral())));
+    }
+
+    private void generateOperand(Operand operand, List<JasminInstruction> code) {
+        var reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
+
+        switch (operand.getType().getTypeOfElement()) {
+            case THIS -> code.add(JasminInstruction.of(ALOAD, 0));
+            case INT32, BOOLEAN -> code.add(JasminInstruction.of(ILOAD, reg));
+            default -> code.add(JasminInstruction.of(ALOAD, reg));
+        }
+    }
+
+    private void generateBinaryOp(BinaryOpInstruction binaryOp, List<JasminInstruction> code) {
+        // load values on the left and on the right
+        generators.accept(binaryOp.getLeftOperand(), code);
+        generators.accept(binaryOp.getRightOperand(), code);
+
+        var opType = binaryOp.getOperation().getOpType();
+
+        // comparisons only exist as branches, the boolean value is pushed by each side of the branch
+        if (isComparison(opType)) {
+            var trueLabel = "cmp_true_" + labelCounter;
+            var endLabel = "cmp_end_" + labelCounter;
+            labelCounter++;
+
+            code.add(JasminInstruction.of(getComparisonBranch(opType), trueLabel));
+            code.add(JasminInstruction.of(ICONST_0));
+            code.add(JasminInstruction.of(GOTO, endLabel));
+            code.add(JasminInstruction.label(trueLabel));
+            code.add(JasminInstruction.of(ICONST_1));
+            code.add(JasminInstruction.label(endLabel));
+
+            return;
+        }
+
+        // apply operation
+        switch (opType) {
+            case ADD -> code.add(JasminInstruction.of(IADD));
+            case SUB -> code.add(JasminInstruction.of(ISUB));
+            case MUL -> code.add(JasminInstruction.of(IMUL));
+            case DIV -> code.add(JasminInstruction.of(IDIV));
+            case XOR -> code.add(JasminInstruction.of(IXOR));
+            case AND, ANDB -> code.add(JasminInstruction.of(IAND));
+            case OR, ORB -> code.add(JasminInstruction.of(IOR));
+            case NOTB, NOT -> {
+                code.add(JasminInstruction.of(ICONST_1));
+                code.add(JasminInstruction.of(IXOR));
+            }
+            case SHR -> code.add(JasminInstruction.of(ISHR));
+            case SHL -> code.add(JasminInstruction.of(ISHL));
+            case SHRR -> code.add(JasminInstruction.of(IUSHR));
+            default -> throw new NotImplementedException(opType);
+        }
+    }
+
+    private static boolean isComparison(OperationType opType) {
+        return switch (opType) {
+            case LTH, GTH, LTE, GTE, EQ, NEQ -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * @return the instruction that compares the two values on top of the stack and jumps when the comparison holds
+     */
+    private static JasminOpcode getComparisonBranch(OperationType opType) {
+        return switch (opType) {
+            case LTH -> IF_ICMPLT;
+            case GTH -> IF_ICMPGT;
+            case LTE -> IF_ICMPLE;
+            case GTE -> IF_ICMPGE;
+            case EQ -> IF_ICMPEQ;
+            case NEQ -> IF_ICMPNE;
+            default -> throw new NotImplementedException(opType);
+        };
+    }
+
+    private void generateReturn(ReturnInstruction returnInst, List<JasminInstruction> code) {
+        if(returnInst.getOperand() == null) {
+            code.add(JasminInstruction.of(RETURN));
+            return;
+        }
+
+        generators.accept(returnInst.getOperand(), code);
+
+        switch (currentMethod.getReturnType().getTypeOfElement()) {
+            case INT32, BOOLEAN -> code.add(JasminInstruction.of(IRETURN));
+            case VOID -> code.add(JasminInstruction.of(RETURN));
+            default -> code.add(JasminInstruction.of(ARETURN));
+        }
+    }
+
+    private void generateOpCondition(OpCondInstruction opCondInstruction, List<JasminInstruction> code) {
+        var condition = opCondInstruction.getCondition();
+        String label = opCondInstruction.getLabel();
+
+        if (condition instanceof BinaryOpInstruction binaryOp && isComparison(binaryOp.getOperation().getOpType())) {
+            generators.accept(binaryOp.getLeftOperand(), code);
+            generators.accept(binaryOp.getRightOperand(), code);
+            code.add(JasminInstruction.of(getComparisonBranch(binaryOp.getOperation().getOpType()), label));
+        } else if (condition instanceof UnaryOpInstruction unaryOp
+                && unaryOp.getOperation().getOpType() == OperationType.NOTB) {
+            // branch when the operand is false, without computing its negation
+            generators.accept(unaryOp.getOperand(), code);
+            code.add(JasminInstruction.of(IFEQ, label));
+        } else {
+            generators.accept(condition, code);
+            code.add(JasminInstruction.of(IFNE, label));
+        }
+    }
+
+    private void generateGoto(GotoInstruction gotoInstruction, List<JasminInstruction> code){
+        code.add(JasminInstruction.of(GOTO, gotoInstruction.getLabel()));
+    }
+
+    private void generateSingleOpCondition(SingleOpCondInstruction singleOpCondInstruction,
+                                           List<JasminInstruction> code) {
+        generators.accept(singleOpCondInstruction.getOperands().get(0), code);
+
+        code.add(JasminInstruction.of(IFNE, singleOpCondInstruction.getLabel()));
+    }
+
+    private void generateUnaryOpInstruction(UnaryOpInstruction unaryOpInstruction, List<JasminInstruction> code) {
+        generators.accept(unaryOpInstruction.getOperand(), code);
+
+        switch (unaryOpInstruction.getOperation().getOpType()) {
+            case  NOT-> code.add(JasminInstruction.of(INEG));
+            case NOTB -> {
+                code.add(JasminInstruction.of(ICONST_1));
+                code.add(JasminInstruction.of(IXOR));
+            }
+            default -> throw new NotImplementedException(unaryOpInstruction.getOperation().getOpType());
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package pt.up.fe.comp2024.backend;
+
+/**
+ * The JVM instructions the backend generates, with their opcode and their effect on the operand stack.
+ * <p>
+ * The Jasmin mnemonic of each instruction is its name in lower case.
+ */
+public enum JasminOpcode {
+
+    NOP(0x00, 0),
+
+    ICONST_M1(0x02, 1),
+    ICONST_0(0x03, 1),
+    ICONST_1(0x04, 1),
+    ICONST_2(0x05, 1),
+    ICONST_3(0x06, 1),
+    ICONST_4(0x07, 1),
+    ICONST_5(0x08, 1),
+    BIPUSH(0x10, 1),
+    SIPUSH(0x11, 1),
+    LDC(0x12, 1),
+
+    ILOAD(0x15, 1),
+    ALOAD(0x19, 1),
+    ILOAD_0(0x1a, 1, ILOAD, 0),
+    ILOAD_1(0x1b, 1, ILOAD, 1),
+    ILOAD_2(0x1c, 1, ILOAD, 2),
+    ILOAD_3(0x1d, 1, ILOAD, 3),
+    ALOAD_0(0x2a, 1, ALOAD, 0),
+    ALOAD_1(0x2b, 1, ALOAD, 1),
+    ALOAD_2(0x2c, 1, ALOAD, 2),
+    ALOAD_3(0x2d, 1, ALOAD, 3),
+    IALOAD(0x2e, -1),
+    AALOAD(0x32, -1),
+
+    ISTORE(0x36, -1),
+    ASTORE(0x3a, -1),
+    ISTORE_0(0x3b, -1, ISTORE, 0),
+    ISTORE_1(0x3c, -1, ISTORE, 1),
+    ISTORE_2(0x3d, -1, ISTORE, 2),
+    ISTORE_3(0x3e, -1, ISTORE, 3),
+    ASTORE_0(0x4b, -1, ASTORE, 0),
+    ASTORE_1(0x4c, -1, ASTORE, 1),
+    ASTORE_2(0x4d, -1, ASTORE, 2),
+    ASTORE_3(0x4e, -1, ASTORE, 3),
+    IASTORE(0x4f, -3),
+    AASTORE(0x53, -3),
+
+    POP(0x57, -1),
+    POP2(0x58, -2),
+    DUP(0x59, 1),
+    DUP2(0x5c, 2),
+    SWAP(0x5f, 0),
+
+    IADD(0x60, -1),
+    ISUB(0x64, -1),
+    IMUL(0x68, -1),
+    IDIV(0x6c, -1),
+    IREM(0x70, -1),
+    INEG(0x74, 0),
+    ISHL(0x78, -1),
+    ISHR(0x7a, -1),
+    IUSHR(0x7c, -1),
+    IAND(0x7e, -1),
+    IOR(0x80, -1),
+    IXOR(0x82, -1),
+    IINC(0x84, 0),
+
+    IFEQ(0x99, -1),
+    IFNE(0x9a, -1),
+    IFLT(0x9b, -1),
+    IFGE(0x9c, -1),
+    IFGT(0x9d, -1),
+    IFLE(0x9e, -1),
+    IF_ICMPEQ(0x9f, -2),
+    IF_ICMPNE(0xa0, -2),
+    IF_ICMPLT(0xa1, -2),
+    IF_ICMPGE(0xa2, -2),
+    IF_ICMPGT(0xa3, -2),
+    IF_ICMPLE(0xa4, -2),
+    GOTO(0xa7, 0),
+
+    IRETURN(0xac, -1),
+    ARETURN(0xb0, -1),
+    RETURN(0xb1, 0),
+
+    GETSTATIC(0xb2, 1),
+    PUTSTATIC(0xb3, -1),
+    GETFIELD(0xb4, 0),
+    PUTFIELD(0xb5, -2),
+    INVOKEVIRTUAL(0xb6, JasminOpcode.VARIABLE),
+    INVOKESPECIAL(0xb7, JasminOpcode.VARIABLE),
+    INVOKESTATIC(0xb8, JasminOpcode.VARIABLE),
+
+    NEW(0xbb, 1),
+    NEWARRAY(0xbc, 0),
+    ANEWARRAY(0xbd, 0),
+    ARRAYLENGTH(0xbe, 0),
+    ATHROW(0xbf, -1),
+    CHECKCAST(0xc0, 0);
+
+    /**
+     * Stack delta of the instructions whose effect depends on their operands.
+     */
+    private static final int VARIABLE = Integer.MIN_VALUE;
+
+    private final int code;
+    private final int stackDelta;
+    private final JasminOpcode base;
+    private final int implicitLocal;
+
+    JasminOpcode(int code, int stackDelta) {
+        this.code = code;
+        this.stackDelta = stackDelta;
+        this.base = null;
+        this.implicitLocal = -1;
+    }
+
+    JasminOpcode(int code, int stackDelta, JasminOpcode base, int implicitLocal) {
+        this.code = code;
+        this.stackDelta = stackDelta;
+        this.base = base;
+        this.implicitLocal = implicitLocal;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getMnemonic() {
+        return name().toLowerCase();
+    }
+
+    public boolean hasFixedStackDelta() {
+        return stackDelta != VARIABLE;
+    }
+
+    public int getStackDelta() {
+        if (!hasFixedStackDelta()) {
+            throw new RuntimeException("Stack delta of '" + getMnemonic() + "' depends on its operands");
+        }
+
+        return stackDelta;
+    }
+
+    /**
+     * @return the general form of this opcode, e.g. ILOAD for both ILOAD and ILOAD_1
+     */
+    public JasminOpcode getBase() {
+        return base != null ? base : this;
+    }
+
+    /**
+     * @return true if this is the one byte form of a local variable access, which has the register in the opcode
+     */
+    public boolean isShortForm() {
+        return base != null;
+    }
+
+    /**
+     * @return the register encoded in this opcode, or -1 if this is not a short form
+     */
+    public int getImplicitLocal() {
+        return implicitLocal;
+    }
+
+    /**
+     * @return the one byte form of this opcode for the given register, or null if there is none
+     */
+    public JasminOpcode toShortForm(int local) {
+        for (var candidate : values()) {
+            if (candidate.base == this && candidate.implicitLocal == local) {
+                return candidate;
+            }
+        }
+
+        return null;
+    }
+
+    public boolean isLoad() {
+        return getBase() == ILOAD || getBase() == ALOAD;
+    }
+
+    public boolean isStore() {
+        return getBase() == ISTORE || getBase() == ASTORE;
+    }
+
+    /**
+     * @return true if this opcode reads or writes a local variable
+     */
+    public boolean accessesLocal() {
+        return isLoad() || isStore() || this == IINC;
+    }
+
+    public boolean isConditionalBranch() {
+        return code >= IFEQ.code && code <= IF_ICMPLE.code;
+    }
+
+    public boolean isBranch() {
+        return isConditionalBranch() || this == GOTO;
+    }
+
+    /**
+     * @return true if execution never continues to the next instruction
+     */
+    public boolean isTerminator() {
+        return switch (this) {
+            case GOTO, RETURN, IRETURN, ARETURN, ATHROW -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * @return the branch taken in the opposite case, or null if this is not a conditional branch
+     */
+    public JasminOpcode negate() {
+        return switch (this) {
+            case IFEQ -> IFNE;
+            case IFNE -> IFEQ;
+            case IFLT -> IFGE;
+            case IFGE -> IFLT;
+            case IFGT -> IFLE;
+            case IFLE -> IFGT;
+            case IF_ICMPEQ -> IF_ICMPNE;
+            case IF_ICMPNE -> IF_ICMPEQ;
+            case IF_ICMPLT -> IF_ICMPGE;
+            case IF_ICMPGE -> IF_ICMPLT;
+            case IF_ICMPGT -> IF_ICMPLE;
+            case IF_ICMPLE -> IF_ICMPGT;
+            default -> null;
+        };
+    }
+
+    @Override
+    public String toString() {
+        return getMnemonic();
+    }
+}
@@ -0,0 +1,142 @@
+package pt.up.fe.comp2024.backend;
+
+import jasmin.ClassFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Map;
+
+/**
+ * Runs generated classes inside the current JVM, instead of writing them to disk and starting a new java process.
+ * <p>
+ * Each run uses a new class loader, which also loads the runtime classes of Java-- (libs-jmm/compiled), so static
+ * state of the libraries (e.g. the input buffer of io) is not shared between runs. Generated classes and libraries
+ * must be in the same loader to be in the same runtime package, since the methods of io are package-private.
+ */
+public class JasminRunner {
+
+    private static final String LIBS_CLASSPATH = "libs-jmm/compiled";
+
+    /**
+     * Assembles Jasmin code in memory.
+     *
+     * @return the bytes of the class file
+     */
+    public static byte[] assemble(String jasminCode) {
+        var classFile = new ClassFile();
+
+        try {
+            classFile.readJasmin(new StringReader(jasminCode), "in-memory.j", true);
+        } catch (Exception e) {
+            throw new RuntimeException("Could not assemble Jasmin code", e);
+        }
+
+        if (classFile.errorCount() > 0) {
+            throw new RuntimeException("Found " + classFile.errorCount() + " errors while assembling Jasmin code.");
+        }
+
+        var bytes = new ByteArrayOutputStream();
+        try {
+            classFile.write(bytes);
+        } catch (Exception e) {
+            throw new RuntimeException("Could not assemble Jasmin code", e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Loads the given class in a new class loader, together with the runtime classes of Java--.
+     *
+     * @return the main method of the class
+     */
+    public static Method getMain(String className, byte[] classFile) {
+        var loader = new InMemoryClassLoader(Map.of(className, classFile), getLibsUrl());
+
+        try {
+            var main = loader.loadClass(className).getMethod("main", String[].class);
+
+            // generated classes are not public
+            main.setAccessible(true);
+
+            return main;
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Could not load class '" + className + "'", e);
+        }
+    }
+
+    /**
+     * Runs the main method of the given class on the current thread, with the standard streams of this JVM and no
+     * time limit, as if the class was run by a new java process.
+     * <p>
+     * Like in a new process, an exception thrown by the program is printed to the standard error.
+     */
+    public static void run(String className, byte[] classFile) {
+        var main = getMain(className, classFile);
+
+        var thread = Thread.currentThread();
+        var originalLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(main.getDeclaringClass().getClassLoader());
+
+        try {
+            main.invoke(null, (Object) new String[0]);
+        } catch (InvocationTargetException e) {
+            e.getCause().printStackTrace();
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Could not run class '" + className + "'", e);
+        } finally {
+            thread.setContextClassLoader(originalLoader);
+        }
+    }
+
+    private static URL getLibsUrl() {
+        try {
+            return new File(LIBS_CLASSPATH).toURI().toURL();
+        } catch (MalformedURLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Defines the generated classes from their bytes, and loads everything else from the libraries.
+     * <p>
+     * Generated classes take precedence over the libraries, as they would by being first in the classpath, since some
+     * test classes have the same name as a compiled library (e.g. Quicksort).
+     */
+    private static class InMemoryClassLoader extends URLClassLoader {
+
+        private final Map<String, byte[]> classes;
+
+        InMemoryClassLoader(Map<String, byte[]> classes, URL libs) {
+            super(new URL[]{libs}, ClassLoader.getPlatformClassLoader());
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(name)) {
+                var bytes = classes.get(name);
+                if (bytes == null) {
+                    return super.loadClass(name, resolve);
+                }
+
+                var loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    loaded = defineClass(name, bytes, 0, bytes.length);
+                }
+
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+
+                return loaded;
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package pt.up.fe.comp2024.backend;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Serializes a generated class as Jasmin code. All the text goes through a single buffered writer, instructions are
+ * written piece by piece instead of being built as strings first.
+ */
+public class JasminWriter {
+
+    private static final String NL = "\n";
+    private static final String TAB = "   ";
+
+    private final BufferedWriter writer;
+
+    public JasminWriter(Writer out) {
+        this.writer = new BufferedWriter(out);
+    }
+
+    public void write(JasminClass jasminClass) {
+        line(".class " + jasminClass.getName());
+        line(".super " + jasminClass.getSuperName());
+
+        for (var implemented : jasminClass.getInterfaces()) {
+            line(".implements " + implemented);
+        }
+
+        for (var field : jasminClass.getFields()) {
+            write(".field ");
+            for (var modifier : field.getModifiers()) {
+                write(modifier).write(" ");
+            }
+            line(field.getName() + " " + field.getDescriptor());
+        }
+
+        line("");
+
+        for (var method : jasminClass.getMethods()) {
+            write(method);
+        }
+
+        flush();
+    }
+
+    private void write(JasminMethod method) {
+        write(".method ");
+        for (var modifier : method.getModifiers()) {
+            write(modifier).write(" ");
+        }
+        line(method.getName() + method.getDescriptor());
+
+        indented(".limit stack " + method.getMaxStack());
+        indented(".limit locals " + method.getMaxLocals());
+
+        for (var inst : method.getBody()) {
+            instruction(inst);
+        }
+
+        line(".end method");
+    }
+
+    private JasminWriter line(String text) {
+        return write(text).write(NL);
+    }
+
+    private JasminWriter indented(String text) {
+        return write(TAB).write(text).write(NL);
+    }
+
+    private JasminWriter instruction(JasminInstruction inst) {
+        if (inst.isLabel()) {
+            return write(inst.getLabel()).write(":").write(NL);
+        }
+
+        write(TAB).write(inst.getOpcode().getMnemonic());
+        for (var operand : inst.getOperands()) {
+            write(" ").write(operand);
+        }
+
+        return write(NL);
+    }
+
+    private void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private JasminWriter write(String text) {
+        try {
+            writer.write(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return this;
+    }
+}
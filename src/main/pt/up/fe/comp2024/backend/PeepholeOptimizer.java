@@ -0,0 +1,46 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp2024.backend.peephole.*;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs a pipeline of peephole passes over the body of a Jasmin method.
+ * <p>
+ * The rewriting passes are repeated until none of them changes the code, since the result of one pass can expose
+ * patterns for the others. The final passes only choose the encoding of each instruction, and run once.
+ */
+public class PeepholeOptimizer {
+
+    private final List<PeepholePass> passes;
+    private final List<PeepholePass> finalPasses;
+
+    /**
+     * @param temporaries the registers of the temporaries of the method, the only ones that may be removed
+     */
+    public PeepholeOptimizer(Set<Integer> temporaries) {
+        this(List.of(new JumpSimplification(), new RedundantStoreLoad(temporaries), new IncrementSelection(),
+                        new CompareWithZero(), new BooleanBranchFusion()),
+                List.of(new ShortFormSelection()));
+    }
+
+    public PeepholeOptimizer(List<PeepholePass> passes, List<PeepholePass> finalPasses) {
+        this.passes = passes;
+        this.finalPasses = finalPasses;
+    }
+
+    public void optimize(List<JasminInstruction> code) {
+        boolean changed;
+        do {
+            changed = false;
+            for (var pass : passes) {
+                changed |= pass.apply(code);
+            }
+        } while (changed);
+
+        for (var pass : finalPasses) {
+            pass.apply(code);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package pt.up.fe.comp2024.backend;
+
+import java.util.List;
+
+/**
+ * Represents a peephole pass over the instructions of a single Jasmin method.
+ */
+public interface PeepholePass {
+
+    /**
+     * Rewrites the given instructions in place.
+     *
+     * @param code the body of a method, labels included
+     * @return true if the code was changed
+     */
+    boolean apply(List<JasminInstruction> code);
+
+}
@@ -0,0 +1,216 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.Profile;
+
+import java.io.File;
+import java.util.*;
+
+import static pt.up.fe.comp2024.backend.JasminOpcode.*;
+import static pt.up.fe.comp2024.optimization.InstructionUtils.indexInstructions;
+import static pt.up.fe.comp2024.optimization.InstructionUtils.indexLabels;
+
+/**
+ * The counters of a class compiled with profiling, see {@link Profile} for the events they count.
+ * <p>
+ * The counters are the elements of an int array in a static field, created by the static initializer of the class.
+ * Each event increments its element in place. A generated static method writes the key and the count of every counter
+ * to the profile file, given by an absolute path so it does not depend on the working directory of the run.
+ * <p>
+ * The static initializer registers a shutdown hook that writes the profile, so it is also written when the program
+ * ends with an uncaught exception or System.exit. The hook needs a Runnable, so the class implements Runnable with a
+ * generated 'run' method. When that could change the behavior of the class, because it extends another class, whose
+ * constructor may have effects, or already has a method named 'run', the profile is written before each return of main
+ * instead.
+ * <p>
+ * The keys are assigned before the methods are generated, in the order of the methods, so the counter of each key does
+ * not depend on the order in which the methods are generated.
+ */
+class ProfileCounters {
+
+    private static final String ARRAY_DESCRIPTOR = "[I";
+    private static final String PRINT_STREAM = "java/io/PrintStream";
+    private static final String RUNNABLE = "java/lang/Runnable";
+    private static final String THREAD = "java/lang/Thread";
+    private static final String RUNTIME = "java/lang/Runtime";
+    private static final String RUN = "run";
+
+    private final String className;
+    private final Map<String, Integer> counters = new LinkedHashMap<>();
+    private final String fieldName;
+    private final String dumpName;
+    private final String output;
+    private final boolean usesShutdownHook;
+
+    /**
+     * @param output the file the profile is written to, empty to have no counters, so the class is generated without
+     *               profiling
+     */
+    ProfileCounters(ClassUnit classUnit, Optional<File> output) {
+        this.className = classUnit.getClassName();
+
+        // forward slashes also work on Windows, and are not escapes in the string constant
+        this.output = output.map(file -> file.getAbsolutePath().replace(File.separatorChar, '/')).orElse(null);
+
+        var superClass = classUnit.getSuperClass();
+        this.usesShutdownHook = (superClass == null || superClass.equals("Object"))
+                && classUnit.getMethods().stream().noneMatch(method -> method.getMethodName().equals(RUN));
+
+        var usedNames = new HashSet<String>();
+        classUnit.getFields().forEach(field -> usedNames.add(field.getFieldName()));
+        classUnit.getMethods().forEach(method -> usedNames.add(method.getMethodName()));
+        this.fieldName = getFreshName("profile$counts", usedNames);
+        this.dumpName = getFreshName("profile$dump", usedNames);
+
+        if (output.isEmpty()) {
+            return;
+        }
+
+        for (var method : classUnit.getMethods()) {
+            if (method.isConstructMethod()) {
+                continue;
+            }
+
+            var name = method.getMethodName();
+            addCounter(Profile.entryKey(name));
+
+            var code = method.getInstructions();
+            var labels = indexLabels(method, indexInstructions(code));
+
+            for (int i = 0; i < code.size(); i++) {
+                if (code.get(i) instanceof CondBranchInstruction branch) {
+                    addCounter(Profile.branchKey(name, branch.getLabel()));
+                    addCounter(Profile.fallthroughKey(name, branch.getLabel()));
+                } else if (code.get(i) instanceof GotoInstruction jump && labels.get(jump.getLabel()) <= i) {
+                    addCounter(Profile.backEdgeKey(name, jump.getLabel()));
+                }
+            }
+        }
+    }
+
+    private static String getFreshName(String name, Set<String> usedNames) {
+        while (!usedNames.add(name)) {
+            name = "_" + name;
+        }
+
+        return name;
+    }
+
+    private void addCounter(String key) {
+        counters.putIfAbsent(key, counters.size());
+    }
+
+    boolean isEnabled() {
+        return !counters.isEmpty();
+    }
+
+    /**
+     * @return the instructions that increment the counter of the key, none if the key has no counter
+     */
+    List<JasminInstruction> increment(String key) {
+        var counter = counters.get(key);
+        if (counter == null) {
+            return List.of();
+        }
+
+        return List.of(
+                JasminInstruction.of(GETSTATIC, className + "/" + fieldName, ARRAY_DESCRIPTOR),
+                JasminInstruction.intConstant(counter),
+                JasminInstruction.of(DUP2),
+                JasminInstruction.of(IALOAD),
+                JasminInstruction.of(ICONST_1),
+                JasminInstruction.of(IADD),
+                JasminInstruction.of(IASTORE));
+    }
+
+    /**
+     * @return the instructions that write the profile before each return of main, when there is no shutdown hook
+     */
+    List<JasminInstruction> dump(Method method, CallSiteTable callSites) {
+        if (!isEnabled() || usesShutdownHook || !method.isStaticMethod() || !method.getMethodName().equals("main")) {
+            return List.of();
+        }
+
+        return List.of(JasminInstruction.invoke(INVOKESTATIC, callSites.get(className, "\"" + dumpName + "\"", "()V")));
+    }
+
+    /**
+     * Adds the field of the counters and the method that writes them to the class, and the creation of the counters
+     * and the registration of the shutdown hook to its static initializer.
+     */
+    void addTo(JasminClass jasminClass, List<JasminInstruction> staticInitializer, CallSiteTable callSites) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        var field = className + "/" + fieldName;
+        jasminClass.addField(List.of("private", "static"), fieldName, ARRAY_DESCRIPTOR);
+
+        staticInitializer.add(JasminInstruction.intConstant(counters.size()));
+        staticInitializer.add(JasminInstruction.of(NEWARRAY, "int"));
+        staticInitializer.add(JasminInstruction.of(PUTSTATIC, field, ARRAY_DESCRIPTOR));
+
+        var print = callSites.get(PRINT_STREAM, "\"print\"", "(Ljava/lang/String;)V");
+        var println = callSites.get(PRINT_STREAM, "\"println\"", "(I)V");
+
+        var body = new ArrayList<JasminInstruction>();
+        body.add(JasminInstruction.of(NEW, PRINT_STREAM));
+        body.add(JasminInstruction.of(DUP));
+        body.add(JasminInstruction.of(LDC, quote(output)));
+        body.add(JasminInstruction.invoke(INVOKESPECIAL, callSites.get(PRINT_STREAM, "\"<init>\"",
+                "(Ljava/lang/String;)V")));
+        body.add(JasminInstruction.of(ASTORE_0));
+
+        for (var counter : counters.entrySet()) {
+            body.add(JasminInstruction.of(ALOAD_0));
+            body.add(JasminInstruction.of(LDC, quote(counter.getKey() + " ")));
+            body.add(JasminInstruction.invoke(INVOKEVIRTUAL, print));
+
+            body.add(JasminInstruction.of(ALOAD_0));
+            body.add(JasminInstruction.of(GETSTATIC, field, ARRAY_DESCRIPTOR));
+            body.add(JasminInstruction.intConstant(counter.getValue()));
+            body.add(JasminInstruction.of(IALOAD));
+            body.add(JasminInstruction.invoke(INVOKEVIRTUAL, println));
+        }
+
+        body.add(JasminInstruction.of(ALOAD_0));
+        body.add(JasminInstruction.invoke(INVOKEVIRTUAL, callSites.get(PRINT_STREAM, "\"close\"", "()V")));
+        body.add(JasminInstruction.of(RETURN));
+
+        int maxStack = new StackSizeCalculator(body).compute();
+        jasminClass.addMethod(new JasminMethod(List.of("private", "static"), dumpName, "()V", maxStack, 1, body));
+
+        if (usesShutdownHook) {
+            addShutdownHook(jasminClass, staticInitializer, callSites);
+        }
+    }
+
+    /**
+     * Makes the class a Runnable that writes the profile, and registers an instance of it as a shutdown hook.
+     */
+    private void addShutdownHook(JasminClass jasminClass, List<JasminInstruction> staticInitializer,
+                                 CallSiteTable callSites) {
+        jasminClass.addInterface(RUNNABLE);
+
+        var run = List.of(
+                JasminInstruction.invoke(INVOKESTATIC, callSites.get(className, "\"" + dumpName + "\"", "()V")),
+                JasminInstruction.of(RETURN));
+        jasminClass.addMethod(new JasminMethod(List.of("public"), RUN, "()V", 0, 1, run));
+
+        staticInitializer.add(JasminInstruction.invoke(INVOKESTATIC, callSites.get(RUNTIME, "\"getRuntime\"",
+                "()Ljava/lang/Runtime;")));
+        staticInitializer.add(JasminInstruction.of(NEW, THREAD));
+        staticInitializer.add(JasminInstruction.of(DUP));
+        staticInitializer.add(JasminInstruction.of(NEW, className));
+        staticInitializer.add(JasminInstruction.of(DUP));
+        staticInitializer.add(JasminInstruction.invoke(INVOKESPECIAL, callSites.get(className, "\"<init>\"", "()V")));
+        staticInitializer.add(JasminInstruction.invoke(INVOKESPECIAL, callSites.get(THREAD, "\"<init>\"",
+                "(Ljava/lang/Runnable;)V")));
+        staticInitializer.add(JasminInstruction.invoke(INVOKEVIRTUAL, callSites.get(RUNTIME, "\"addShutdownHook\"",
+                "(Ljava/lang/Thread;)V")));
+    }
+
+    private static String quote(String text) {
+        return "\"" + text + "\"";
+    }
+}
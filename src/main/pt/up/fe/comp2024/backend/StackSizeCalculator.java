@@ -0,0 +1,138 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the maximum operand stack depth of a method by simulating the emitted Jasmin instructions.
+ * <p>
+ * Every reachable path is followed, including both sides of conditional branches, so the result is the exact
+ * value the verifier needs for the {@code .limit stack} directive.
+ */
+public class StackSizeCalculator {
+
+    private final List<JasminInstruction> code;
+    private final Map<String, Integer> labels;
+
+    /**
+     * @param code the body of the method
+     */
+    public StackSizeCalculator(List<JasminInstruction> code) {
+        this.code = code;
+        this.labels = new HashMap<>();
+
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i).isLabel()) {
+                labels.put(code.get(i).getLabel(), i);
+            }
+        }
+    }
+
+    public int compute() {
+        var depthAt = new int[code.size()];
+        Arrays.fill(depthAt, -1);
+
+        var worklist = new ArrayDeque<int[]>();
+        worklist.push(new int[]{0, 0});
+
+        int max = 0;
+        while (!worklist.isEmpty()) {
+            var state = worklist.pop();
+            int index = state[0];
+            int depth = state[1];
+
+            while (index < code.size()) {
+                // Already simulated from this point, the rest of the path is known
+                if (depthAt[index] >= depth) {
+                    break;
+                }
+                depthAt[index] = depth;
+
+                var inst = code.get(index);
+
+                if (inst.isLabel()) {
+                    index++;
+                    continue;
+                }
+
+                depth += getStackDelta(inst);
+                if (depth < 0) {
+                    throw new RuntimeException("Stack underflow at instruction '" + inst + "'");
+                }
+                max = Math.max(max, depth);
+
+                if (inst.isBranch()) {
+                    worklist.push(new int[]{getTarget(inst), depth});
+                }
+
+                if (inst.isTerminator()) {
+                    break;
+                }
+
+                index++;
+            }
+        }
+
+        return max;
+    }
+
+    private int getTarget(JasminInstruction inst) {
+        var target = labels.get(inst.getBranchTarget());
+        if (target == null) {
+            throw new RuntimeException("Unknown branch target in instruction '" + inst + "'");
+        }
+
+        return target;
+    }
+
+    private static int getStackDelta(JasminInstruction inst) {
+        var opcode = inst.getOpcode();
+
+        if (opcode.hasFixedStackDelta()) {
+            return opcode.getStackDelta();
+        }
+
+        return switch (opcode) {
+            case INVOKESTATIC -> getInvokeDelta(inst.getOperand(0), false);
+            case INVOKEVIRTUAL, INVOKESPECIAL -> getInvokeDelta(inst.getOperand(0), true);
+            default -> throw new NotImplementedException(opcode);
+        };
+    }
+
+    private static int getInvokeDelta(String methodRef, boolean hasReceiver) {
+        var descriptor = methodRef.substring(methodRef.indexOf('('));
+        int end = descriptor.indexOf(')');
+
+        int argSlots = 0;
+        int i = 1;
+        while (i < end) {
+            char c = descriptor.charAt(i);
+            boolean isArray = c == '[';
+
+            // Array dimensions do not take a slot of their own
+            while (c == '[') {
+                c = descriptor.charAt(++i);
+            }
+            if (c == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+
+            argSlots += !isArray && (c == 'J' || c == 'D') ? 2 : 1;
+            i++;
+        }
+
+        var returnType = descriptor.charAt(end + 1);
+        int returnSlots = switch (returnType) {
+            case 'V' -> 0;
+            case 'J', 'D' -> 2;
+            default -> 1;
+        };
+
+        return returnSlots - argSlots - (hasReceiver ? 1 : 0);
+    }
+}
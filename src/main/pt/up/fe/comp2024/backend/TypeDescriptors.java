@@ -0,0 +1,108 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JVM descriptors of the OLLIR types of a class, e.g. "I" for INT32 or "(I[I)Z" for a method.
+ * <p>
+ * Descriptors of primitive types are fixed, the ones of classes, arrays and method signatures are built once and then
+ * kept, so each call instruction only looks its descriptor up. One instance is shared by the generators of all the
+ * methods of a class, which may run at the same time.
+ */
+public class TypeDescriptors {
+
+    private static final Map<ElementType, String> PRIMITIVES = new EnumMap<>(ElementType.class);
+
+    static {
+        PRIMITIVES.put(ElementType.INT32, "I");
+        PRIMITIVES.put(ElementType.BOOLEAN, "Z");
+        PRIMITIVES.put(ElementType.VOID, "V");
+        PRIMITIVES.put(ElementType.STRING, "Ljava/lang/String;");
+    }
+
+    private final Map<String, String> classDescriptors = new ConcurrentHashMap<>();
+
+    private final Map<String, String> arrayDescriptors = new ConcurrentHashMap<>();
+
+    // keyed on the descriptors of the parameters followed by the one of the return type
+    private final Map<List<String>, String> methodDescriptors = new ConcurrentHashMap<>();
+
+    private final String className;
+
+    /**
+     * @param className the name of the class being generated, which is the type of 'this'
+     */
+    public TypeDescriptors(String className) {
+        this.className = className;
+    }
+
+    /**
+     * @return the descriptor of the type, e.g. "I", "[I" or "LSimple;"
+     */
+    public String getDescriptor(Type type) {
+        var elementType = type.getTypeOfElement();
+
+        var primitive = PRIMITIVES.get(elementType);
+        if (primitive != null) {
+            return primitive;
+        }
+
+        return switch (elementType) {
+            case ARRAYREF -> getArrayDescriptor((ArrayType) type);
+            case OBJECTREF, CLASS, THIS -> classDescriptors.computeIfAbsent(getClassName(type), name -> "L" + name + ";");
+            default -> throw new NotImplementedException(type);
+        };
+    }
+
+    private String getArrayDescriptor(ArrayType type) {
+        var elementDescriptor = getDescriptor(type.getElementType());
+        var descriptor = arrayDescriptors.computeIfAbsent(elementDescriptor, element -> "[" + element);
+
+        return type.getNumDimensions() == 1 ? descriptor : "[".repeat(type.getNumDimensions() - 1) + descriptor;
+    }
+
+    /**
+     * @return the name of the class of a reference type, without the prefix of its element type
+     */
+    public String getClassName(Type type) {
+        if (type.getTypeOfElement() == ElementType.THIS) {
+            return className;
+        }
+
+        if (type instanceof ClassType classType) {
+            return classType.getName();
+        }
+
+        throw new NotImplementedException(type);
+    }
+
+    /**
+     * @return the descriptor of a method with the given parameters and return type, e.g. "(I[I)Z"
+     */
+    public String getMethodDescriptor(List<? extends Element> params, Type returnType) {
+        var key = new ArrayList<String>(params.size() + 1);
+        for (var param : params) {
+            key.add(getDescriptor(param.getType()));
+        }
+        key.add(getDescriptor(returnType));
+
+        return methodDescriptors.computeIfAbsent(key, TypeDescriptors::buildMethodDescriptor);
+    }
+
+    private static String buildMethodDescriptor(List<String> key) {
+        var descriptor = new StringBuilder("(");
+
+        for (int i = 0; i < key.size() - 1; i++) {
+            descriptor.append(key.get(i));
+        }
+
+        return descriptor.append(")").append(key.get(key.size() - 1)).toString();
+    }
+}
@@ -0,0 +1,73 @@
+package pt.up.fe.comp2024.backend.peephole;
+
+import pt.up.fe.comp2024.backend.JasminInstruction;
+import pt.up.fe.comp2024.backend.PeepholePass;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static pt.up.fe.comp2024.backend.JasminOpcode.*;
+
+/**
+ * Branches directly on a comparison whose boolean result is only used to branch.
+ * <p>
+ * {@code if<cond> T; iconst_0; goto E; T: iconst_1; E: ifne L} becomes {@code if<cond> L}, and
+ * {@code if<!cond> L} when the final branch is {@code ifeq}.
+ */
+public class BooleanBranchFusion implements PeepholePass {
+
+    private static final int PATTERN_SIZE = 6;
+
+    @Override
+    public boolean apply(List<JasminInstruction> code) {
+        var references = new HashMap<String, Integer>();
+        for (var inst : code) {
+            if (inst.isBranch()) {
+                references.merge(inst.getBranchTarget(), 1, Integer::sum);
+            }
+        }
+
+        boolean changed = false;
+
+        for (int i = 0; i + PATTERN_SIZE < code.size(); i++) {
+            var fused = match(code.subList(i, i + PATTERN_SIZE + 1), references);
+            if (fused == null) {
+                continue;
+            }
+
+            code.subList(i, i + PATTERN_SIZE + 1).clear();
+            code.add(i, fused);
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    private static JasminInstruction match(List<JasminInstruction> window, Map<String, Integer> references) {
+        var compare = window.get(0);
+        var trueLabel = window.get(3);
+        var endLabel = window.get(5);
+        var test = window.get(6);
+
+        boolean isShape = compare.isConditionalBranch()
+                && window.get(1).is(ICONST_0)
+                && window.get(2).is(GOTO)
+                && trueLabel.isLabel() && trueLabel.getLabel().equals(compare.getBranchTarget())
+                && window.get(4).is(ICONST_1)
+                && endLabel.isLabel() && endLabel.getLabel().equals(window.get(2).getBranchTarget())
+                && test.is(IFEQ, IFNE);
+
+        // no other path may reach the middle of the pattern
+        if (!isShape || references.get(trueLabel.getLabel()) != 1 || references.get(endLabel.getLabel()) != 1) {
+            return null;
+        }
+
+        var opcode = test.is(IFNE) ? compare.getOpcode() : compare.getOpcode().negate();
+        if (opcode == null) {
+            return null;
+        }
+
+        return JasminInstruction.of(opcode, test.getBranchTarget());
+    }
+}
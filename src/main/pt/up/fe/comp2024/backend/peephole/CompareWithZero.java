@@ -0,0 +1,68 @@
+package pt.up.fe.comp2024.backend.peephole;
+
+import pt.up.fe.comp2024.backend.JasminInstruction;
+import pt.up.fe.comp2024.backend.JasminOpcode;
+import pt.up.fe.comp2024.backend.PeepholePass;
+
+import java.util.List;
+import java.util.Map;
+
+import static pt.up.fe.comp2024.backend.JasminOpcode.*;
+
+/**
+ * Replaces comparisons against the constant zero by the single operand branches.
+ * <ul>
+ *     <li>{@code iconst_0; if_icmp<cond> L} becomes {@code if<cond> L};</li>
+ *     <li>{@code iconst_0; iload n; if_icmp<cond> L} becomes {@code iload n; if<swapped cond> L}.</li>
+ * </ul>
+ */
+public class CompareWithZero implements PeepholePass {
+
+    private static final Map<JasminOpcode, JasminOpcode> ZERO_BRANCHES = Map.of(
+            IF_ICMPEQ, IFEQ, IF_ICMPNE, IFNE,
+            IF_ICMPLT, IFLT, IF_ICMPGE, IFGE,
+            IF_ICMPGT, IFGT, IF_ICMPLE, IFLE);
+
+    // 0 < x is the same as x > 0
+    private static final Map<JasminOpcode, JasminOpcode> SWAPPED_ZERO_BRANCHES = Map.of(
+            IF_ICMPEQ, IFEQ, IF_ICMPNE, IFNE,
+            IF_ICMPLT, IFGT, IF_ICMPGE, IFLE,
+            IF_ICMPGT, IFLT, IF_ICMPLE, IFGE);
+
+    @Override
+    public boolean apply(List<JasminInstruction> code) {
+        boolean changed = false;
+
+        for (int i = 0; i + 1 < code.size(); i++) {
+            if (!isZero(code.get(i))) {
+                continue;
+            }
+
+            var next = code.get(i + 1);
+            if (!next.isLabel() && ZERO_BRANCHES.containsKey(next.getOpcode())) {
+                code.set(i, JasminInstruction.of(ZERO_BRANCHES.get(next.getOpcode()), next.getBranchTarget()));
+                code.remove(i + 1);
+                changed = true;
+                continue;
+            }
+
+            if (i + 2 >= code.size() || !next.isLoad()) {
+                continue;
+            }
+
+            var branch = code.get(i + 2);
+            if (!branch.isLabel() && SWAPPED_ZERO_BRANCHES.containsKey(branch.getOpcode())) {
+                var swapped = SWAPPED_ZERO_BRANCHES.get(branch.getOpcode());
+                code.set(i + 2, JasminInstruction.of(swapped, branch.getBranchTarget()));
+                code.remove(i);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private static boolean isZero(JasminInstruction inst) {
+        return inst.getIntConstant().filter(value -> value == 0).isPresent();
+    }
+}
@@ -0,0 +1,67 @@
+package pt.up.fe.comp2024.backend.peephole;
+
+import pt.up.fe.comp2024.backend.JasminInstruction;
+import pt.up.fe.comp2024.backend.PeepholePass;
+
+import java.util.List;
+import java.util.Optional;
+
+import static pt.up.fe.comp2024.backend.JasminOpcode.*;
+
+/**
+ * Replaces the addition of a small constant to a local variable by {@code iinc}.
+ * <p>
+ * Matches {@code iload n; <const k>; iadd|isub; istore n} and {@code <const k>; iload n; iadd; istore n}. Increments
+ * that do not fit in a byte take the wide form of iinc, which is still a single instruction and no longer than the
+ * four it replaces.
+ */
+public class IncrementSelection implements PeepholePass {
+
+    private static final int MIN_INCREMENT = Short.MIN_VALUE;
+    private static final int MAX_INCREMENT = Short.MAX_VALUE;
+
+    @Override
+    public boolean apply(List<JasminInstruction> code) {
+        boolean changed = false;
+
+        for (int i = 0; i + 3 < code.size(); i++) {
+            var increment = matchIncrement(code.subList(i, i + 4));
+            if (increment.isEmpty()) {
+                continue;
+            }
+
+            var reg = code.get(i + 3).getLocalIndex().orElseThrow();
+            code.subList(i, i + 4).clear();
+            code.add(i, JasminInstruction.of(IINC, reg, increment.get()));
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    private static Optional<Integer> matchIncrement(List<JasminInstruction> window) {
+        var op = window.get(2);
+        var store = window.get(3);
+
+        if (!op.is(IADD, ISUB) || store.getBaseOpcode() != ISTORE) {
+            return Optional.empty();
+        }
+
+        var reg = store.getLocalIndex();
+        var first = window.get(0);
+        var second = window.get(1);
+
+        Optional<Integer> constant;
+        if (first.isLoad() && first.getLocalIndex().equals(reg)) {
+            constant = second.getIntConstant();
+        } else if (op.is(IADD) && second.isLoad() && second.getLocalIndex().equals(reg)) {
+            constant = first.getIntConstant();
+        } else {
+            return Optional.empty();
+        }
+
+        return constant
+                .map(value -> op.is(ISUB) ? -value : value)
+                .filter(value -> value >= MIN_INCREMENT && value <= MAX_INCREMENT);
+    }
+}
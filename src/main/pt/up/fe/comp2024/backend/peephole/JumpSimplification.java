@@ -0,0 +1,171 @@
+package pt.up.fe.comp2024.backend.peephole;
+
+import pt.up.fe.comp2024.backend.JasminInstruction;
+import pt.up.fe.comp2024.backend.PeepholePass;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static pt.up.fe.comp2024.backend.JasminOpcode.GOTO;
+
+/**
+ * Removes jumps that do not change the control flow and the code they make unreachable.
+ * <ul>
+ *     <li>jumps to a jump are redirected to the final target;</li>
+ *     <li>{@code if<cond> L1; goto L2; L1:} becomes {@code if<!cond> L2; L1:};</li>
+ *     <li>a {@code goto} to the label right after it is removed;</li>
+ *     <li>instructions after a {@code goto} or return that no label leads to are removed;</li>
+ *     <li>labels that are not the target of any branch are removed.</li>
+ * </ul>
+ */
+public class JumpSimplification implements PeepholePass {
+
+    @Override
+    public boolean apply(List<JasminInstruction> code) {
+        boolean changed = threadJumps(code);
+        changed |= invertBranchesOverGoto(code);
+        changed |= removeJumpsToNext(code);
+        changed |= removeUnreachable(code);
+        changed |= removeUnusedLabels(code);
+        return changed;
+    }
+
+    private boolean threadJumps(List<JasminInstruction> code) {
+        // label -> label of the goto it is immediately followed by
+        var forwards = new HashMap<String, String>();
+        for (int i = 0; i < code.size(); i++) {
+            if (!code.get(i).isLabel()) {
+                continue;
+            }
+
+            var next = nextInstruction(code, i);
+            if (next != -1 && code.get(next).is(GOTO)) {
+                forwards.put(code.get(i).getLabel(), code.get(next).getBranchTarget());
+            }
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            var inst = code.get(i);
+            if (!inst.isBranch()) {
+                continue;
+            }
+
+            var target = finalTarget(inst.getBranchTarget(), forwards);
+            if (!target.equals(inst.getBranchTarget())) {
+                code.set(i, JasminInstruction.of(inst.getOpcode(), target));
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private static String finalTarget(String label, Map<String, String> forwards) {
+        var visited = new HashSet<String>();
+        var target = label;
+
+        // stop on cycles of gotos, which are infinite loops
+        while (forwards.containsKey(target) && visited.add(target)) {
+            target = forwards.get(target);
+        }
+
+        return target;
+    }
+
+    private boolean invertBranchesOverGoto(List<JasminInstruction> code) {
+        boolean changed = false;
+
+        for (int i = 0; i + 2 < code.size(); i++) {
+            var branch = code.get(i);
+            var jump = code.get(i + 1);
+
+            if (!branch.isConditionalBranch() || !jump.is(GOTO)) {
+                continue;
+            }
+
+            if (!isLabelAfter(code, i + 1, branch.getBranchTarget())) {
+                continue;
+            }
+
+            var negated = branch.getOpcode().negate();
+            if (negated == null) {
+                continue;
+            }
+
+            code.set(i, JasminInstruction.of(negated, jump.getBranchTarget()));
+            code.remove(i + 1);
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    private boolean removeJumpsToNext(List<JasminInstruction> code) {
+        boolean changed = false;
+
+        for (int i = 0; i < code.size(); i++) {
+            var inst = code.get(i);
+            if (inst.is(GOTO) && isLabelAfter(code, i, inst.getBranchTarget())) {
+                code.remove(i);
+                i--;
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private boolean removeUnreachable(List<JasminInstruction> code) {
+        boolean changed = false;
+
+        for (int i = 0; i < code.size(); i++) {
+            if (!code.get(i).isTerminator()) {
+                continue;
+            }
+
+            while (i + 1 < code.size() && !code.get(i + 1).isLabel()) {
+                code.remove(i + 1);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private boolean removeUnusedLabels(List<JasminInstruction> code) {
+        var targets = new HashSet<String>();
+        for (var inst : code) {
+            if (inst.isBranch()) {
+                targets.add(inst.getBranchTarget());
+            }
+        }
+
+        return code.removeIf(inst -> inst.isLabel() && !targets.contains(inst.getLabel()));
+    }
+
+    /**
+     * @return true if the given label is one of the labels that directly follow the instruction at the given index
+     */
+    private static boolean isLabelAfter(List<JasminInstruction> code, int index, String label) {
+        for (int i = index + 1; i < code.size() && code.get(i).isLabel(); i++) {
+            if (code.get(i).getLabel().equals(label)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static int nextInstruction(List<JasminInstruction> code, int index) {
+        for (int i = index + 1; i < code.size(); i++) {
+            if (!code.get(i).isLabel()) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
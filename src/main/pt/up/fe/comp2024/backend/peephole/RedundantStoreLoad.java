@@ -0,0 +1,111 @@
+package pt.up.fe.comp2024.backend.peephole;
+
+import pt.up.fe.comp2024.backend.JasminInstruction;
+import pt.up.fe.comp2024.backend.PeepholePass;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import static pt.up.fe.comp2024.backend.JasminOpcode.*;
+
+/**
+ * Removes values that take a round trip through a local variable for nothing.
+ * <ul>
+ *     <li>{@code istore n; iload n} is removed when {@code n} holds a temporary and that load is its only read, which
+ *     is the case of most temporaries created by the OLLIR generator. When temporaries share the register, the load
+ *     only needs to be the only read of the stored value: the register is written again, or the method returns,
+ *     before any other read of it or any jump;</li>
+ *     <li>{@code iload n; istore n} is removed.</li>
+ * </ul>
+ */
+public class RedundantStoreLoad implements PeepholePass {
+
+    private final Set<Integer> temporaries;
+
+    public RedundantStoreLoad(Set<Integer> temporaries) {
+        this.temporaries = temporaries;
+    }
+
+    @Override
+    public boolean apply(List<JasminInstruction> code) {
+        var reads = new HashMap<Integer, Integer>();
+        for (var inst : code) {
+            if (inst.isLoad() || inst.is(IINC)) {
+                inst.getLocalIndex().ifPresent(reg -> reads.merge(reg, 1, Integer::sum));
+            }
+        }
+
+        boolean changed = false;
+
+        for (int i = 0; i + 1 < code.size(); i++) {
+            var first = code.get(i);
+            var second = code.get(i + 1);
+
+            if (!isSameLocal(first, second)) {
+                continue;
+            }
+
+            var reg = first.getLocalIndex().orElseThrow();
+
+            boolean storeThenLoad = first.isStore() && second.isLoad() && temporaries.contains(reg)
+                    && (reads.get(reg) == 1 || isOverwrittenBeforeRead(code, i + 2, reg));
+            boolean loadThenStore = first.isLoad() && second.isStore();
+
+            if (storeThenLoad || loadThenStore) {
+                code.remove(i + 1);
+                code.remove(i);
+                reads.merge(reg, -1, Integer::sum);
+                i = Math.max(i - 2, -1);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return true if the register is written, or the method returns, before the register is read or the code jumps,
+     * going forward from the given position
+     */
+    private static boolean isOverwrittenBeforeRead(List<JasminInstruction> code, int start, int reg) {
+        for (int i = start; i < code.size(); i++) {
+            var inst = code.get(i);
+
+            // the value only reaches the code after a label by falling through to it
+            if (inst.isLabel()) {
+                continue;
+            }
+
+            if (inst.getLocalIndex().filter(local -> local == reg).isPresent()) {
+                return inst.isStore();
+            }
+
+            if (inst.isBranch()) {
+                return false;
+            }
+
+            if (inst.isTerminator()) {
+                return true;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isSameLocal(JasminInstruction first, JasminInstruction second) {
+        if (first.isLabel() || second.isLabel()) {
+            return false;
+        }
+
+        var firstReg = first.getLocalIndex();
+        var secondReg = second.getLocalIndex();
+
+        // the type must also match, 'istore n' is never followed by 'aload n' for the same variable anyway
+        return firstReg.isPresent() && firstReg.equals(secondReg) && isInt(first) == isInt(second);
+    }
+
+    private static boolean isInt(JasminInstruction inst) {
+        return inst.getBaseOpcode() == ILOAD || inst.getBaseOpcode() == ISTORE;
+    }
+}
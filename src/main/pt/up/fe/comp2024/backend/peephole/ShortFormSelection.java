@@ -0,0 +1,37 @@
+package pt.up.fe.comp2024.backend.peephole;
+
+import pt.up.fe.comp2024.backend.JasminInstruction;
+import pt.up.fe.comp2024.backend.PeepholePass;
+
+import java.util.List;
+
+/**
+ * Uses the one byte forms of the local variable instructions, e.g. {@code iload_1} instead of {@code iload 1}.
+ */
+public class ShortFormSelection implements PeepholePass {
+
+    @Override
+    public boolean apply(List<JasminInstruction> code) {
+        boolean changed = false;
+
+        for (int i = 0; i < code.size(); i++) {
+            var inst = code.get(i);
+            if (!inst.isLoad() && !inst.isStore()) {
+                continue;
+            }
+
+            // already in the short form
+            if (inst.getOpcode().isShortForm()) {
+                continue;
+            }
+
+            var shortForm = inst.getOpcode().toShortForm(inst.getLocalIndex().orElseThrow());
+            if (shortForm != null) {
+                code.set(i, JasminInstruction.of(shortForm));
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+}
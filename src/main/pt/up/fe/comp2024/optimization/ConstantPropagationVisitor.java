@@ -1,5 +1,6 @@
 package pt.up.fe.comp2024.optimization;
 
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.AJmmVisitor;
 import pt.up.fe.comp.jmm.ast.JmmNode;
@@ -9,9 +10,9 @@ import java.util.*;
 import static pt.up.fe.comp2024.ast.Kind.*;
 
 public class ConstantPropagationVisitor extends AJmmVisitor<Boolean, Boolean> {
-    private final Map<String, JmmNode> constants = new HashMap<>();
-    private final Map<String, List<JmmNode>> removals = new HashMap<>();
+    private Map<String, JmmNode> constants = new HashMap<>();
     private final SymbolTable symbolTable;
+    private String currentMethod;
     private int counter = 0;
 
     public ConstantPropagationVisitor(SymbolTable symbolTable) {
@@ -25,28 +26,57 @@ public class ConstantPropagationVisitor extends AJmmVisitor<Boolean, Boolean> {
         addVisit(ASSIGN_STMT, this::visitAssignment);
         addVisit(VAR_REF_EXPR, this::visitVarRefExpr);
         addVisit(WHILE_STMT, this::visitWhileStmt);
+        addVisit("ConditionalStmt", this::visitConditionalStmt);
         setDefaultVisit(this::defaultVisit);
     }
 
     private Boolean visitWhileStmt(JmmNode jmmNode, Boolean bool) {
+        // values assigned in the loop reach its condition and body from the previous iteration
+        var assigned = getAssignedVariables(jmmNode);
+        assigned.forEach(constants::remove);
+
         visit(jmmNode.getChildren().get(0));
         visit(jmmNode.getChildren().get(1));
+
+        assigned.forEach(constants::remove);
+        return bool;
+    }
+
+    private Boolean visitConditionalStmt(JmmNode jmmNode, Boolean bool) {
+        JmmNode ifStmt = jmmNode.getChildren().get(0);
+        visit(ifStmt.getChildren().get(0));
+
+        Map<String, JmmNode> beforeBranches = new HashMap<>(constants);
+        visit(ifStmt.getChildren().get(1));
+        Map<String, JmmNode> afterThen = constants;
+
+        constants = beforeBranches;
+        if (jmmNode.getChildren().size() > 1) {
+            visit(jmmNode.getChildren().get(1));
+        }
+
+        // only the values both branches agree on are known after the conditional
+        constants.entrySet().removeIf(entry -> !isSameValue(entry.getValue(), afterThen.get(entry.getKey())));
         return bool;
     }
 
     private Boolean visitAssignment(JmmNode jmmNode, Boolean bool) {
         JmmNode left = jmmNode.getChildren().get(0);
         JmmNode right = jmmNode.getChildren().get(1);
-        visit(left, bool);
         visit(right, bool);
 
+        // the assigned variable is not read, only the indexes of an array element
+        if (!left.getKind().equals("VarRefExpr")) {
+            visit(left, bool);
+            return true;
+        }
+
         String leftName = left.get("name");
         boolean isBoolean = right.getKind().equals("BooleanLiteral");
         boolean isInteger = right.getKind().equals("IntegerLiteral");
 
         if ((!isInteger && !isBoolean) || jmmNode.getChildren().size() > 2) {
             constants.remove(leftName);
-            removals.remove(leftName);
         } else if (isLocalVariable(leftName)) {
             constants.put(leftName, right);
         }
@@ -55,11 +85,8 @@ public class ConstantPropagationVisitor extends AJmmVisitor<Boolean, Boolean> {
 
     private Boolean visitVarRefExpr(JmmNode jmmNode, Boolean bool) {
         if (constants.containsKey(jmmNode.get("name"))) {
-            JmmNode newNode = constants.get(jmmNode.get("name"));
-            JmmNode parent = jmmNode.getParent();
-            int index = jmmNode.getIndexOfSelf();
-            parent.removeChild(index);
-            parent.add(newNode,index);
+            // each use gets its own literal, so it can be folded on its own
+            jmmNode.replace(constants.get(jmmNode.get("name")).copy());
             counter++;
         }
         return true;
@@ -71,29 +98,42 @@ public class ConstantPropagationVisitor extends AJmmVisitor<Boolean, Boolean> {
     }
 
     private Boolean defaultVisit(JmmNode jmmNode, Boolean aBoolean) {
-        jmmNode.getChildren().forEach(child -> visit(child, aBoolean));
+        // the children may be replaced while they are visited
+        new ArrayList<>(jmmNode.getChildren()).forEach(child -> visit(child, aBoolean));
         return aBoolean;
     }
 
     private Boolean visitMethodDeclaration(JmmNode jmmNode, Boolean aBoolean) {
         constants.clear();
-        removals.clear();
-        jmmNode.getChildren().forEach(child -> visit(child, aBoolean));
-        removeAssignsAndDeclarations();
+        currentMethod = jmmNode.getKind().equals("MainMethodDecl") ? "main" : jmmNode.get("name");
+        new ArrayList<>(jmmNode.getChildren()).forEach(child -> visit(child, aBoolean));
         return true;
     }
 
-    public void removeAssignsAndDeclarations() {
-        for (Map.Entry<String, JmmNode> assignment : constants.entrySet()) {
-            removals.getOrDefault(assignment.getKey(), Collections.emptyList())
-                    .forEach(assign -> assign.getParent().removeChild(assign));
+    private static Set<String> getAssignedVariables(JmmNode node) {
+        Set<String> assigned = new HashSet<>();
+
+        for (JmmNode assign : node.getDescendants(ASSIGN_STMT)) {
+            JmmNode left = assign.getChildren().get(0);
+            if (left.getKind().equals("VarRefExpr")) {
+                assigned.add(left.get("name"));
+            }
         }
+
+        return assigned;
+    }
+
+    private static boolean isSameValue(JmmNode literal, JmmNode other) {
+        return other != null && literal.getKind().equals(other.getKind())
+                && literal.get("value").equals(other.get("value"));
     }
 
+    // fields may be written by other methods, so only locals and parameters of the method are propagated
     private boolean isLocalVariable(String varName) {
-        return symbolTable.getMethods().stream()
-                .flatMap(method -> symbolTable.getLocalVariables(method).stream())
-                .anyMatch(localVar -> localVar.getName().equals(varName));
+        List<Symbol> locals = new ArrayList<>(symbolTable.getLocalVariables(currentMethod));
+        locals.addAll(symbolTable.getParameters(currentMethod));
+
+        return locals.stream().anyMatch(localVar -> localVar.getName().equals(varName));
     }
 
     public int getCounter() {
@@ -0,0 +1,400 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Queries over OLLIR instructions shared by the optimization passes: the variables they define and use, the labels
+ * they jump to and the labels attached to them.
+ */
+public class InstructionUtils {
+
+    /**
+     * @return the local variable written by the instruction, if any; a store into an array element does not define
+     * the array variable
+     */
+    public static Optional<String> getDef(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign
+                && !(assign.getDest() instanceof ArrayOperand)
+                && assign.getDest() instanceof Operand dest) {
+            return Optional.of(dest.getName());
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * @return the local variables read by the instruction, including arrays and indexes of array elements
+     */
+    public static Set<String> getUses(Instruction instruction) {
+        var uses = new LinkedHashSet<String>();
+        addUses(instruction, uses);
+        return uses;
+    }
+
+    private static void addUses(Instruction instruction, Set<String> uses) {
+        switch (instruction.getInstType()) {
+            case ASSIGN -> {
+                var assign = (AssignInstruction) instruction;
+
+                // the destination is only read when it is an array element
+                if (assign.getDest() instanceof ArrayOperand dest) {
+                    addUses(dest, uses);
+                }
+                addUses(assign.getRhs(), uses);
+            }
+            case PUTFIELD -> {
+                var putField = (PutFieldInstruction) instruction;
+                addUses(putField.getObject(), uses);
+                addUses(putField.getValue(), uses);
+            }
+            case GETFIELD -> addUses(((GetFieldInstruction) instruction).getObject(), uses);
+            case CALL -> ((CallInstruction) instruction).getOperands().forEach(operand -> addUses(operand, uses));
+            case BRANCH -> ((CondBranchInstruction) instruction).getOperands().forEach(operand -> addUses(operand, uses));
+            case UNARYOPER, BINARYOPER ->
+                    ((OpInstruction) instruction).getOperands().forEach(operand -> addUses(operand, uses));
+            case NOPER -> addUses(((SingleOpInstruction) instruction).getSingleOperand(), uses);
+            case RETURN -> {
+                var ret = (ReturnInstruction) instruction;
+                if (ret.hasReturnValue()) {
+                    addUses(ret.getOperand(), uses);
+                }
+            }
+            case GOTO -> {
+            }
+        }
+    }
+
+    private static void addUses(Element element, Set<String> uses) {
+        if (element.isLiteral() || !(element instanceof Operand operand)) {
+            return;
+        }
+
+        uses.add(operand.getName());
+
+        if (operand instanceof ArrayOperand array) {
+            array.getIndexOperands().forEach(index -> addUses(index, uses));
+        }
+    }
+
+    /**
+     * @return the elements read by the instruction, not counting the indexes of array elements nor the destination of
+     * an assignment, e.g. to find where a variable is used as a value
+     */
+    public static List<Element> getReadElements(Instruction instruction) {
+        return switch (instruction.getInstType()) {
+            case ASSIGN -> getReadElements(((AssignInstruction) instruction).getRhs());
+            case CALL -> ((CallInstruction) instruction).getOperands();
+            case BRANCH -> ((CondBranchInstruction) instruction).getOperands();
+            case UNARYOPER, BINARYOPER -> ((OpInstruction) instruction).getOperands();
+            case NOPER -> List.of(((SingleOpInstruction) instruction).getSingleOperand());
+            case GETFIELD -> List.of(((GetFieldInstruction) instruction).getObject());
+            case PUTFIELD -> {
+                var putField = (PutFieldInstruction) instruction;
+                yield List.of(putField.getObject(), putField.getValue());
+            }
+            case RETURN -> {
+                var ret = (ReturnInstruction) instruction;
+                yield ret.hasReturnValue() ? List.of(ret.getOperand()) : List.of();
+            }
+            case GOTO -> List.of();
+        };
+    }
+
+    /**
+     * Replaces the variables read by the instruction at the given position of the method, e.g. to propagate a copy,
+     * keeping its labels.
+     *
+     * @param replacements the element that replaces each variable
+     * @return true if the instruction read any of the variables
+     */
+    public static boolean replaceUses(Method method, int index, Map<String, ? extends Element> replacements) {
+        var code = method.getInstructions();
+        var instruction = code.get(index);
+
+        if (Collections.disjoint(getUses(instruction), replacements.keySet())) {
+            return false;
+        }
+
+        var replaced = replaceUses(instruction, replacements);
+        if (replaced != instruction) {
+            code.set(index, replaced);
+            moveLabels(method, instruction, replaced);
+        }
+
+        return true;
+    }
+
+    /**
+     * Replaces the variables read by the instruction. Operations, single operands and returns are changed in place,
+     * the other instructions cannot be changed and are built again.
+     *
+     * @return the changed instruction, or a new one that replaces it
+     */
+    private static Instruction replaceUses(Instruction instruction, Map<String, ? extends Element> replacements) {
+        switch (instruction.getInstType()) {
+            case ASSIGN -> {
+                var assign = (AssignInstruction) instruction;
+                var dest = assign.getDest() instanceof ArrayOperand array ? replace(array, replacements) : assign.getDest();
+                var rhs = replaceUses(assign.getRhs(), replacements);
+
+                if (dest == assign.getDest() && rhs == assign.getRhs()) {
+                    return instruction;
+                }
+
+                return new AssignInstruction(dest, assign.getTypeOfAssign(), rhs);
+            }
+            case CALL -> {
+                var call = (CallInstruction) instruction;
+                var arguments = call.getArguments().stream()
+                        .map(argument -> replace(argument, replacements))
+                        .toList();
+
+                return new CallInstruction(call.getInvocationType(), replace(call.getCaller(), replacements),
+                        call.getMethodNameTry().orElse(null), arguments, call.getReturnType(), call.isIsolated());
+            }
+            case GETFIELD -> {
+                var getField = (GetFieldInstruction) instruction;
+
+                return new GetFieldInstruction((Operand) replace(getField.getObject(), replacements),
+                        getField.getField(), getField.getFieldType());
+            }
+            case PUTFIELD -> {
+                var putField = (PutFieldInstruction) instruction;
+
+                return new PutFieldInstruction((Operand) replace(putField.getObject(), replacements),
+                        putField.getField(), replace(putField.getValue(), replacements), putField.getFieldType());
+            }
+            case BRANCH -> replaceUses(((CondBranchInstruction) instruction).getCondition(), replacements);
+            case BINARYOPER -> {
+                var op = (BinaryOpInstruction) instruction;
+                op.setLeftOperand(replace(op.getLeftOperand(), replacements));
+                op.setRightOperand(replace(op.getRightOperand(), replacements));
+            }
+            case UNARYOPER -> {
+                var op = (UnaryOpInstruction) instruction;
+                op.setOperand(replace(op.getOperand(), replacements));
+            }
+            case NOPER -> {
+                var single = (SingleOpInstruction) instruction;
+                single.setSingleOperand(replace(single.getSingleOperand(), replacements));
+            }
+            case RETURN -> {
+                var ret = (ReturnInstruction) instruction;
+                if (ret.hasReturnValue()) {
+                    ret.setOperand(replace(ret.getOperand(), replacements));
+                }
+            }
+            case GOTO -> {
+            }
+        }
+
+        return instruction;
+    }
+
+    private static Element replace(Element element, Map<String, ? extends Element> replacements) {
+        if (element.isLiteral() || !(element instanceof Operand operand)) {
+            return element;
+        }
+
+        if (operand instanceof ArrayOperand array) {
+            var indexes = array.getIndexOperands().stream()
+                    .map(index -> replace(index, replacements))
+                    .toList();
+            var name = replacements.get(array.getName()) instanceof Operand other ? other.getName() : array.getName();
+
+            return new ArrayOperand(name, array.getType(), indexes);
+        }
+
+        var replacement = replacements.get(operand.getName());
+        return replacement != null ? replacement : element;
+    }
+
+    /**
+     * @return the label the instruction may jump to, if it is a goto or a conditional branch
+     */
+    public static Optional<String> getJumpLabel(Instruction instruction) {
+        return switch (instruction.getInstType()) {
+            case GOTO -> Optional.of(((GotoInstruction) instruction).getLabel());
+            case BRANCH -> Optional.of(((CondBranchInstruction) instruction).getLabel());
+            default -> Optional.empty();
+        };
+    }
+
+    /**
+     * @return the positions of the instructions that may run right after the one at the given position
+     */
+    public static List<Integer> getSuccessors(List<Instruction> code, int index, Map<String, Integer> labels) {
+        var instruction = code.get(index);
+        var successors = new ArrayList<Integer>(2);
+
+        getJumpLabel(instruction).map(labels::get).ifPresent(successors::add);
+
+        var type = instruction.getInstType();
+        if (type != InstructionType.GOTO && type != InstructionType.RETURN && index + 1 < code.size()) {
+            successors.add(index + 1);
+        }
+
+        return successors;
+    }
+
+    /**
+     * A while loop rotated by the OLLIR generator: the goto at {@code entry} jumps to the condition, at
+     * {@code condition}, and the instructions from {@code header} to {@code end}, inclusive, are the body followed by
+     * the condition, which jumps back to the header.
+     */
+    public record Loop(int entry, int header, int condition, int end) {
+
+        public boolean contains(int index) {
+            return index >= header && index <= end;
+        }
+    }
+
+    /**
+     * Finds the loops of the method from their back edges, a jump to a label at or before it. Only loops with the
+     * shape of a rotated while are kept, whose only way in is the goto just before their first instruction, so new
+     * instructions can be placed before it to run once each time the loop is entered.
+     *
+     * @return the loops, ordered by their last instruction, so nested loops come before the loops around them
+     */
+    public static List<Loop> findLoops(Method method) {
+        var code = method.getInstructions();
+        var labels = indexLabels(method, indexInstructions(code));
+        var loops = new ArrayList<Loop>();
+
+        for (int end = 0; end < code.size(); end++) {
+            var target = getJumpLabel(code.get(end)).map(labels::get);
+            if (target.isEmpty() || target.get() > end) {
+                continue;
+            }
+
+            int header = target.get();
+            if (header == 0 || !(code.get(header - 1) instanceof GotoInstruction entry)) {
+                continue;
+            }
+
+            var condition = labels.get(entry.getLabel());
+            if (condition == null || condition < header || condition > end) {
+                continue;
+            }
+
+            var loop = new Loop(header - 1, header, condition, end);
+            if (isOnlyEnteredFromEntry(code, loop, labels)) {
+                loops.add(loop);
+            }
+        }
+
+        return loops;
+    }
+
+    private static boolean isOnlyEnteredFromEntry(List<Instruction> code, Loop loop, Map<String, Integer> labels) {
+        for (int i = 0; i < code.size(); i++) {
+            if (i == loop.entry() || loop.contains(i)) {
+                continue;
+            }
+
+            var target = getJumpLabel(code.get(i)).map(labels::get);
+            if (target.isPresent() && loop.contains(target.get())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if computing the value has no effect besides the value itself: it calls nothing and cannot throw
+     */
+    public static boolean isPure(Instruction rhs) {
+        return switch (rhs.getInstType()) {
+            case BINARYOPER -> {
+                var op = (BinaryOpInstruction) rhs;
+                yield op.getOperation().getOpType() != OperationType.DIV || isNonZeroLiteral(op.getRightOperand());
+            }
+            case UNARYOPER -> true;
+            case NOPER -> !(((SingleOpInstruction) rhs).getSingleOperand() instanceof ArrayOperand);
+            case GETFIELD -> ((GetFieldInstruction) rhs).getObject().getName().equals("this");
+            default -> false;
+        };
+    }
+
+    public static boolean isNonZeroLiteral(Element element) {
+        return element instanceof LiteralElement literal && !literal.getLiteral().equals("0");
+    }
+
+    /**
+     * @return the number of instructions of the method that define each variable
+     */
+    public static Map<String, Integer> countDefs(Method method) {
+        var defs = new HashMap<String, Integer>();
+
+        for (var instruction : method.getInstructions()) {
+            getDef(instruction).ifPresent(var -> defs.merge(var, 1, Integer::sum));
+        }
+
+        return defs;
+    }
+
+    /**
+     * @return the names of the parameters of the method, which are defined before its first instruction
+     */
+    public static Set<String> getParamNames(Method method) {
+        var params = new HashSet<String>();
+
+        for (var param : method.getParams()) {
+            if (param instanceof Operand operand) {
+                params.add(operand.getName());
+            }
+        }
+
+        return params;
+    }
+
+    /**
+     * @return the position of each instruction in the given code, by identity
+     */
+    public static Map<Instruction, Integer> indexInstructions(List<Instruction> code) {
+        var indexes = new IdentityHashMap<Instruction, Integer>();
+
+        for (int i = 0; i < code.size(); i++) {
+            indexes.put(code.get(i), i);
+        }
+
+        return indexes;
+    }
+
+    /**
+     * @return the position of the instruction each label of the method is attached to
+     */
+    public static Map<String, Integer> indexLabels(Method method, Map<Instruction, Integer> indexes) {
+        var labels = new HashMap<String, Integer>();
+
+        for (var entry : method.getLabels().entrySet()) {
+            labels.put(entry.getKey(), indexes.get(entry.getValue()));
+        }
+
+        return labels;
+    }
+
+    /**
+     * Attaches the labels of an instruction to another one, before the first is moved or removed.
+     */
+    public static void moveLabels(Method method, Instruction from, Instruction to) {
+        for (var entry : method.getLabels().entrySet()) {
+            if (entry.getValue() == from) {
+                entry.setValue(to);
+            }
+        }
+    }
+
+    public static boolean hasLabels(Method method, Instruction instruction) {
+        for (var labeled : method.getLabels().values()) {
+            if (labeled == instruction) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
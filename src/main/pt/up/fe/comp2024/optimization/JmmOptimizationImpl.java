@@ -1,10 +1,12 @@
 package pt.up.fe.comp2024.optimization;
 
+import org.specs.comp.ollir.ClassUnit;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
-import pt.up.fe.comp.jmm.ast.AJmmVisitor;
 import pt.up.fe.comp.jmm.ollir.JmmOptimization;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.utils.Diagnostics;
 
 
 import java.util.Collections;
@@ -13,24 +15,66 @@ public class JmmOptimizationImpl implements JmmOptimization {
 
     @Override
     public OllirResult toOllir(JmmSemanticsResult semanticsResult) {
-        var visitor = new OllirGeneratorVisitor(semanticsResult.getSymbolTable());
-        var ollirCode = visitor.visit(semanticsResult.getRootNode());
+        var ollirCode = toOllirCode(semanticsResult);
 
-        System.out.println("This is the ollir code: \n" + ollirCode + "\n End code!");
+        Diagnostics.debug(() -> "OLLIR code:\n" + ollirCode);
 
         return new OllirResult(semanticsResult, ollirCode, Collections.emptyList());
     }
 
+    /**
+     * @return the OLLIR code of the program, printed from the class built by {@link #toClassUnit}
+     */
+    public String toOllirCode(JmmSemanticsResult semanticsResult) {
+        return OllirPrinter.print(toClassUnit(semanticsResult));
+    }
+
+    /**
+     * Builds the OLLIR class directly from the AST. This is the only lowering of the AST to OLLIR: the OLLIR code of
+     * the program is printed from this class.
+     */
+    public ClassUnit toClassUnit(JmmSemanticsResult semanticsResult) {
+        var builder = new OllirClassBuilder(semanticsResult.getSymbolTable());
+
+        return builder.build(semanticsResult.getRootNode());
+    }
+
     @Override
     public OllirResult optimize(OllirResult ollirResult) {
+        // an instrumented class keeps the labels of the OLLIR code, so its profile can be matched to a later build
+        if (ollirResult.getConfig().containsKey("optimize") && ollirResult.getConfig().get("optimize").equals("true")
+                && !CompilerConfig.getProfile(ollirResult.getConfig())) {
+            var profile = CompilerConfig.getProfileData(ollirResult.getConfig())
+                    .map(Profile::read)
+                    .orElse(Profile.NONE);
+            optimize(ollirResult.getOllirClass(), profile);
+        }
 
         return ollirResult;
     }
 
+    /**
+     * Optimizes the methods of an OLLIR class in place, either parsed from OLLIR code or built directly from the AST.
+     */
+    public void optimize(ClassUnit ollirClass) {
+        optimize(ollirClass, Profile.NONE);
+    }
+
+    /**
+     * Optimizes the methods of an OLLIR class in place, guided by the profile of a run of the class compiled with
+     * profiling.
+     */
+    public void optimize(ClassUnit ollirClass, Profile profile) {
+        Diagnostics.info(() -> "Running OLLIR optimizations on class " + ollirClass.getClassName()
+                + (profile.isEmpty() ? "" : " with a profile"));
+
+        new OllirOptimizer(profile).optimize(ollirClass);
+    }
+
     @Override
     public JmmSemanticsResult optimize(JmmSemanticsResult semanticsResult) {
         if (semanticsResult.getConfig().containsKey("optimize") && semanticsResult.getConfig().get("optimize").equals("true")) {
-            System.out.println("\nEntered Constants optimizations\n");
+            Diagnostics.info(() -> "Running constant propagation and folding");
 
             ConstantPropagationVisitor constantPropagationVisitor = new ConstantPropagationVisitor((SymbolTable) semanticsResult.getSymbolTable());
             ConstantFoldingVisitor constantFoldingVisitor = new ConstantFoldingVisitor();
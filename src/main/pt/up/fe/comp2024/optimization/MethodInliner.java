@@ -0,0 +1,402 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.utils.Diagnostics;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.*;
+
+/**
+ * Replaces the calls to small methods of the class on 'this' with a copy of their body, so they do not pay for an
+ * invokevirtual, e.g. getters or wrappers such as {@code this.quicksort(L, 0, L.length - 1)}.
+ * <p>
+ * A method is inlined when it is not static, does not call itself through other methods of the class, and fits the
+ * size budget. The budget is larger for methods called from a single place, since inlining them does not duplicate
+ * code, and no method grows past a maximum size. A Java-- program is a single class, so the methods called on 'this'
+ * are taken to be the ones of the class, not overridden.
+ * <p>
+ * With a {@link Profile}, methods that were never called are not inlined, since copying them only grows their callers,
+ * and methods called at least {@code HOT_CALL_COUNT} times get the larger budget, since their calls cost the most.
+ * <p>
+ * Calls on a new object of the class held by a local variable, such as {@code q.quicksort(L)} after
+ * {@code q = new Quicksort()}, are inlined too, with 'this' replaced by that variable. Its field accesses can then be
+ * removed by {@link pt.up.fe.comp2024.optimization.passes.EscapeAnalysis} when the object does not escape.
+ * <p>
+ * The variables and labels of the copy are renamed so they do not clash with the ones of the caller. The arguments
+ * are copied into the renamed parameters, which copy propagation then removes, and each return becomes a copy of the
+ * returned value into the destination of the call and a jump to the instruction after the call.
+ */
+public class MethodInliner {
+
+    // the maximum number of instructions of an inlined method, and of a method inlined into
+    private static final int MAX_INLINED_SIZE = 8;
+    private static final int MAX_SINGLE_CALL_SIZE = 32;
+    private static final int MAX_CALLER_SIZE = 256;
+
+    private static final long HOT_CALL_COUNT = 1000;
+
+    private final Profile profile;
+    private final Map<String, Method> methods = new HashMap<>();
+    private final Map<String, Integer> callCounts = new HashMap<>();
+    private final Set<String> recursive = new HashSet<>();
+
+    private int inlineNum = 0;
+
+    public MethodInliner() {
+        this(Profile.NONE);
+    }
+
+    public MethodInliner(Profile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Inlines the calls of each method of the class.
+     *
+     * @return the methods that were changed
+     */
+    public Set<Method> inline(ClassUnit classUnit) {
+        collectCalls(classUnit);
+
+        var changed = Collections.newSetFromMap(new IdentityHashMap<Method, Boolean>());
+
+        for (var method : classUnit.getMethods()) {
+            if (method.isConstructMethod()) {
+                continue;
+            }
+
+            int count = inline(method);
+            if (count > 0) {
+                changed.add(method);
+                Diagnostics.info(() -> "Inlined " + count + " calls of method " + method.getMethodName());
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Finds the methods each method calls on 'this', how many times each one is called and which ones may call
+     * themselves.
+     */
+    private void collectCalls(ClassUnit classUnit) {
+        var callees = new HashMap<String, Set<String>>();
+
+        for (var method : classUnit.getMethods()) {
+            methods.put(method.getMethodName(), method);
+
+            var receivers = getReceivers(method);
+            var called = new HashSet<String>();
+            for (var instruction : method.getInstructions()) {
+                getClassCall(instruction, receivers).ifPresent(call -> {
+                    var name = getMethodName(call);
+                    called.add(name);
+                    callCounts.merge(name, 1, Integer::sum);
+                });
+            }
+
+            callees.put(method.getMethodName(), called);
+        }
+
+        for (var method : callees.keySet()) {
+            var pending = new ArrayDeque<>(callees.get(method));
+            var visited = new HashSet<String>();
+
+            while (!pending.isEmpty()) {
+                var callee = pending.pop();
+
+                if (callee.equals(method)) {
+                    recursive.add(method);
+                    break;
+                }
+
+                if (visited.add(callee)) {
+                    pending.addAll(callees.getOrDefault(callee, Set.of()));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of calls inlined into the method
+     */
+    private int inline(Method caller) {
+        var code = caller.getInstructions();
+        var receivers = getReceivers(caller);
+        int count = 0;
+
+        // the inlined code may have calls too, which are inlined when the loop reaches them
+        for (int i = 0; i < code.size(); i++) {
+            var call = getClassCall(code.get(i), receivers);
+            if (call.isEmpty()) {
+                continue;
+            }
+
+            var callee = methods.get(getMethodName(call.get()));
+            if (!canInline(caller, callee, call.get())) {
+                continue;
+            }
+
+            inline(caller, i, callee);
+            count++;
+            i--;
+        }
+
+        return count;
+    }
+
+    private boolean canInline(Method caller, Method callee, CallInstruction call) {
+        if (callee == null || callee == caller || callee.isStaticMethod() || callee.isConstructMethod()
+                || recursive.contains(callee.getMethodName())
+                || callee.getParams().size() != call.getArguments().size()) {
+            return false;
+        }
+
+        var entries = profile.getEntries(callee.getMethodName());
+        if (entries.isPresent() && entries.get() == 0) {
+            return false;
+        }
+
+        boolean isHot = entries.isPresent() && entries.get() >= HOT_CALL_COUNT;
+        boolean isSingleCall = callCounts.getOrDefault(callee.getMethodName(), 0) == 1;
+
+        int size = callee.getInstructions().size();
+        int budget = isSingleCall || isHot ? MAX_SINGLE_CALL_SIZE : MAX_INLINED_SIZE;
+
+        return size <= budget && caller.getInstructions().size() + size <= MAX_CALLER_SIZE;
+    }
+
+    /**
+     * Replaces the call at the given position of the caller with a copy of the body of the callee.
+     */
+    private void inline(Method caller, int index, Method callee) {
+        var code = caller.getInstructions();
+        var callSite = code.get(index);
+        var call = getClassCall(callSite, getReceivers(caller)).orElseThrow();
+        var receiver = (Operand) call.getCaller();
+        var dest = callSite instanceof AssignInstruction assign ? assign : null;
+
+        int num = inlineNum++;
+        var renames = getRenames(caller, callee, num);
+        var endLabel = freshLabel(caller, "inlineEnd" + num);
+
+        var inlined = new ArrayList<Instruction>();
+
+        var params = callee.getParams();
+        for (int i = 0; i < params.size(); i++) {
+            var param = (Operand) params.get(i);
+            inlined.add(new AssignInstruction(rename(param, renames), param.getType(),
+                    new SingleOpInstruction(call.getArguments().get(i))));
+        }
+
+        var calleeCode = callee.getInstructions();
+        var copies = new IdentityHashMap<Instruction, Instruction>();
+        boolean jumpsToEnd = false;
+
+        for (int i = 0; i < calleeCode.size(); i++) {
+            var instruction = calleeCode.get(i);
+            int start = inlined.size();
+
+            if (instruction instanceof ReturnInstruction ret) {
+                if (dest != null && ret.hasReturnValue()) {
+                    inlined.add(new AssignInstruction(dest.getDest(), dest.getTypeOfAssign(),
+                            new SingleOpInstruction(rename(ret.getOperand(), renames))));
+                }
+
+                if (i < calleeCode.size() - 1) {
+                    inlined.add(new GotoInstruction(endLabel));
+                    jumpsToEnd = true;
+                }
+            } else {
+                inlined.add(copy(instruction, renames, num));
+            }
+
+            if (inlined.size() > start) {
+                copies.put(instruction, inlined.get(start));
+            }
+        }
+
+        code.remove(index);
+        code.addAll(index, inlined);
+
+        var next = code.get(index + inlined.size());
+        moveLabels(caller, callSite, inlined.isEmpty() ? next : inlined.get(0));
+
+        for (var entry : callee.getLabels().entrySet()) {
+            // a label of a return that leaves nothing behind goes to the instruction after the call
+            var target = copies.getOrDefault(entry.getValue(), next);
+            caller.addLabel(renameLabel(entry.getKey(), num), target);
+        }
+
+        if (jumpsToEnd) {
+            caller.addLabel(endLabel, next);
+        }
+
+        if (!receiver.getName().equals("this")) {
+            for (int i = index; i < index + inlined.size(); i++) {
+                replaceUses(caller, i, Map.of("this", receiver));
+            }
+        }
+    }
+
+    /**
+     * @return the new name of each variable of the callee, none of which is used by the caller
+     */
+    private static Map<String, String> getRenames(Method caller, Method callee, int num) {
+        var used = new HashSet<>(getParamNames(caller));
+        for (var instruction : caller.getInstructions()) {
+            getDef(instruction).ifPresent(used::add);
+            used.addAll(getUses(instruction));
+        }
+
+        // every variable is assigned before it is read, and the class names read by calls must not be renamed
+        var variables = new LinkedHashSet<>(getParamNames(callee));
+        countDefs(callee).keySet().forEach(variables::add);
+
+        var renames = new HashMap<String, String>();
+        for (var var : variables) {
+            var name = var + "_" + num;
+            while (used.contains(name)) {
+                name = "_" + name;
+            }
+
+            used.add(name);
+            renames.put(var, name);
+        }
+
+        return renames;
+    }
+
+    private static String freshLabel(Method method, String label) {
+        while (method.getLabels().containsKey(label)) {
+            label = "_" + label;
+        }
+
+        return label;
+    }
+
+    private static String renameLabel(String label, int num) {
+        return label + "_inline" + num;
+    }
+
+    /**
+     * @return a new instruction like the given one, with the variables and labels renamed
+     */
+    private static Instruction copy(Instruction instruction, Map<String, String> renames, int num) {
+        return switch (instruction.getInstType()) {
+            case ASSIGN -> {
+                var assign = (AssignInstruction) instruction;
+                yield new AssignInstruction(rename(assign.getDest(), renames), assign.getTypeOfAssign(),
+                        copy(assign.getRhs(), renames, num));
+            }
+            case CALL -> {
+                var call = (CallInstruction) instruction;
+                var arguments = call.getArguments().stream()
+                        .map(argument -> rename(argument, renames))
+                        .toList();
+
+                yield new CallInstruction(call.getInvocationType(), rename(call.getCaller(), renames),
+                        call.getMethodNameTry().orElse(null), arguments, call.getReturnType(), call.isIsolated());
+            }
+            case GETFIELD -> {
+                var getField = (GetFieldInstruction) instruction;
+                yield new GetFieldInstruction((Operand) rename(getField.getObject(), renames), getField.getField(),
+                        getField.getFieldType());
+            }
+            case PUTFIELD -> {
+                var putField = (PutFieldInstruction) instruction;
+                yield new PutFieldInstruction((Operand) rename(putField.getObject(), renames), putField.getField(),
+                        rename(putField.getValue(), renames), putField.getFieldType());
+            }
+            case BRANCH -> {
+                var branch = (CondBranchInstruction) instruction;
+                var condition = copy(branch.getCondition(), renames, num);
+
+                CondBranchInstruction copy = condition instanceof OpInstruction op ? new OpCondInstruction(op)
+                        : new SingleOpCondInstruction((SingleOpInstruction) condition);
+                copy.setLabel(renameLabel(branch.getLabel(), num));
+                yield copy;
+            }
+            case GOTO -> new GotoInstruction(renameLabel(((GotoInstruction) instruction).getLabel(), num));
+            case BINARYOPER -> {
+                var op = (BinaryOpInstruction) instruction;
+                yield new BinaryOpInstruction(rename(op.getLeftOperand(), renames), op.getOperation(),
+                        rename(op.getRightOperand(), renames));
+            }
+            case UNARYOPER -> {
+                var op = (UnaryOpInstruction) instruction;
+                yield new UnaryOpInstruction(op.getOperation(), rename(op.getOperand(), renames));
+            }
+            case NOPER -> new SingleOpInstruction(rename(((SingleOpInstruction) instruction).getSingleOperand(), renames));
+            default -> throw new IllegalArgumentException("Cannot copy instruction " + instruction.getInstType());
+        };
+    }
+
+    private static Element rename(Element element, Map<String, String> renames) {
+        if (element.isLiteral() || !(element instanceof Operand operand)) {
+            return element;
+        }
+
+        var name = renames.getOrDefault(operand.getName(), operand.getName());
+
+        if (operand instanceof ArrayOperand array) {
+            var indexes = array.getIndexOperands().stream()
+                    .map(index -> rename(index, renames))
+                    .toList();
+
+            return new ArrayOperand(name, array.getType(), indexes);
+        }
+
+        return renames.containsKey(operand.getName()) ? new Operand(name, operand.getType()) : operand;
+    }
+
+    /**
+     * @return the variables that calls of methods of the class are done on: 'this', in methods that are not static,
+     * and the variables whose only definition is a new object of the class, which can never be null
+     */
+    private static Set<String> getReceivers(Method method) {
+        var receivers = new HashSet<String>();
+        if (!method.isStaticMethod()) {
+            receivers.add("this");
+        }
+
+        var className = method.getOllirClass().getClassName();
+        var defCounts = countDefs(method);
+        var params = getParamNames(method);
+
+        for (var instruction : method.getInstructions()) {
+            var dest = getDef(instruction);
+            if (dest.isPresent() && defCounts.get(dest.get()) == 1 && !params.contains(dest.get())
+                    && isNewObject(((AssignInstruction) instruction).getRhs(), className)) {
+                receivers.add(dest.get());
+            }
+        }
+
+        return receivers;
+    }
+
+    private static boolean isNewObject(Instruction rhs, String className) {
+        return rhs instanceof CallInstruction call && call.getInvocationType() == CallType.NEW
+                && call.getCaller() instanceof Operand type && type.getName().equals(className);
+    }
+
+    /**
+     * @return the call of a method of the class done by the instruction on one of the given variables, if any
+     */
+    private static Optional<CallInstruction> getClassCall(Instruction instruction, Set<String> receivers) {
+        var rhs = instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction;
+
+        if (rhs instanceof CallInstruction call && call.getInvocationType() == CallType.invokevirtual
+                && call.getCaller() instanceof Operand caller && receivers.contains(caller.getName())) {
+            return Optional.of(call);
+        }
+
+        return Optional.empty();
+    }
+
+    private static String getMethodName(CallInstruction call) {
+        var literal = ((LiteralElement) call.getMethodName()).getLiteral();
+        return literal.replace("\"", "");
+    }
+}
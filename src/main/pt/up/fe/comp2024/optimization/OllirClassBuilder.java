@@ -0,0 +1,278 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.AJmmVisitor;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
+
+import java.util.List;
+
+import static pt.up.fe.comp2024.ast.Kind.*;
+
+/**
+ * Builds the OLLIR class directly from the AST, without generating OLLIR code and parsing it again.
+ * <p>
+ * This is the only lowering of the AST to OLLIR. When the OLLIR code is needed (e.g. by {@code toOllir}, or for
+ * debugging), it is printed from the built class by {@link OllirPrinter}.
+ */
+public class OllirClassBuilder extends AJmmVisitor<Void, Void> {
+
+    private int whileNum = 0;
+    private int ifNum = 0;
+
+    private final SymbolTable table;
+
+    private final OllirExprBuilder exprBuilder;
+
+    private ClassUnit classUnit;
+    private Method currentMethod;
+
+    public OllirClassBuilder(SymbolTable table) {
+        this.table = table;
+        exprBuilder = new OllirExprBuilder(table);
+    }
+
+    /**
+     * @return the class of the given program, with the variable table of each method built
+     */
+    public ClassUnit build(JmmNode root) {
+        classUnit = new ClassUnit();
+        visit(root);
+        classUnit.buildVarTables();
+
+        return classUnit;
+    }
+
+    @Override
+    protected void buildVisitor() {
+        addVisit(PROGRAM, this::visitProgram);
+        addVisit(CLASS_DECL, this::visitClass);
+        addVisit(METHOD_DECL, this::visitMethodDecl);
+        addVisit(RETURN_STMT, this::visitReturn);
+        addVisit(ASSIGN_STMT, this::visitAssignStmt);
+
+        //Stmts
+        addVisit("ExprStmt", this::visitExprStmt);
+        addVisit("ConditionalStmt", this::visitConditionalStmt);
+        addVisit("BracketsStmt", this::visitBracketsStmt);
+        addVisit("WhileStmt", this::visitWhileStmt);
+
+        setDefaultVisit(this::defaultVisit);
+    }
+
+    private Void visitProgram(JmmNode node, Void unused) {
+        for (var imported : table.getImports()) {
+            classUnit.addImport(imported);
+        }
+
+        for (var child : node.getChildren()) {
+            visit(child);
+        }
+
+        return null;
+    }
+
+    private Void visitClass(JmmNode node, Void unused) {
+        classUnit.setClassName(table.getClassName());
+        classUnit.setClassAccessModifier(AccessModifier.DEFAULT);
+
+        var superClass = table.getSuper();
+        if (superClass != null) {
+            classUnit.setSuperClass(superClass);
+        }
+
+        for (var fieldSymbol : table.getFields()) {
+            var field = new Field();
+            field.setFieldName(fieldSymbol.getName());
+            field.setFieldType(OptUtils.toOllirTypeInstance(fieldSymbol.getType()));
+            field.setFieldAccessModifier(AccessModifier.PUBLIC);
+            classUnit.addField(field);
+        }
+
+        for (var child : node.getChildren()) {
+            if (!child.getKind().equals("VarStmt")) {
+                visit(child);
+            }
+        }
+
+        classUnit.addMethod(buildConstructor());
+
+        return null;
+    }
+
+    private Method buildConstructor() {
+        var constructor = new Method(classUnit);
+        constructor.setConstructMethod();
+        constructor.setMethodName(table.getClassName());
+        constructor.setReturnType(new Type(ElementType.VOID));
+
+        var init = new LiteralElement("\"<init>\"", new Type(ElementType.STRING));
+        constructor.addInstr(new CallInstruction(CallType.invokespecial, exprBuilder.thisOperand(), init, List.of(),
+                new Type(ElementType.VOID)));
+
+        return constructor;
+    }
+
+    private Void visitMethodDecl(JmmNode node, Void unused) {
+        boolean isMain = node.getKind().equals("MainMethodDecl");
+        var methodName = isMain ? "main" : node.get("name");
+
+        currentMethod = new Method(classUnit);
+        currentMethod.setMethodName(methodName);
+        currentMethod.setMethodAccessModifier(AccessModifier.PUBLIC);
+        if (isMain) {
+            currentMethod.setStaticMethod();
+        }
+
+        exprBuilder.setMethod(currentMethod, methodName);
+
+        // parameters are numbered from 1, since 0 is 'this'
+        int paramId = isMain ? 0 : 1;
+        if (isMain) {
+            var args = new Operand(node.get("args"), OptUtils.toOllirTypeInstance(
+                    new pt.up.fe.comp.jmm.analysis.table.Type("String", true)));
+            args.setParamId(paramId);
+            currentMethod.addParam(args);
+        } else {
+            for (var param : table.getParameters(methodName)) {
+                var operand = new Operand(param.getName(), OptUtils.toOllirTypeInstance(param.getType()));
+                operand.setParamId(paramId++);
+                currentMethod.addParam(operand);
+            }
+        }
+
+        currentMethod.setReturnType(OptUtils.toOllirTypeInstance(isMain ? null : table.getReturnType(methodName)));
+
+        for (var child : node.getChildren()) {
+            if (!child.getKind().equals("VarStmt")) {
+                visit(child);
+            }
+        }
+
+        if (isMain) {
+            var ret = new ReturnInstruction();
+            ret.setReturnType(new Type(ElementType.VOID));
+            exprBuilder.addInstruction(ret);
+        }
+
+        classUnit.addMethod(currentMethod);
+        currentMethod = null;
+
+        return null;
+    }
+
+    private Void visitReturn(JmmNode node, Void unused) {
+        var returnType = currentMethod.getReturnType();
+        var value = exprBuilder.visit(node.getJmmChild(0), returnType);
+
+        var ret = new ReturnInstruction(value);
+        ret.setReturnType(returnType);
+        exprBuilder.addInstruction(ret);
+
+        return null;
+    }
+
+    private Void visitAssignStmt(JmmNode node, Void unused) {
+        var lhsNode = node.getJmmChild(0);
+        var rhsNode = node.getJmmChild(1);
+        var type = OptUtils.toOllirTypeInstance(TypeUtils.getExprType(lhsNode, table));
+
+        switch (lhsNode.getKind()) {
+            case "VarRefExpr" -> {
+                var name = lhsNode.get("name");
+
+                if (!exprBuilder.isLocal(name)) {
+                    buildPutField(exprBuilder.thisOperand(), name, type, rhsNode);
+                } else if (rhsNode.getKind().equals("NewObject")) {
+                    exprBuilder.buildNewObject(new Operand(name, type), rhsNode.get("value"));
+                } else {
+                    var rhs = exprBuilder.buildInstruction(rhsNode, type);
+                    exprBuilder.addInstruction(new AssignInstruction(new Operand(name, type), type, rhs));
+                }
+            }
+            case "GetValue" -> {
+                var object = (Operand) exprBuilder.visit(lhsNode.getJmmChild(0), null);
+                buildPutField(object, lhsNode.getJmmChild(1).get("name"), type, rhsNode);
+            }
+            case "ArrayAccess" -> {
+                var element = exprBuilder.buildArrayOperand(lhsNode);
+                var value = exprBuilder.visit(rhsNode, type);
+                exprBuilder.addInstruction(new AssignInstruction(element, type, new SingleOpInstruction(value)));
+            }
+            default -> throw new NotImplementedException(lhsNode.getKind());
+        }
+
+        return null;
+    }
+
+    private void buildPutField(Operand object, String fieldName, Type type, JmmNode rhsNode) {
+        var value = exprBuilder.visit(rhsNode, type);
+        exprBuilder.addInstruction(new PutFieldInstruction(object, new Operand(fieldName, type), value,
+                new Type(ElementType.VOID)));
+    }
+
+    private Void visitExprStmt(JmmNode node, Void unused) {
+        // only calls have side effects
+        if (node.getJmmChild(0).getKind().equals("FunctionCall")) {
+            exprBuilder.addInstruction(exprBuilder.buildInstruction(node.getJmmChild(0), null));
+        }
+
+        return null;
+    }
+
+    private Void visitConditionalStmt(JmmNode node, Void unused) {
+        int currentIfNum = ifNum++;
+        var thenLabel = "if" + currentIfNum;
+        var endLabel = "endif" + currentIfNum;
+
+        var ifStmt = node.getJmmChild(0);
+        exprBuilder.branchIfTrue(ifStmt.getJmmChild(0), thenLabel);
+
+        if (node.getNumChildren() > 1) {
+            visit(node.getJmmChild(1));
+        }
+        exprBuilder.addInstruction(new GotoInstruction(endLabel));
+
+        exprBuilder.addLabel(thenLabel);
+        visit(ifStmt.getJmmChild(1));
+
+        exprBuilder.addLabel(endLabel);
+
+        return null;
+    }
+
+    private Void visitWhileStmt(JmmNode node, Void unused) {
+        int currentWhileNum = whileNum++;
+        var condLabel = "whileCond" + currentWhileNum;
+        var bodyLabel = "whileLoop" + currentWhileNum;
+
+        // rotated, the condition is at the bottom so each iteration only runs one branch
+        exprBuilder.addInstruction(new GotoInstruction(condLabel));
+
+        exprBuilder.addLabel(bodyLabel);
+        visit(node.getJmmChild(1));
+
+        exprBuilder.addLabel(condLabel);
+        exprBuilder.branchIfTrue(node.getJmmChild(0), bodyLabel);
+
+        return null;
+    }
+
+    private Void visitBracketsStmt(JmmNode node, Void unused) {
+        for (var child : node.getChildren()) {
+            visit(child);
+        }
+
+        return null;
+    }
+
+    private Void defaultVisit(JmmNode node, Void unused) {
+        for (var child : node.getChildren()) {
+            visit(child);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,488 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.AJmmVisitor;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the OLLIR instructions of expressions, adding the instructions that compute them to the current method.
+ * <p>
+ * Each visit returns the element that holds the value of the expression. The type given to the visit is the type the
+ * value is expected to have, which is the return type of calls to methods that are not declared in the class.
+ */
+public class OllirExprBuilder extends AJmmVisitor<Type, Element> {
+
+    private final SymbolTable table;
+
+    private Method method;
+    private String methodName;
+    private final List<String> pendingLabels = new ArrayList<>();
+
+    private int logicNum = 0;
+
+    public OllirExprBuilder(SymbolTable table) {
+        this.table = table;
+    }
+
+    @Override
+    protected void buildVisitor() {
+        addVisit("VarRefExpr", this::visitVarRef);
+        addVisit("ThisExpr", this::visitThis);
+        addVisit("IntegerLiteral", this::visitInteger);
+        addVisit("BooleanLiteral", this::visitBoolean);
+        addVisit("ParenExpr", this::visitParen);
+        addVisit("FunctionCall", this::visitFunctionCall);
+        addVisit("NewObject", this::visitNewObject);
+        addVisit("BinaryOp", this::visitBinExpr);
+        addVisit("NotExpr", this::visitNotExpr);
+        addVisit("NewArray", this::visitNewArray);
+        addVisit("Length", this::visitLength);
+        addVisit("ArrayAccess", this::visitArrayAccess);
+        addVisit("ArrayInitializer", this::visitArrayInitializer);
+        addVisit("GetValue", this::visitGetValue);
+
+        setDefaultVisit(this::defaultVisit);
+    }
+
+    /**
+     * Sets the method the instructions are added to.
+     */
+    public void setMethod(Method method, String methodName) {
+        this.method = method;
+        this.methodName = methodName;
+        pendingLabels.clear();
+    }
+
+    /**
+     * Marks the next instruction added with the given label.
+     */
+    public void addLabel(String label) {
+        pendingLabels.add(label);
+    }
+
+    public void addInstruction(Instruction instruction) {
+        for (var label : pendingLabels) {
+            method.addLabel(label, instruction);
+        }
+        pendingLabels.clear();
+
+        method.addInstr(instruction);
+    }
+
+    /**
+     * @return the instruction that computes the value of the expression, without assigning it to a temporary
+     */
+    public Instruction buildInstruction(JmmNode node, Type expected) {
+        return switch (node.getKind()) {
+            case "ParenExpr" -> buildInstruction(node.getJmmChild(0), expected);
+            case "FunctionCall" -> buildCall(node, expected);
+            case "BinaryOp" -> isLogical(node) ? new SingleOpInstruction(buildShortCircuit(node)) : buildBinaryOp(node);
+            case "NotExpr" -> buildNot(node);
+            case "NewArray" -> buildNewArray(visit(node.getJmmChild(0), intType()));
+            case "Length" -> buildLength(node);
+            case "ArrayAccess" -> buildArrayAccess(node);
+            default -> new SingleOpInstruction(visit(node, expected));
+        };
+    }
+
+    /**
+     * @return true if the name is a local variable or a parameter of the current method, false if it is a field
+     */
+    public boolean isLocal(String name) {
+        return table.getLocalVariables(methodName).stream().anyMatch(local -> local.getName().equals(name))
+                || table.getParameters(methodName).stream().anyMatch(param -> param.getName().equals(name));
+    }
+
+    public Operand thisOperand() {
+        return new Operand("this", new ClassType(ElementType.THIS, table.getClassName()));
+    }
+
+    private Element visitVarRef(JmmNode node, Type expected) {
+        var name = node.get("name");
+        var type = OptUtils.toOllirTypeInstance(TypeUtils.getVarType(name, methodName, table));
+
+        if (isLocal(name)) {
+            return new Operand(name, type);
+        }
+
+        // fields are read into a temporary
+        var field = new Operand(name, type);
+        return toTemp(new GetFieldInstruction(thisOperand(), field, type), type);
+    }
+
+    private Element visitThis(JmmNode node, Type expected) {
+        return thisOperand();
+    }
+
+    private Element visitInteger(JmmNode node, Type expected) {
+        return new LiteralElement(node.get("value"), new Type(ElementType.INT32));
+    }
+
+    private Element visitBoolean(JmmNode node, Type expected) {
+        return boolLiteral(node.get("value").equals("true"));
+    }
+
+    private Element visitParen(JmmNode node, Type expected) {
+        return visit(node.getJmmChild(0), expected);
+    }
+
+    private Element visitGetValue(JmmNode node, Type expected) {
+        var object = (Operand) visit(node.getJmmChild(0), null);
+
+        var fieldNode = node.getJmmChild(1);
+        var type = OptUtils.toOllirTypeInstance(TypeUtils.getExprType(fieldNode, table));
+        var field = new Operand(fieldNode.get("name"), type);
+
+        return toTemp(new GetFieldInstruction(object, field, type), type);
+    }
+
+    private Element visitFunctionCall(JmmNode node, Type expected) {
+        var call = buildCall(node, expected);
+        return toTemp(call, call.getReturnType());
+    }
+
+    private CallInstruction buildCall(JmmNode node, Type expected) {
+        var functionName = node.get("value");
+        var callerNode = node.getJmmChild(0);
+
+        var isOwnMethod = table.getMethods().contains(functionName);
+        var returnType = isOwnMethod ? OptUtils.toOllirTypeInstance(table.getReturnType(functionName)) : expected;
+        if (returnType == null) {
+            returnType = new Type(ElementType.VOID);
+        }
+
+        var arguments = buildArguments(node, isOwnMethod ? table.getParameters(functionName) : List.of());
+        var methodLiteral = new LiteralElement("\"" + functionName + "\"", new Type(ElementType.STRING));
+
+        // a name that is not a variable is an imported class
+        if (callerNode.getKind().equals("VarRefExpr") && !isVariable(callerNode.get("name"))) {
+            var className = callerNode.get("name");
+            var caller = new Operand(className, new ClassType(ElementType.CLASS, className));
+
+            return new CallInstruction(CallType.invokestatic, caller, methodLiteral, arguments, returnType);
+        }
+
+        var caller = visit(callerNode, null);
+        return new CallInstruction(CallType.invokevirtual, caller, methodLiteral, arguments, returnType);
+    }
+
+    private List<Element> buildArguments(JmmNode node, List<Symbol> parameters) {
+        var arguments = new ArrayList<Element>();
+
+        boolean hasVarargs = !parameters.isEmpty()
+                && parameters.get(parameters.size() - 1).getType().hasAttribute("isVararg");
+        int fixedParams = hasVarargs ? parameters.size() - 1 : Integer.MAX_VALUE;
+
+        for (int i = 1; i < node.getNumChildren(); i++) {
+            int paramIndex = i - 1;
+
+            // the arguments that match the varargs parameter are passed in a new array, unless they already are one
+            var isArrayArgument = i == node.getNumChildren() - 1
+                    && TypeUtils.getExprType(node.getJmmChild(i), table).isArray();
+            if (paramIndex == fixedParams && !isArrayArgument) {
+                var elements = node.getChildren().subList(i, node.getNumChildren());
+                arguments.add(buildArray(elements));
+                return arguments;
+            }
+
+            var expected = paramIndex < parameters.size()
+                    ? OptUtils.toOllirTypeInstance(parameters.get(paramIndex).getType()) : null;
+            arguments.add(visit(node.getJmmChild(i), expected));
+        }
+
+        // no arguments for the varargs parameter
+        if (fixedParams == node.getNumChildren() - 1) {
+            arguments.add(buildArray(List.of()));
+        }
+
+        return arguments;
+    }
+
+    private boolean isVariable(String name) {
+        return isLocal(name) || table.getFields().stream().anyMatch(field -> field.getName().equals(name));
+    }
+
+    private Element visitNewObject(JmmNode node, Type expected) {
+        var className = node.get("value");
+        var type = new ClassType(ElementType.OBJECTREF, className);
+
+        var object = new Operand(OptUtils.getTemp(), type);
+        buildNewObject(object, className);
+
+        return object;
+    }
+
+    /**
+     * Assigns a new object to the given variable, and calls its constructor.
+     */
+    public void buildNewObject(Operand object, String className) {
+        var type = new ClassType(ElementType.OBJECTREF, className);
+
+        var newObject = new CallInstruction(CallType.NEW, new Operand(className, type), List.of(), type);
+        addInstruction(new AssignInstruction(object, type, newObject));
+
+        var init = new LiteralElement("\"<init>\"", new Type(ElementType.STRING));
+        addInstruction(new CallInstruction(CallType.invokespecial, object, init, List.of(),
+                new Type(ElementType.VOID)));
+    }
+
+    private Element visitBinExpr(JmmNode node, Type expected) {
+        if (isLogical(node)) {
+            return buildShortCircuit(node);
+        }
+
+        var binaryOp = buildBinaryOp(node);
+        return toTemp(binaryOp, binaryOp.getOperation().getTypeInfo());
+    }
+
+    private static boolean isLogical(JmmNode node) {
+        return node.getKind().equals("BinaryOp") && (node.get("op").equals("&&") || node.get("op").equals("||"));
+    }
+
+    /**
+     * Computes a logical operation with branches, so the right operand is only evaluated when it decides the result.
+     * <p>
+     * {@code a && b} becomes {@code if (a) goto rhs; t := false; goto end; rhs: t := b; end:}, and {@code a || b}
+     * becomes {@code if (a) goto true; t := b; goto end; true: t := true; end:}.
+     *
+     * @return a temporary with the result
+     */
+    private Operand buildShortCircuit(JmmNode node) {
+        var isAnd = node.get("op").equals("&&");
+
+        int currentLogicNum = logicNum++;
+        var leftHoldsLabel = (isAnd ? "logicRhs" : "logicTrue") + currentLogicNum;
+        var endLabel = "logicEnd" + currentLogicNum;
+        var result = new Operand(OptUtils.getTemp(), boolType());
+
+        branchIfTrue(node.getJmmChild(0), leftHoldsLabel);
+
+        // the left operand does not hold, the result is false for && and the right operand for ||
+        var otherwise = isAnd ? boolLiteral(false) : visit(node.getJmmChild(1), boolType());
+        addInstruction(new AssignInstruction(result, boolType(), new SingleOpInstruction(otherwise)));
+        addInstruction(new GotoInstruction(endLabel));
+
+        // the left operand holds, the result is the right operand for && and true for ||
+        addLabel(leftHoldsLabel);
+        var holds = isAnd ? visit(node.getJmmChild(1), boolType()) : boolLiteral(true);
+        addInstruction(new AssignInstruction(result, boolType(), new SingleOpInstruction(holds)));
+
+        addLabel(endLabel);
+
+        return result;
+    }
+
+    /**
+     * Adds the instructions that jump to the label if the condition holds, and fall through otherwise.
+     * <p>
+     * Logical operations and negations are lowered into branches instead of being computed as values, and comparisons
+     * into a single branch on the comparison.
+     */
+    public void branchIfTrue(JmmNode condition, String label) {
+        switch (getLogicalKind(condition)) {
+            case "ParenExpr" -> branchIfTrue(condition.getJmmChild(0), label);
+            case "NotExpr" -> branchIfFalse(condition.getJmmChild(0), label);
+            case "||" -> {
+                branchIfTrue(condition.getJmmChild(0), label);
+                branchIfTrue(condition.getJmmChild(1), label);
+            }
+            case "&&" -> {
+                var skipLabel = "logicSkip" + logicNum++;
+                branchIfFalse(condition.getJmmChild(0), skipLabel);
+                branchIfTrue(condition.getJmmChild(1), label);
+                addLabel(skipLabel);
+            }
+            case "<", ">", "==" -> addInstruction(buildCompareBranch(condition, false, label));
+            default -> {
+                var branch = new SingleOpCondInstruction(new SingleOpInstruction(visit(condition, boolType())));
+                branch.setLabel(label);
+                addInstruction(branch);
+            }
+        }
+    }
+
+    /**
+     * Adds the instructions that jump to the label if the condition does not hold, and fall through otherwise.
+     */
+    public void branchIfFalse(JmmNode condition, String label) {
+        switch (getLogicalKind(condition)) {
+            case "ParenExpr" -> branchIfFalse(condition.getJmmChild(0), label);
+            case "NotExpr" -> branchIfTrue(condition.getJmmChild(0), label);
+            case "&&" -> {
+                branchIfFalse(condition.getJmmChild(0), label);
+                branchIfFalse(condition.getJmmChild(1), label);
+            }
+            case "||" -> {
+                var skipLabel = "logicSkip" + logicNum++;
+                branchIfTrue(condition.getJmmChild(0), skipLabel);
+                branchIfFalse(condition.getJmmChild(1), label);
+                addLabel(skipLabel);
+            }
+            case "<", ">", "==" -> addInstruction(buildCompareBranch(condition, true, label));
+            default -> {
+                var value = visit(condition, boolType());
+                var branch = new OpCondInstruction(new UnaryOpInstruction(
+                        new Operation(OperationType.NOTB, boolType()), value));
+                branch.setLabel(label);
+                addInstruction(branch);
+            }
+        }
+    }
+
+    /**
+     * @return the branch to the label when the comparison holds, or when it does not if it is negated, without
+     * computing its boolean value
+     */
+    private OpCondInstruction buildCompareBranch(JmmNode node, boolean negated, String label) {
+        var comparison = buildBinaryOp(node);
+
+        if (negated) {
+            var opType = negate(comparison.getOperation().getOpType());
+            comparison = new BinaryOpInstruction(comparison.getLeftOperand(), new Operation(opType, boolType()),
+                    comparison.getRightOperand());
+        }
+
+        var branch = new OpCondInstruction(comparison);
+        branch.setLabel(label);
+
+        return branch;
+    }
+
+    private static OperationType negate(OperationType opType) {
+        return switch (opType) {
+            case LTH -> OperationType.GTE;
+            case GTH -> OperationType.LTE;
+            case EQ -> OperationType.NEQ;
+            default -> throw new NotImplementedException(opType);
+        };
+    }
+
+    /**
+     * @return the operator of logical operations and comparisons, or the kind of the node otherwise
+     */
+    private static String getLogicalKind(JmmNode node) {
+        return node.getKind().equals("BinaryOp") ? node.get("op") : node.getKind();
+    }
+
+    private BinaryOpInstruction buildBinaryOp(JmmNode node) {
+        var op = node.get("op");
+
+        var lhs = visit(node.getJmmChild(0), intType());
+        var rhs = visit(node.getJmmChild(1), intType());
+
+        var opType = switch (op) {
+            case "+" -> OperationType.ADD;
+            case "-" -> OperationType.SUB;
+            case "*" -> OperationType.MUL;
+            case "/" -> OperationType.DIV;
+            case "<" -> OperationType.LTH;
+            case ">" -> OperationType.GTH;
+            case "==" -> OperationType.EQ;
+            default -> throw new NotImplementedException(op);
+        };
+
+        var resType = OptUtils.toOllirTypeInstance(TypeUtils.getOperatorType(op));
+        return new BinaryOpInstruction(lhs, new Operation(opType, resType), rhs);
+    }
+
+    private Element visitNotExpr(JmmNode node, Type expected) {
+        return toTemp(buildNot(node), new Type(ElementType.BOOLEAN));
+    }
+
+    private UnaryOpInstruction buildNot(JmmNode node) {
+        var operand = visit(node.getJmmChild(0), boolType());
+        return new UnaryOpInstruction(new Operation(OperationType.NOTB, new Type(ElementType.BOOLEAN)), operand);
+    }
+
+    private Element visitNewArray(JmmNode node, Type expected) {
+        var newArray = buildNewArray(visit(node.getJmmChild(0), intType()));
+        return toTemp(newArray, newArray.getReturnType());
+    }
+
+    private CallInstruction buildNewArray(Element size) {
+        var type = new ArrayType(1, ElementType.INT32);
+        return new CallInstruction(CallType.NEW, new Operand("array", type), List.of(size), type);
+    }
+
+    private Element visitArrayInitializer(JmmNode node, Type expected) {
+        return buildArray(node.getChildren());
+    }
+
+    /**
+     * @return a temporary with a new array that holds the values of the given expressions
+     */
+    private Operand buildArray(List<JmmNode> elements) {
+        var newArray = buildNewArray(new LiteralElement(String.valueOf(elements.size()), new Type(ElementType.INT32)));
+        var array = toTemp(newArray, newArray.getReturnType());
+
+        for (int i = 0; i < elements.size(); i++) {
+            var value = visit(elements.get(i), intType());
+            var index = new LiteralElement(String.valueOf(i), new Type(ElementType.INT32));
+            var element = new ArrayOperand(array.getName(), new Type(ElementType.INT32), List.of(index));
+
+            addInstruction(new AssignInstruction(element, new Type(ElementType.INT32), new SingleOpInstruction(value)));
+        }
+
+        return array;
+    }
+
+    private Element visitLength(JmmNode node, Type expected) {
+        return toTemp(buildLength(node), new Type(ElementType.INT32));
+    }
+
+    private CallInstruction buildLength(JmmNode node) {
+        var array = visit(node.getJmmChild(0), null);
+        return new CallInstruction(CallType.arraylength, array, new Type(ElementType.INT32));
+    }
+
+    private Element visitArrayAccess(JmmNode node, Type expected) {
+        return toTemp(buildArrayAccess(node), new Type(ElementType.INT32));
+    }
+
+    private SingleOpInstruction buildArrayAccess(JmmNode node) {
+        return new SingleOpInstruction(buildArrayOperand(node));
+    }
+
+    /**
+     * @return the element of the array accessed by the given node, which can be both read and written
+     */
+    public ArrayOperand buildArrayOperand(JmmNode node) {
+        var array = (Operand) visit(node.getJmmChild(0), null);
+        var index = visit(node.getJmmChild(1), intType());
+
+        return new ArrayOperand(array.getName(), new Type(ElementType.INT32), List.of(index));
+    }
+
+    /**
+     * Assigns the value computed by the instruction to a new temporary.
+     */
+    private Operand toTemp(Instruction instruction, Type type) {
+        var temp = new Operand(OptUtils.getTemp(), type);
+        addInstruction(new AssignInstruction(temp, type, instruction));
+
+        return temp;
+    }
+
+    private static Type intType() {
+        return new Type(ElementType.INT32);
+    }
+
+    private static Type boolType() {
+        return new Type(ElementType.BOOLEAN);
+    }
+
+    private static LiteralElement boolLiteral(boolean value) {
+        return new LiteralElement(value ? "1" : "0", boolType());
+    }
+
+    private Element defaultVisit(JmmNode node, Type expected) {
+        throw new NotImplementedException(node.getKind());
+    }
+}
@@ -0,0 +1,120 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp2024.optimization.passes.BlockLayout;
+import pt.up.fe.comp2024.optimization.passes.ConstantArgumentHoisting;
+import pt.up.fe.comp2024.optimization.passes.CopyPropagation;
+import pt.up.fe.comp2024.optimization.passes.DeadStoreElimination;
+import pt.up.fe.comp2024.optimization.passes.EscapeAnalysis;
+import pt.up.fe.comp2024.optimization.passes.LocalValueNumbering;
+import pt.up.fe.comp2024.optimization.passes.LoopInvariantCodeMotion;
+import pt.up.fe.comp2024.optimization.passes.StrengthReduction;
+import pt.up.fe.comp2024.optimization.passes.TailCallElimination;
+import pt.up.fe.comp2024.optimization.passes.UnreachableCodeElimination;
+import pt.up.fe.comp2024.utils.Diagnostics;
+
+import java.util.List;
+
+/**
+ * Runs a pipeline of optimization passes over the methods of an OLLIR class, either parsed from OLLIR code or built
+ * directly from the AST.
+ * <p>
+ * The small methods called on 'this' are first inlined by {@link MethodInliner}, so the passes also clean up the
+ * copies of their bodies.
+ * <p>
+ * With a {@link Profile} of a previous run, the blocks of each method are first laid out by {@link BlockLayout}, while
+ * the labels still match the ones of the profiled class, and the profile also guides the inliner and the loop passes.
+ * <p>
+ * The passes are repeated until none of them changes the method, since the result of one pass can expose
+ * opportunities for the others. The variable table of each method is then built again, so it only has the
+ * variables that are still used, and its registers are compacted by {@link RegisterCompaction}.
+ */
+public class OllirOptimizer {
+
+    private final List<OllirPass> passes;
+
+    private final Profile profile;
+
+    public OllirOptimizer() {
+        this(Profile.NONE);
+    }
+
+    public OllirOptimizer(Profile profile) {
+        this(List.of(new TailCallElimination(), new UnreachableCodeElimination(), new LocalValueNumbering(),
+                new EscapeAnalysis(), new CopyPropagation(), new LoopInvariantCodeMotion(profile),
+                new ConstantArgumentHoisting(profile), new StrengthReduction(profile), new DeadStoreElimination()),
+                profile);
+    }
+
+    public OllirOptimizer(List<OllirPass> passes) {
+        this(passes, Profile.NONE);
+    }
+
+    private OllirOptimizer(List<OllirPass> passes, Profile profile) {
+        this.passes = passes;
+        this.profile = profile;
+    }
+
+    /**
+     * @return true if any method of the class was changed
+     */
+    public boolean optimize(ClassUnit classUnit) {
+        boolean changed = false;
+
+        if (!profile.isEmpty()) {
+            var layout = new BlockLayout(profile);
+            for (var method : classUnit.getMethods()) {
+                changed |= layout.apply(method);
+            }
+        }
+
+        var inlined = new MethodInliner(profile).inline(classUnit);
+        changed |= !inlined.isEmpty();
+
+        for (var method : classUnit.getMethods()) {
+            boolean optimized = optimize(method);
+
+            // the methods the passes left unchanged, inlined into or not, still get their registers compacted
+            if (!optimized) {
+                rebuildVarTable(method);
+            }
+
+            changed |= optimized;
+        }
+
+        return changed;
+    }
+
+    public boolean optimize(Method method) {
+        boolean changed = false;
+
+        boolean changedInRound;
+        do {
+            changedInRound = false;
+            for (var pass : passes) {
+                changedInRound |= pass.apply(method);
+            }
+
+            changed |= changedInRound;
+        } while (changedInRound);
+
+        if (changed) {
+            rebuildVarTable(method);
+            Diagnostics.debug(() -> "Optimized method " + method.getMethodName());
+        }
+
+        return changed;
+    }
+
+    private static void rebuildVarTable(Method method) {
+        // building the table does not remove the variables that are no longer used
+        method.getVarTable().clear();
+        method.buildVarTable();
+
+        int saved = RegisterCompaction.compact(method);
+        if (saved > 0) {
+            Diagnostics.info(() -> "Register compaction saved " + saved + " locals in method " + method.getMethodName());
+        }
+    }
+}
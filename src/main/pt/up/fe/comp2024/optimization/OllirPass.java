@@ -0,0 +1,17 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.Method;
+
+/**
+ * Represents an optimization pass over the instructions of a single OLLIR method.
+ */
+public interface OllirPass {
+
+    /**
+     * Rewrites the instructions of the method in place, keeping its labels attached to the right instructions.
+     *
+     * @return true if the method was changed
+     */
+    boolean apply(Method method);
+
+}
@@ -0,0 +1,226 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
+
+import java.util.stream.Collectors;
+
+/**
+ * Prints an OLLIR class as OLLIR code, e.g. the class built by {@link OllirClassBuilder}, before or after it is
+ * optimized.
+ * <p>
+ * The code is parsed back into the same class, so the OLLIR code of a program always comes from the one lowering of
+ * the AST that the compiler uses.
+ */
+public class OllirPrinter {
+
+    private static final String NL = "\n";
+    private static final String INDENT = "    ";
+
+    private final StringBuilder code = new StringBuilder();
+
+    /**
+     * @return the OLLIR code of the class
+     */
+    public static String print(ClassUnit classUnit) {
+        var printer = new OllirPrinter();
+        printer.printClass(classUnit);
+
+        return printer.code.toString();
+    }
+
+    private void printClass(ClassUnit classUnit) {
+        for (var imported : classUnit.getImports()) {
+            code.append("import ").append(imported).append(";").append(NL);
+        }
+
+        if (!classUnit.getImports().isEmpty()) {
+            code.append(NL);
+        }
+
+        code.append(classUnit.getClassName());
+        var superClass = classUnit.getSuperClass();
+        if (superClass != null && !superClass.equals("Object")) {
+            code.append(" extends ").append(superClass);
+        }
+        code.append(" {").append(NL);
+
+        for (var field : classUnit.getFields()) {
+            code.append(NL).append(INDENT).append(".field ");
+            appendAccessModifier(field.getFieldAccessModifier());
+            code.append(field.getFieldName()).append(type(field.getFieldType())).append(";").append(NL);
+        }
+
+        for (var method : classUnit.getMethods()) {
+            code.append(NL);
+            printMethod(method);
+        }
+
+        code.append("}").append(NL);
+    }
+
+    private void printMethod(Method method) {
+        code.append(INDENT);
+
+        if (method.isConstructMethod()) {
+            code.append(".construct ");
+        } else {
+            code.append(".method ");
+            appendAccessModifier(method.getMethodAccessModifier());
+            if (method.isStaticMethod()) {
+                code.append("static ");
+            }
+            if (method.isFinalMethod()) {
+                code.append("final ");
+            }
+        }
+
+        var params = method.getParams().stream().map(OllirPrinter::element).collect(Collectors.joining(", "));
+        code.append(method.getMethodName()).append("(").append(params).append(")")
+                .append(type(method.getReturnType())).append(" {").append(NL);
+
+        for (var instruction : method.getInstructions()) {
+            for (var label : method.getLabels(instruction)) {
+                code.append(INDENT).append(label).append(":").append(NL);
+            }
+
+            code.append(INDENT).append(INDENT).append(instruction(instruction)).append(";").append(NL);
+        }
+
+        code.append(INDENT).append("}").append(NL);
+    }
+
+    private void appendAccessModifier(AccessModifier modifier) {
+        if (modifier != AccessModifier.DEFAULT) {
+            code.append(modifier.name().toLowerCase()).append(" ");
+        }
+    }
+
+    private static String instruction(Instruction instruction) {
+        return switch (instruction.getInstType()) {
+            case ASSIGN -> {
+                var assign = (AssignInstruction) instruction;
+                yield element(assign.getDest()) + " :=" + type(assign.getTypeOfAssign()) + " "
+                        + instruction(assign.getRhs());
+            }
+            case CALL -> call((CallInstruction) instruction);
+            case GOTO -> "goto " + ((GotoInstruction) instruction).getLabel();
+            case BRANCH -> {
+                var branch = (CondBranchInstruction) instruction;
+                yield "if (" + instruction(branch.getCondition()) + ") goto " + branch.getLabel();
+            }
+            case RETURN -> {
+                var ret = (ReturnInstruction) instruction;
+                yield ret.hasReturnValue() ? "ret" + type(ret.getReturnType()) + " " + element(ret.getOperand())
+                        : "ret.V";
+            }
+            case PUTFIELD -> {
+                var putField = (PutFieldInstruction) instruction;
+                yield "putfield(" + element(putField.getObject()) + ", " + element(putField.getField()) + ", "
+                        + element(putField.getValue()) + ").V";
+            }
+            case GETFIELD -> {
+                var getField = (GetFieldInstruction) instruction;
+                yield "getfield(" + element(getField.getObject()) + ", " + element(getField.getField()) + ")"
+                        + type(getField.getFieldType());
+            }
+            case UNARYOPER -> {
+                var unaryOp = (UnaryOpInstruction) instruction;
+                yield operation(unaryOp.getOperation()) + " " + element(unaryOp.getOperand());
+            }
+            case BINARYOPER -> {
+                var binaryOp = (BinaryOpInstruction) instruction;
+                yield element(binaryOp.getLeftOperand()) + " " + operation(binaryOp.getOperation()) + " "
+                        + element(binaryOp.getRightOperand());
+            }
+            case NOPER -> element(((SingleOpInstruction) instruction).getSingleOperand());
+        };
+    }
+
+    private static String call(CallInstruction call) {
+        var arguments = new StringBuilder();
+        for (var argument : call.getArguments()) {
+            arguments.append(", ").append(element(argument));
+        }
+
+        var returnType = type(call.getReturnType());
+
+        return switch (call.getInvocationType()) {
+            case invokestatic, invokevirtual, invokespecial -> call.getInvocationType().name() + "("
+                    + caller(call) + ", " + ((LiteralElement) call.getMethodName()).getLiteral() + arguments + ")"
+                    + returnType;
+            case NEW -> "new(" + ((Operand) call.getCaller()).getName() + arguments + ")" + returnType;
+            case arraylength -> "arraylength(" + element(call.getCaller()) + ")" + returnType;
+            default -> throw new NotImplementedException(call.getInvocationType());
+        };
+    }
+
+    /**
+     * @return the class of a static call, or the object of the other calls
+     */
+    private static String caller(CallInstruction call) {
+        var caller = call.getCaller();
+        if (caller.getType().getTypeOfElement() == ElementType.CLASS) {
+            return ((Operand) caller).getName();
+        }
+
+        return element(caller);
+    }
+
+    private static String element(Element element) {
+        if (element instanceof LiteralElement literal) {
+            return literal.getLiteral() + type(literal.getType());
+        }
+
+        if (element instanceof ArrayOperand arrayOperand) {
+            var indexes = arrayOperand.getIndexOperands().stream()
+                    .map(OllirPrinter::element)
+                    .collect(Collectors.joining("]["));
+            return arrayOperand.getName() + "[" + indexes + "]" + type(arrayOperand.getType());
+        }
+
+        var operand = (Operand) element;
+        if (operand.getType().getTypeOfElement() == ElementType.THIS) {
+            return "this";
+        }
+
+        return operand.getName() + type(operand.getType());
+    }
+
+    private static String operation(Operation operation) {
+        var symbol = switch (operation.getOpType()) {
+            case ADD -> "+";
+            case SUB -> "-";
+            case MUL -> "*";
+            case DIV -> "/";
+            case SHL -> "<<";
+            case SHR -> ">>";
+            case SHRR -> ">>>";
+            case XOR -> "^";
+            case AND -> "&";
+            case OR -> "|";
+            case LTH -> "<";
+            case GTH -> ">";
+            case EQ -> "==";
+            case NEQ -> "!=";
+            case LTE -> "<=";
+            case GTE -> ">=";
+            case ANDB -> "&&";
+            case ORB -> "||";
+            case NOT, NOTB -> "!";
+        };
+
+        return symbol + type(operation.getTypeInfo());
+    }
+
+    private static String type(Type type) {
+        return "." + switch (type.getTypeOfElement()) {
+            case INT32 -> "i32";
+            case BOOLEAN -> "bool";
+            case STRING -> "String";
+            case VOID -> "V";
+            case ARRAYREF -> "array" + type(((ArrayType) type).getElementType());
+            case OBJECTREF, CLASS, THIS -> ((ClassType) type).getName();
+        };
+    }
+}
@@ -1,5 +1,8 @@
 package pt.up.fe.comp2024.optimization;
 
+import org.specs.comp.ollir.ArrayType;
+import org.specs.comp.ollir.ClassType;
+import org.specs.comp.ollir.ElementType;
 import org.specs.comp.ollir.Instruction;
 import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.Type;
@@ -15,9 +18,15 @@ import static pt.up.fe.comp2024.ast.Kind.TYPE;
 public class OptUtils {
     private static int tempNumber = -1;
 
+    private static final String TEMP_PREFIX = "tmp";
+
     public static String getTemp() {
 
-        return getTemp("tmp");
+        return getTemp(TEMP_PREFIX);
+    }
+
+    public static boolean isTemp(String name) {
+        return name.startsWith(TEMP_PREFIX);
     }
 
     public static String getTemp(String prefix) {
@@ -74,5 +83,36 @@ public class OptUtils {
         };
     }
 
+    /**
+     * @return the type of the OLLIR object model that corresponds to the given type, the same that is parsed from
+     * the type returned by {@link #toOllirType(Type)}
+     */
+    public static org.specs.comp.ollir.Type toOllirTypeInstance(Type type) {
+        if (type == null) {
+            return new org.specs.comp.ollir.Type(ElementType.VOID);
+        }
+
+        if (type.isArray()) {
+            var arrayType = new ArrayType();
+            arrayType.setNumDimensions(1);
 
+            var elementType = toOllirTypeInstance(new Type(type.getName(), false));
+            arrayType.setTypeOfElements(elementType.getTypeOfElement());
+            if (elementType instanceof ClassType classType) {
+                arrayType.setElementClass(classType.getName());
+            } else if (elementType.getTypeOfElement() == ElementType.STRING) {
+                arrayType.setElementClass("String");
+            }
+
+            return arrayType;
+        }
+
+        return switch (type.getName()) {
+            case "int" -> new org.specs.comp.ollir.Type(ElementType.INT32);
+            case "boolean" -> new org.specs.comp.ollir.Type(ElementType.BOOLEAN);
+            case "void", "static void" -> new org.specs.comp.ollir.Type(ElementType.VOID);
+            case "String" -> new org.specs.comp.ollir.Type(ElementType.STRING);
+            default -> new ClassType(ElementType.OBJECTREF, type.getName());
+        };
+    }
 }
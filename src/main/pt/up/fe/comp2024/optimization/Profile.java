@@ -0,0 +1,127 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.Method;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The counts of a run of a class compiled with profiling, which guide the optimizations of a later compilation.
+ * <p>
+ * The instrumented class writes one line per counter, with its key and its count, e.g. {@code entry sum 10} or
+ * {@code branch sum whileLoop0 60}. The counters are:
+ * <ul>
+ *     <li>{@code entry <method>}: the calls of the method;</li>
+ *     <li>{@code branch <method> <label>}: the runs of the conditional branches of the method to the label;</li>
+ *     <li>{@code fallthrough <method> <label>}: the runs of those branches that did not jump;</li>
+ *     <li>{@code backedge <method> <label>}: the runs of the gotos of the method back to the label.</li>
+ * </ul>
+ * Instructions are identified by the labels of the OLLIR code before it is optimized, so the profile must come from a
+ * class compiled from the same code with the same options, except for the OLLIR optimizations.
+ */
+public class Profile {
+
+    public static final Profile NONE = new Profile(Map.of());
+
+    private final Map<String, Long> counts;
+
+    private Profile(Map<String, Long> counts) {
+        this.counts = counts;
+    }
+
+    /**
+     * Reads the profile written by a run of an instrumented class.
+     */
+    public static Profile read(File file) {
+        var counts = new HashMap<String, Long>();
+
+        try {
+            for (var line : Files.readAllLines(file.toPath())) {
+                int space = line.lastIndexOf(' ');
+                if (space == -1) {
+                    continue;
+                }
+
+                counts.merge(line.substring(0, space), Long.parseLong(line.substring(space + 1)), Long::sum);
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new RuntimeException("Could not read profile '" + file + "'", e);
+        }
+
+        return new Profile(counts);
+    }
+
+    public static String entryKey(String method) {
+        return "entry " + method;
+    }
+
+    public static String branchKey(String method, String label) {
+        return "branch " + method + " " + label;
+    }
+
+    public static String fallthroughKey(String method, String label) {
+        return "fallthrough " + method + " " + label;
+    }
+
+    public static String backEdgeKey(String method, String label) {
+        return "backedge " + method + " " + label;
+    }
+
+    public boolean isEmpty() {
+        return counts.isEmpty();
+    }
+
+    /**
+     * @return the number of calls of the method, if it was profiled
+     */
+    public Optional<Long> getEntries(String method) {
+        return Optional.ofNullable(counts.get(entryKey(method)));
+    }
+
+    /**
+     * @return the counts of the conditional branches of the method to the label, if they were profiled
+     */
+    public Optional<Branch> getBranch(String method, String label) {
+        var executions = counts.get(branchKey(method, label));
+        var fallthrough = counts.get(fallthroughKey(method, label));
+
+        if (executions == null || fallthrough == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new Branch(executions, fallthrough));
+    }
+
+    /**
+     * @return true if the profile shows that the body of the loop never ran: the branch back to its first instruction
+     * was never taken
+     */
+    public boolean neverIterates(Method method, InstructionUtils.Loop loop) {
+        var header = method.getInstructions().get(loop.header());
+
+        for (var entry : method.getLabels().entrySet()) {
+            if (entry.getValue() == header) {
+                var branch = getBranch(method.getMethodName(), entry.getKey());
+                if (branch.isPresent()) {
+                    return branch.get().taken() == 0;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * How many times the conditional branches to a label ran, and how many of those did not jump.
+     */
+    public record Branch(long executions, long fallthrough) {
+
+        public long taken() {
+            return executions - fallthrough;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp2024.optimization.passes.DeadStoreElimination;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.getDef;
+import static pt.up.fe.comp2024.optimization.InstructionUtils.getUses;
+
+/**
+ * Gives the local variables of a method the same register when they are never live at the same time, so the method
+ * needs fewer locals.
+ * <p>
+ * The variable table built by OLLIR gives each variable its own register, which also counts the temporaries and the
+ * copies of inlined parameters that are only live for a few instructions. Two variables interfere when one is written
+ * while the other may still be read, and each variable takes the lowest register not taken by a variable it interferes
+ * with, in the order the variables were numbered.
+ * <p>
+ * 'this' and the parameters keep their registers, since the JVM passes the arguments in them. A variable that may be
+ * read before it is written keeps a register of its own, since its value is then whatever the register holds.
+ */
+public class RegisterCompaction {
+
+    /**
+     * @return the number of registers saved
+     */
+    public static int compact(Method method) {
+        var varTable = method.getVarTable();
+        var params = InstructionUtils.getParamNames(method);
+
+        // 'this' takes the first register of an instance method even when the method does not use it
+        int fixedRegisters = (method.isStaticMethod() ? 0 : 1) + method.getParams().size();
+        var locals = new ArrayList<String>();
+        for (var entry : varTable.entrySet()) {
+            if (entry.getKey().equals("this") || params.contains(entry.getKey())) {
+                fixedRegisters = Math.max(fixedRegisters, entry.getValue().getVirtualReg() + 1);
+            } else {
+                locals.add(entry.getKey());
+            }
+        }
+
+        int registersBefore = countRegisters(method);
+        locals.sort(Comparator.comparingInt(name -> varTable.get(name).getVirtualReg()));
+
+        var interference = findInterference(method, new HashSet<>(locals));
+        var liveAtEntry = findLiveAtEntry(method);
+
+        var registers = new HashMap<String, Integer>();
+
+        for (var local : locals) {
+            var taken = new HashSet<Integer>();
+            for (var other : interference.getOrDefault(local, Set.of())) {
+                if (registers.containsKey(other)) {
+                    taken.add(registers.get(other));
+                }
+            }
+
+            // the registers of the variables read before being written are not given to any other variable
+            if (liveAtEntry.contains(local)) {
+                taken.addAll(registers.values());
+            } else {
+                for (var other : registers.keySet()) {
+                    if (liveAtEntry.contains(other)) {
+                        taken.add(registers.get(other));
+                    }
+                }
+            }
+
+            int register = fixedRegisters;
+            while (taken.contains(register)) {
+                register++;
+            }
+
+            registers.put(local, register);
+        }
+
+        registers.forEach((name, register) -> varTable.get(name).setVirtualReg(register));
+
+        return registersBefore - countRegisters(method);
+    }
+
+    private static int countRegisters(Method method) {
+        int maxRegister = -1;
+        for (var descriptor : method.getVarTable().values()) {
+            maxRegister = Math.max(maxRegister, descriptor.getVirtualReg());
+        }
+
+        return maxRegister + 1;
+    }
+
+    /**
+     * @return the variables each local variable interferes with: the ones written while it may be read later, and the
+     * ones that may be read later while it is written
+     */
+    private static Map<String, Set<String>> findInterference(Method method, Set<String> locals) {
+        var code = method.getInstructions();
+        var liveOut = DeadStoreElimination.computeLiveOut(method);
+        var interference = new HashMap<String, Set<String>>();
+
+        for (int i = 0; i < code.size(); i++) {
+            var dest = getDef(code.get(i));
+            if (dest.isEmpty() || !locals.contains(dest.get())) {
+                continue;
+            }
+
+            for (var live : liveOut.get(i)) {
+                if (!live.equals(dest.get()) && locals.contains(live)) {
+                    interference.computeIfAbsent(dest.get(), name -> new HashSet<>()).add(live);
+                    interference.computeIfAbsent(live, name -> new HashSet<>()).add(dest.get());
+                }
+            }
+        }
+
+        return interference;
+    }
+
+    /**
+     * @return the variables that may be read before being written
+     */
+    private static Set<String> findLiveAtEntry(Method method) {
+        var code = method.getInstructions();
+        if (code.isEmpty()) {
+            return Set.of();
+        }
+
+        var live = new HashSet<>(DeadStoreElimination.computeLiveOut(method).get(0));
+        getDef(code.get(0)).ifPresent(live::remove);
+        live.addAll(getUses(code.get(0)));
+
+        return live;
+    }
+}
@@ -0,0 +1,176 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.Profile;
+import pt.up.fe.comp2024.utils.Diagnostics;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.*;
+
+/**
+ * Lays out the blocks of each if so the path taken most often in the {@link Profile} falls through, instead of
+ * jumping over the other block.
+ * <p>
+ * An if is built as {@code if (cond) goto then; <else>; goto end; then: <then>; end:}, so the then block always costs a
+ * taken jump. When the profile shows the branch was taken more often than not, the condition is negated and the
+ * blocks are swapped: {@code if (!cond) goto else; <then>; goto end; else: <else>; end:}. When there is no else block,
+ * the negated branch jumps straight to the end, and the goto is removed.
+ * <p>
+ * The profile is keyed by the labels of the code before it is optimized, so this pass runs once, before any other.
+ */
+public class BlockLayout implements OllirPass {
+
+    private final Profile profile;
+
+    public BlockLayout(Profile profile) {
+        this.profile = profile;
+    }
+
+    @Override
+    public boolean apply(Method method) {
+        var code = method.getInstructions();
+        int swapped = 0;
+
+        // swapping the blocks of an if only moves the instructions after its branch
+        for (int i = code.size() - 1; i >= 0; i--) {
+            if (code.get(i) instanceof CondBranchInstruction branch && isMostlyTaken(method, branch)
+                    && swap(method, i)) {
+                swapped++;
+            }
+        }
+
+        if (swapped > 0) {
+            int count = swapped;
+            Diagnostics.info(() -> "Block layout swapped the blocks of " + count + " ifs in method "
+                    + method.getMethodName());
+        }
+
+        return swapped > 0;
+    }
+
+    private boolean isMostlyTaken(Method method, CondBranchInstruction branch) {
+        return profile.getBranch(method.getMethodName(), branch.getLabel())
+                .filter(counts -> counts.taken() > counts.fallthrough())
+                .isPresent();
+    }
+
+    /**
+     * Swaps the blocks of the if whose branch is at the given position, if it has the shape of an if.
+     *
+     * @return true if the blocks were swapped
+     */
+    private static boolean swap(Method method, int index) {
+        var code = method.getInstructions();
+        var labels = indexLabels(method, indexInstructions(code));
+        var branch = (CondBranchInstruction) code.get(index);
+
+        // the then block must only be reached by the branch, and be preceded by the goto that ends the else block
+        var then = labels.get(branch.getLabel());
+        if (then == null || then <= index + 1 || countJumps(code, branch.getLabel()) != 1
+                || !(code.get(then - 1) instanceof GotoInstruction jump)) {
+            return false;
+        }
+
+        var end = labels.get(jump.getLabel());
+        if (end == null || end <= then) {
+            return false;
+        }
+
+        var negated = negate(branch);
+        if (negated.isEmpty()) {
+            return false;
+        }
+
+        int jumpIndex = then - 1;
+        var elseBlock = new ArrayList<>(code.subList(index + 1, jumpIndex));
+        var thenBlock = new ArrayList<>(code.subList(then, end));
+
+        var swapped = new ArrayList<Instruction>(thenBlock);
+        if (elseBlock.isEmpty()) {
+            // the jumps to the goto go to the end of the if instead
+            negated.get().setLabel(jump.getLabel());
+            moveLabels(method, jump, code.get(end));
+        } else {
+            negated.get().setLabel(getLabel(method, elseBlock.get(0), branch.getLabel() + "_else"));
+            swapped.add(jump);
+            swapped.addAll(elseBlock);
+        }
+
+        moveLabels(method, branch, negated.get());
+        code.set(index, negated.get());
+
+        code.subList(index + 1, end).clear();
+        code.addAll(index + 1, swapped);
+
+        return true;
+    }
+
+    private static int countJumps(List<Instruction> code, String label) {
+        int count = 0;
+        for (var instruction : code) {
+            if (getJumpLabel(instruction).filter(label::equals).isPresent()) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return a label of the instruction, attaching a new one to it if it has none
+     */
+    private static String getLabel(Method method, Instruction instruction, String name) {
+        for (var entry : method.getLabels().entrySet()) {
+            if (entry.getValue() == instruction) {
+                return entry.getKey();
+            }
+        }
+
+        while (method.getLabels().containsKey(name)) {
+            name = "_" + name;
+        }
+
+        method.getLabels().put(name, instruction);
+        return name;
+    }
+
+    /**
+     * @return a branch without a label that jumps when the given one does not, if its condition can be negated
+     */
+    private static Optional<CondBranchInstruction> negate(CondBranchInstruction branch) {
+        var condition = branch.getCondition();
+
+        if (branch instanceof SingleOpCondInstruction single) {
+            var operand = single.getCondition().getSingleOperand();
+            return Optional.of(new OpCondInstruction(new UnaryOpInstruction(
+                    new Operation(OperationType.NOTB, new Type(ElementType.BOOLEAN)), operand)));
+        }
+
+        if (condition instanceof UnaryOpInstruction unaryOp
+                && unaryOp.getOperation().getOpType() == OperationType.NOTB) {
+            return Optional.of(new SingleOpCondInstruction(new SingleOpInstruction(unaryOp.getOperand())));
+        }
+
+        if (condition instanceof BinaryOpInstruction binaryOp) {
+            var operation = binaryOp.getOperation();
+            var opType = switch (operation.getOpType()) {
+                case LTH -> OperationType.GTE;
+                case GTE -> OperationType.LTH;
+                case GTH -> OperationType.LTE;
+                case LTE -> OperationType.GTH;
+                case EQ -> OperationType.NEQ;
+                case NEQ -> OperationType.EQ;
+                default -> null;
+            };
+
+            if (opType != null) {
+                return Optional.of(new OpCondInstruction(new BinaryOpInstruction(binaryOp.getLeftOperand(),
+                        new Operation(opType, operation.getTypeInfo()), binaryOp.getRightOperand())));
+            }
+        }
+
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,224 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.Profile;
+import pt.up.fe.comp2024.utils.Diagnostics;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.*;
+
+/**
+ * Hoists the arrays of constants passed to methods of the class inside loops, such as the arguments of
+ * {@code this.sum(1, 2, 3)} for a varargs method, so a single array is built before the loop and reused by every
+ * iteration instead of a new one each time.
+ * <p>
+ * An array is hoisted when it is built by a new array followed by a store of a literal in each element, its variable
+ * has no other definition, and it is only used as an argument of calls on 'this' to methods of the class that never
+ * change it. A parameter is never changed when the method only reads its elements and its length: it is not stored
+ * into, copied, passed to another method, returned or kept in a field, so the array cannot be changed by anyone else
+ * either.
+ * <p>
+ * The hoisted instructions are placed before the goto that enters the loop, like the ones of
+ * {@link LoopInvariantCodeMotion}, and neither hoists from loops whose body never ran in the {@link Profile}.
+ */
+public class ConstantArgumentHoisting implements OllirPass {
+
+    private final Profile profile;
+
+    public ConstantArgumentHoisting() {
+        this(Profile.NONE);
+    }
+
+    public ConstantArgumentHoisting(Profile profile) {
+        this.profile = profile;
+    }
+
+    @Override
+    public boolean apply(Method method) {
+        int count = 0;
+
+        // the array of a nested loop may be hoisted again out of the loop around it
+        while (hoistFromAnyLoop(method)) {
+            count++;
+        }
+
+        if (count > 0) {
+            int hoisted = count;
+            Diagnostics.info(() -> "Hoisted " + hoisted + " constant arguments out of the loops of method "
+                    + method.getMethodName());
+        }
+
+        return count > 0;
+    }
+
+    private boolean hoistFromAnyLoop(Method method) {
+        for (var loop : findLoops(method)) {
+            if (!profile.neverIterates(method, loop) && hoist(method, loop)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Hoists the first constant argument found in the loop.
+     *
+     * @return true if an argument was hoisted
+     */
+    private boolean hoist(Method method, Loop loop) {
+        var code = method.getInstructions();
+        var defCounts = countDefs(method);
+        var params = getParamNames(method);
+
+        for (int i = loop.header(); i <= loop.end(); i++) {
+            var dest = getDef(code.get(i));
+            if (dest.isEmpty() || params.contains(dest.get()) || defCounts.get(dest.get()) != 1) {
+                continue;
+            }
+
+            int length = getConstantArrayLength(method, i, dest.get());
+            if (length < 0 || i + length > loop.end() || !isOnlyPassedToReaders(method, i, length, dest.get())) {
+                continue;
+            }
+
+            // the labels of the hoisted instructions go to the next one that stays in the loop
+            var hoisted = new ArrayList<>(code.subList(i, i + length + 1));
+            for (var instruction : hoisted) {
+                moveLabels(method, instruction, code.get(i + length + 1));
+            }
+            code.subList(i, i + length + 1).clear();
+
+            var entry = code.get(loop.entry());
+            code.addAll(loop.entry(), hoisted);
+            moveLabels(method, entry, hoisted.get(0));
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the length of the array, if the instruction at the given position creates it with a literal length and
+     * the following instructions store a literal in each of its elements, in order, or -1 otherwise
+     */
+    private static int getConstantArrayLength(Method method, int index, String array) {
+        var code = method.getInstructions();
+
+        if (!(code.get(index) instanceof AssignInstruction assign)
+                || !(assign.getRhs() instanceof CallInstruction call)
+                || call.getInvocationType() != CallType.NEW
+                || call.getCaller().getType().getTypeOfElement() != ElementType.ARRAYREF
+                || !(call.getArguments().get(0) instanceof LiteralElement size)) {
+            return -1;
+        }
+
+        int length = Integer.parseInt(size.getLiteral());
+        if (index + length >= code.size()) {
+            return -1;
+        }
+
+        for (int i = 0; i < length; i++) {
+            var store = code.get(index + i + 1);
+
+            if (hasLabels(method, store)
+                    || !(store instanceof AssignInstruction element)
+                    || !(element.getDest() instanceof ArrayOperand dest) || !dest.getName().equals(array)
+                    || dest.getIndexOperands().size() != 1
+                    || !(dest.getIndexOperands().get(0) instanceof LiteralElement position)
+                    || !position.getLiteral().equals(String.valueOf(i))
+                    || !(element.getRhs() instanceof SingleOpInstruction value)
+                    || !value.getSingleOperand().isLiteral()) {
+                return -1;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * @return true if every instruction of the method that uses the array, besides the ones that build it, passes it
+     * to methods of the class that never change it
+     */
+    private static boolean isOnlyPassedToReaders(Method method, int index, int length, String array) {
+        var code = method.getInstructions();
+        boolean passed = false;
+
+        for (int i = 0; i < code.size(); i++) {
+            if (i > index && i <= index + length || !getUses(code.get(i)).contains(array)) {
+                continue;
+            }
+
+            var instruction = code.get(i);
+            var rhs = instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction;
+
+            if (instruction instanceof AssignInstruction assign && assign.getDest() instanceof ArrayOperand
+                    || !(rhs instanceof CallInstruction call) || !isPassedToReaders(method.getOllirClass(), call, array)) {
+                return false;
+            }
+
+            passed = true;
+        }
+
+        return passed;
+    }
+
+    private static boolean isPassedToReaders(ClassUnit classUnit, CallInstruction call, String array) {
+        if (call.getInvocationType() != CallType.invokevirtual
+                || !(call.getCaller() instanceof Operand caller) || !caller.getName().equals("this")
+                || !(call.getMethodName() instanceof LiteralElement name)) {
+            return false;
+        }
+
+        var callees = classUnit.getMethods().stream()
+                .filter(method -> method.getMethodName().equals(name.getLiteral().replace("\"", "")))
+                .toList();
+        if (callees.size() != 1 || callees.get(0).getParams().size() != call.getArguments().size()) {
+            return false;
+        }
+
+        var callee = callees.get(0);
+        var arguments = call.getArguments();
+
+        for (int i = 0; i < arguments.size(); i++) {
+            if (isVariable(arguments.get(i), array)
+                    && !isReadOnly(callee, ((Operand) callee.getParams().get(i)).getName())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if the method only reads the elements and the length of the array in the parameter
+     */
+    private static boolean isReadOnly(Method method, String param) {
+        for (var instruction : method.getInstructions()) {
+            if (instruction instanceof AssignInstruction assign && assign.getDest() instanceof ArrayOperand dest
+                    && dest.getName().equals(param)) {
+                return false;
+            }
+
+            var rhs = instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction;
+            if (rhs instanceof CallInstruction call && call.getInvocationType() == CallType.arraylength) {
+                continue;
+            }
+
+            if (getReadElements(rhs).stream().anyMatch(element -> isVariable(element, param))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // an element of the array is read as an array operand, the array itself as a plain operand
+    private static boolean isVariable(Element element, String name) {
+        return !element.isLiteral() && element instanceof Operand operand && !(operand instanceof ArrayOperand)
+                && operand.getName().equals(name);
+    }
+}
@@ -0,0 +1,224 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.utils.Diagnostics;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.*;
+
+/**
+ * Removes the moves between variables, such as the temporaries the OLLIR generator assigns before copying them into a
+ * local, so the method needs fewer loads, stores and locals.
+ * <p>
+ * A value assigned to a temporary that is only read by a copy right after it is assigned to the destination of the
+ * copy instead, e.g. {@code tmp0.i32 :=.i32 a.i32 +.i32 1.i32; a.i32 :=.i32 tmp0.i32} becomes
+ * {@code a.i32 :=.i32 a.i32 +.i32 1.i32}.
+ * <p>
+ * The other copies, of a variable or a literal, are propagated to the instructions they reach, found with a forward
+ * analysis over the jumps of the method. A copy reaches an instruction when it is on every path to it and neither
+ * variable is written again in between. The copies that are no longer read are then removed by
+ * {@link DeadStoreElimination}.
+ */
+public class CopyPropagation implements OllirPass {
+
+    private int coalesced = 0;
+    private int propagated = 0;
+
+    /**
+     * @return the number of temporaries assigned to the destination of their copy since the pass was created
+     */
+    public int getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * @return the number of instructions that read a copy since the pass was created
+     */
+    public int getPropagated() {
+        return propagated;
+    }
+
+    @Override
+    public boolean apply(Method method) {
+        int coalescedNow = coalesce(method);
+        int propagatedNow = propagate(method);
+
+        coalesced += coalescedNow;
+        propagated += propagatedNow;
+
+        if (coalescedNow > 0 || propagatedNow > 0) {
+            Diagnostics.info(() -> "Copy propagation coalesced " + coalescedNow + " temporaries and replaced the "
+                    + "variables of " + propagatedNow + " instructions of method " + method.getMethodName());
+        }
+
+        return coalescedNow > 0 || propagatedNow > 0;
+    }
+
+    /**
+     * Assigns the values of the temporaries only read by the copy after them to the destination of the copy, and
+     * removes the copies of a variable into itself.
+     *
+     * @return the number of copies removed
+     */
+    private int coalesce(Method method) {
+        var code = method.getInstructions();
+        var liveOut = DeadStoreElimination.computeLiveOut(method);
+        int count = 0;
+
+        // the liveness of the instructions before the ones changed stays the same
+        for (int i = code.size() - 2; i >= 0; i--) {
+            var temp = getDef(code.get(i));
+            var copy = code.get(i + 1);
+            var source = getCopySource(copy);
+
+            if (isSelfCopy(code.get(i))) {
+                moveLabels(method, code.get(i), copy);
+                code.remove(i);
+                count++;
+                continue;
+            }
+
+            if (temp.isEmpty() || source.isEmpty() || !(source.get() instanceof Operand operand)
+                    || !operand.getName().equals(temp.get()) || isSelfCopy(copy)
+                    || liveOut.get(i + 1).contains(temp.get()) || hasLabels(method, copy)) {
+                continue;
+            }
+
+            var value = (AssignInstruction) code.get(i);
+            var move = (AssignInstruction) copy;
+            var assign = new AssignInstruction(move.getDest(), move.getTypeOfAssign(), value.getRhs());
+
+            code.set(i, assign);
+            moveLabels(method, value, assign);
+            code.remove(i + 1);
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Replaces the variables read by each instruction with the copies that reach it.
+     *
+     * @return the number of instructions changed
+     */
+    private int propagate(Method method) {
+        var code = method.getInstructions();
+        var reaching = computeReachingCopies(method);
+        int count = 0;
+
+        for (int i = 0; i < code.size(); i++) {
+            var copies = reaching.get(i);
+
+            if (copies != null && !copies.isEmpty() && replaceUses(method, i, copies)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the copies that reach each instruction of the method, from the variable to the value it holds, or null
+     * for the instructions that cannot be reached
+     */
+    private static List<Map<String, Element>> computeReachingCopies(Method method) {
+        var code = method.getInstructions();
+        var labels = indexLabels(method, indexInstructions(code));
+
+        // null until an instruction is reached, since the copies that reach it are then met with the others
+        var in = new ArrayList<Map<String, Element>>(code.size());
+        for (int i = 0; i < code.size(); i++) {
+            in.add(null);
+        }
+        if (!code.isEmpty()) {
+            in.set(0, new HashMap<>());
+        }
+
+        boolean changed;
+        do {
+            changed = false;
+
+            for (int i = 0; i < code.size(); i++) {
+                if (in.get(i) == null) {
+                    continue;
+                }
+
+                var out = transfer(code.get(i), in.get(i));
+
+                for (var successor : getSuccessors(code, i, labels)) {
+                    var current = in.get(successor);
+
+                    if (current == null) {
+                        in.set(successor, new HashMap<>(out));
+                        changed = true;
+                    } else if (current.entrySet().removeIf(entry -> !isSameCopy(entry.getValue(), out.get(entry.getKey())))) {
+                        changed = true;
+                    }
+                }
+            }
+        } while (changed);
+
+        return in;
+    }
+
+    /**
+     * @return the copies that reach the instruction after the given one
+     */
+    private static Map<String, Element> transfer(Instruction instruction, Map<String, Element> in) {
+        var out = new HashMap<>(in);
+        var dest = getDef(instruction);
+
+        if (dest.isEmpty()) {
+            return out;
+        }
+
+        var var = dest.get();
+        out.remove(var);
+        out.values().removeIf(value -> value instanceof Operand operand && operand.getName().equals(var));
+
+        getCopySource(instruction)
+                .filter(value -> !(value instanceof Operand operand) || !operand.getName().equals(var))
+                .ifPresent(value -> out.put(var, value));
+
+        return out;
+    }
+
+    /**
+     * @return the variable or literal copied by the instruction, if it is a copy into a variable
+     */
+    private static Optional<Element> getCopySource(Instruction instruction) {
+        if (getDef(instruction).isEmpty()
+                || !(((AssignInstruction) instruction).getRhs() instanceof SingleOpInstruction single)) {
+            return Optional.empty();
+        }
+
+        var value = single.getSingleOperand();
+        if (value.isLiteral() || value instanceof Operand && !(value instanceof ArrayOperand)) {
+            return Optional.of(value);
+        }
+
+        return Optional.empty();
+    }
+
+    private static boolean isSelfCopy(Instruction instruction) {
+        return getCopySource(instruction)
+                .filter(value -> value instanceof Operand operand && operand.getName().equals(getDef(instruction).get()))
+                .isPresent();
+    }
+
+    private static boolean isSameCopy(Element value, Element other) {
+        if (other == null) {
+            return false;
+        }
+
+        if (value.isLiteral() || other.isLiteral()) {
+            return value.isLiteral() && other.isLiteral()
+                    && ((LiteralElement) value).getLiteral().equals(((LiteralElement) other).getLiteral());
+        }
+
+        return ((Operand) value).getName().equals(((Operand) other).getName());
+    }
+}
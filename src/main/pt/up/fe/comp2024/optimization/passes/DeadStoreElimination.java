@@ -0,0 +1,93 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.InstructionType;
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp2024.optimization.OllirPass;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.*;
+
+/**
+ * Removes the assignments of variables that are not read before they are written again, e.g. the ones left behind by
+ * constant propagation.
+ * <p>
+ * Which variables are live after each instruction is found with a backward analysis over the jumps of the method.
+ * A dead assignment is removed when its value is pure, and a call whose result is dead is kept without the assignment,
+ * since the call itself may have effects.
+ */
+public class DeadStoreElimination implements OllirPass {
+
+    @Override
+    public boolean apply(Method method) {
+        var code = method.getInstructions();
+        var liveOut = computeLiveOut(method);
+
+        boolean changed = false;
+
+        // removing an instruction does not change the positions of the ones before it
+        for (int i = code.size() - 1; i >= 0; i--) {
+            var instruction = code.get(i);
+            var dest = getDef(instruction);
+
+            if (dest.isEmpty() || liveOut.get(i).contains(dest.get())) {
+                continue;
+            }
+
+            var rhs = ((AssignInstruction) instruction).getRhs();
+
+            if (isPure(rhs) && i + 1 < code.size()) {
+                moveLabels(method, instruction, code.get(i + 1));
+                code.remove(i);
+                changed = true;
+            } else if (rhs.getInstType() == InstructionType.CALL) {
+                code.set(i, rhs);
+                moveLabels(method, instruction, rhs);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return the variables that may be read after each instruction of the method, before being written
+     */
+    public static List<Set<String>> computeLiveOut(Method method) {
+        var code = method.getInstructions();
+        var labels = indexLabels(method, indexInstructions(code));
+
+        var liveIn = new ArrayList<Set<String>>(code.size());
+        var liveOut = new ArrayList<Set<String>>(code.size());
+        for (int i = 0; i < code.size(); i++) {
+            liveIn.add(new HashSet<>());
+            liveOut.add(new HashSet<>());
+        }
+
+        boolean changed;
+        do {
+            changed = false;
+
+            // backwards, so most values only need one round to flow to the instructions before them
+            for (int i = code.size() - 1; i >= 0; i--) {
+                var out = liveOut.get(i);
+                for (var successor : getSuccessors(code, i, labels)) {
+                    out.addAll(liveIn.get(successor));
+                }
+
+                var in = new HashSet<>(out);
+                getDef(code.get(i)).ifPresent(in::remove);
+                in.addAll(getUses(code.get(i)));
+
+                if (!in.equals(liveIn.get(i))) {
+                    liveIn.set(i, in);
+                    changed = true;
+                }
+            }
+        } while (changed);
+
+        return liveOut;
+    }
+}
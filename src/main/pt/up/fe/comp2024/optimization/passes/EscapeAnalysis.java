@@ -0,0 +1,292 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.MethodInliner;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.utils.Diagnostics;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.*;
+
+/**
+ * Removes the objects of the class created by a method that never escape it: their variable is only used to call
+ * methods of the class and to read and write their fields, and is never copied, passed, returned or stored.
+ * <p>
+ * When only the fields of the object are used, which is the case once {@link MethodInliner} inlined the calls on it,
+ * each field becomes a local variable set to its default value where the object was created. Only objects with int and
+ * boolean fields are replaced, since OLLIR has no literal for the default value of the other types.
+ * <p>
+ * When methods are still called on the object, in a method that is not static, the calls are done on 'this' instead
+ * if the called methods never read or write fields, and only use 'this' to call other such methods. The state of the
+ * object is then never observed, so it makes no difference which object the methods are called on.
+ * <p>
+ * In both cases the class must not extend another one, so creating the object only runs the constructor of Object.
+ */
+public class EscapeAnalysis implements OllirPass {
+
+    @Override
+    public boolean apply(Method method) {
+        var classUnit = method.getOllirClass();
+        var superClass = classUnit.getSuperClass();
+        if (superClass != null && !superClass.equals("Object")) {
+            return false;
+        }
+
+        var code = method.getInstructions();
+        var defCounts = countDefs(method);
+        var params = getParamNames(method);
+        var stateless = findStatelessMethods(classUnit);
+
+        int replaced = 0;
+        int redirected = 0;
+
+        // the positions of the instructions before the object created stay the same
+        for (int i = code.size() - 2; i >= 0; i--) {
+            var dest = getDef(code.get(i));
+            if (dest.isEmpty() || defCounts.get(dest.get()) != 1 || params.contains(dest.get())
+                    || !isNewObject(((AssignInstruction) code.get(i)).getRhs(), classUnit.getClassName())
+                    || !isInit(code.get(i + 1), dest.get())) {
+                continue;
+            }
+
+            var uses = findUses(method, i, dest.get());
+            if (uses.isEmpty()) {
+                continue;
+            }
+
+            if (uses.get().calls().isEmpty() && replaceFields(method, i, dest.get(), uses.get().fieldAccesses())) {
+                replaced++;
+            } else if (uses.get().fieldAccesses().isEmpty() && !method.isStaticMethod()
+                    && uses.get().calls().stream().allMatch(call -> stateless.contains(getMethodName(call)))) {
+                redirectCalls(method, i, dest.get(), uses.get().calls());
+                redirected++;
+            }
+        }
+
+        if (replaced > 0 || redirected > 0) {
+            int scalar = replaced;
+            int onThis = redirected;
+            Diagnostics.info(() -> "Escape analysis replaced the fields of " + scalar + " objects and moved the calls of "
+                    + onThis + " objects to 'this' in method " + method.getMethodName());
+        }
+
+        return replaced > 0 || redirected > 0;
+    }
+
+    private static boolean isNewObject(Instruction rhs, String className) {
+        return rhs instanceof CallInstruction call && call.getInvocationType() == CallType.NEW
+                && call.getCaller() instanceof Operand type && type.getName().equals(className);
+    }
+
+    private static boolean isInit(Instruction instruction, String object) {
+        return instruction instanceof CallInstruction call && call.getInvocationType() == CallType.invokespecial
+                && isVariable(call.getCaller(), object) && call.getArguments().isEmpty();
+    }
+
+    /**
+     * @return the uses of the object created at the given position, if it does not escape the method
+     */
+    private static Optional<Uses> findUses(Method method, int index, String object) {
+        var code = method.getInstructions();
+        var calls = new ArrayList<CallInstruction>();
+        var fieldAccesses = new ArrayList<Instruction>();
+        var methodNames = new HashSet<String>();
+        method.getOllirClass().getMethods().forEach(classMethod -> methodNames.add(classMethod.getMethodName()));
+
+        for (int i = 0; i < code.size(); i++) {
+            var instruction = code.get(i);
+            if (i == index || i == index + 1 || !getUses(instruction).contains(object)) {
+                continue;
+            }
+
+            var rhs = instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction;
+            var reads = getReadElements(rhs);
+
+            if (rhs instanceof GetFieldInstruction getField && instruction != rhs
+                    && isVariable(getField.getObject(), object)) {
+                fieldAccesses.add(instruction);
+            } else if (rhs instanceof PutFieldInstruction putField && isVariable(putField.getObject(), object)
+                    && !isVariable(putField.getValue(), object)) {
+                fieldAccesses.add(instruction);
+            } else if (rhs instanceof CallInstruction call && call.getInvocationType() == CallType.invokevirtual
+                    && isVariable(call.getCaller(), object) && methodNames.contains(getMethodName(call))
+                    && reads.stream().filter(element -> isVariable(element, object)).count() == 1) {
+                calls.add(call);
+            } else {
+                return Optional.empty();
+            }
+        }
+
+        return Optional.of(new Uses(calls, fieldAccesses));
+    }
+
+    /**
+     * Replaces each field of the object created at the given position with a local variable.
+     *
+     * @return true if the fields could be replaced
+     */
+    private static boolean replaceFields(Method method, int index, String object, List<Instruction> fieldAccesses) {
+        var fields = new LinkedHashMap<String, Type>();
+        for (var access : fieldAccesses) {
+            var field = access instanceof AssignInstruction assign ? ((GetFieldInstruction) assign.getRhs()).getField()
+                    : ((PutFieldInstruction) access).getField();
+            var type = field.getType().getTypeOfElement();
+
+            if (type != ElementType.INT32 && type != ElementType.BOOLEAN) {
+                return false;
+            }
+
+            fields.put(field.getName(), field.getType());
+        }
+
+        var code = method.getInstructions();
+        var variables = new HashMap<String, Operand>();
+        var used = getVariableNames(method);
+
+        for (var field : fields.entrySet()) {
+            var name = object + "_" + field.getKey();
+            while (!used.add(name)) {
+                name = "_" + name;
+            }
+
+            variables.put(field.getKey(), new Operand(name, field.getValue()));
+        }
+
+        for (var access : fieldAccesses) {
+            Instruction replacement;
+
+            if (access instanceof AssignInstruction assign) {
+                var field = ((GetFieldInstruction) assign.getRhs()).getField().getName();
+                replacement = new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                        new SingleOpInstruction(variables.get(field)));
+            } else {
+                var putField = (PutFieldInstruction) access;
+                var variable = variables.get(putField.getField().getName());
+                replacement = new AssignInstruction(variable, variable.getType(),
+                        new SingleOpInstruction(putField.getValue()));
+            }
+
+            moveLabels(method, access, replacement);
+            code.set(code.indexOf(access), replacement);
+        }
+
+        // the object becomes the default values of its fields
+        var defaults = new ArrayList<Instruction>();
+        for (var variable : variables.values()) {
+            defaults.add(new AssignInstruction(variable, variable.getType(),
+                    new SingleOpInstruction(new LiteralElement("0", variable.getType()))));
+        }
+
+        removeCreation(method, index);
+        code.addAll(index, defaults);
+        if (!defaults.isEmpty()) {
+            moveLabels(method, code.get(index + defaults.size()), defaults.get(0));
+        }
+
+        return true;
+    }
+
+    /**
+     * Replaces the object created at the given position with 'this' in the calls done on it.
+     */
+    private static void redirectCalls(Method method, int index, String object, List<CallInstruction> calls) {
+        var code = method.getInstructions();
+        var thisOperand = new Operand("this", new ClassType(ElementType.THIS, method.getOllirClass().getClassName()));
+
+        for (int i = 0; i < code.size(); i++) {
+            var instruction = code.get(i);
+            var rhs = instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction;
+
+            if (calls.stream().anyMatch(call -> call == rhs)) {
+                replaceUses(method, i, Map.of(object, thisOperand));
+            }
+        }
+
+        removeCreation(method, index);
+    }
+
+    /**
+     * Removes the creation of the object and the call of its constructor, whose labels go to the next instruction.
+     */
+    private static void removeCreation(Method method, int index) {
+        var code = method.getInstructions();
+
+        moveLabels(method, code.get(index), code.get(index + 2));
+        moveLabels(method, code.get(index + 1), code.get(index + 2));
+        code.subList(index, index + 2).clear();
+    }
+
+    /**
+     * @return the methods of the class that never read or write fields, and only use 'this' to call other such
+     * methods, so they give the same results whatever object they are called on
+     */
+    private static Set<String> findStatelessMethods(ClassUnit classUnit) {
+        var candidates = new HashMap<String, Method>();
+        for (var method : classUnit.getMethods()) {
+            if (!method.isStaticMethod() && !method.isConstructMethod()) {
+                candidates.put(method.getMethodName(), method);
+            }
+        }
+
+        // each round removes the methods that use the state of the object, until none is removed
+        boolean changed;
+        do {
+            changed = candidates.values().removeIf(method -> !isStateless(method, candidates.keySet()));
+        } while (changed);
+
+        return candidates.keySet();
+    }
+
+    private static boolean isStateless(Method method, Set<String> stateless) {
+        for (var instruction : method.getInstructions()) {
+            var rhs = instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction;
+
+            if (rhs instanceof GetFieldInstruction || rhs instanceof PutFieldInstruction) {
+                return false;
+            }
+
+            var thisUses = getReadElements(rhs).stream().filter(element -> isVariable(element, "this")).count();
+            if (thisUses == 0) {
+                continue;
+            }
+
+            boolean isStatelessCall = rhs instanceof CallInstruction call
+                    && call.getInvocationType() == CallType.invokevirtual && isVariable(call.getCaller(), "this")
+                    && stateless.contains(getMethodName(call));
+            if (!isStatelessCall || thisUses != 1) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the names of the variables the method reads or writes
+     */
+    private static Set<String> getVariableNames(Method method) {
+        var names = new HashSet<>(getParamNames(method));
+        for (var instruction : method.getInstructions()) {
+            getDef(instruction).ifPresent(names::add);
+            names.addAll(getUses(instruction));
+        }
+
+        return names;
+    }
+
+    private static String getMethodName(CallInstruction call) {
+        return call.getMethodName() instanceof LiteralElement literal ? literal.getLiteral().replace("\"", "") : "";
+    }
+
+    private static boolean isVariable(Element element, String name) {
+        return !element.isLiteral() && element instanceof Operand operand && !(operand instanceof ArrayOperand)
+                && operand.getName().equals(name);
+    }
+
+    /**
+     * The calls done on an object that does not escape, and the instructions that read or write its fields.
+     */
+    private record Uses(List<CallInstruction> calls, List<Instruction> fieldAccesses) {
+    }
+}
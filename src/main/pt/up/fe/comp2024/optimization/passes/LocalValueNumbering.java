@@ -0,0 +1,331 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.utils.Diagnostics;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.*;
+
+/**
+ * Removes the computations that repeat one already available in the same basic block, reusing the variable that holds
+ * its value.
+ * <p>
+ * Each computation is numbered by its operation and operands: arithmetic, field reads of 'this', array lengths and
+ * array loads. A computation is available until one of its operands or the variable that holds it is written, or
+ * for field reads and array loads, until the field or any array element is written or a method is called.
+ * <p>
+ * When the repeated computation assigns a temporary, the instruction is removed and its uses read the variable that
+ * already holds the value, as long as it keeps that value wherever the temporary is used. Otherwise the computation
+ * is replaced by a copy of that variable.
+ */
+public class LocalValueNumbering implements OllirPass {
+
+    // prefixes of the keys of operands
+    private static final String VAR = "v:";
+    private static final String CONSTANT = "c:";
+
+    private static final String FIELD_READ = "getfield";
+    private static final String ARRAY_LOAD = "aload";
+
+    private int removed = 0;
+    private int copies = 0;
+
+    /**
+     * @return the number of instructions removed since the pass was created
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the number of computations replaced by a copy since the pass was created
+     */
+    public int getCopies() {
+        return copies;
+    }
+
+    @Override
+    public boolean apply(Method method) {
+        int removedBefore = removed;
+        int copiesBefore = copies;
+
+        var code = method.getInstructions();
+        var defCounts = countDefs(method);
+        var params = getParamNames(method);
+
+        var available = new AvailableValues();
+        boolean blockStart = true;
+
+        for (int i = 0; i < code.size(); i++) {
+            var instruction = code.get(i);
+
+            if (blockStart || hasLabels(method, instruction)) {
+                available.clear();
+            }
+            blockStart = endsBlock(instruction);
+
+            var dest = getDef(instruction);
+            var key = dest.flatMap(name -> getKey(((AssignInstruction) instruction).getRhs()));
+            var holder = key.map(available::get);
+
+            if (holder.isPresent() && !holder.get().getName().equals(dest.get())) {
+                var name = dest.get();
+
+                if (isSingleDef(name, defCounts, params) && i + 1 < code.size()
+                        && replaceDef(method, i, name, holder.get(), isSingleDef(holder.get().getName(), defCounts, params))) {
+                    moveLabels(method, instruction, code.get(i + 1));
+                    code.remove(i);
+                    i--;
+                    removed++;
+                    continue;
+                }
+
+                var assign = (AssignInstruction) instruction;
+                code.set(i, new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                        new SingleOpInstruction(holder.get())));
+                moveLabels(method, instruction, code.get(i));
+                copies++;
+            }
+
+            available.kill(code.get(i));
+
+            if (key.isPresent() && holder.isEmpty() && !key.get().reads(dest.get())) {
+                available.put(key.get(), (Operand) ((AssignInstruction) instruction).getDest());
+            }
+        }
+
+        int removedNow = removed - removedBefore;
+        int copiesNow = copies - copiesBefore;
+        if (removedNow > 0 || copiesNow > 0) {
+            Diagnostics.info(() -> "Value numbering removed " + removedNow + " and replaced " + copiesNow
+                    + " instructions of method " + method.getMethodName());
+        }
+
+        return removedNow > 0 || copiesNow > 0;
+    }
+
+    private static boolean isSingleDef(String name, Map<String, Integer> defCounts, Set<String> params) {
+        return !params.contains(name) && defCounts.getOrDefault(name, 0) == 1;
+    }
+
+    /**
+     * Replaces the uses of the variable defined at the given position by the holder, if the holder keeps its value
+     * wherever the variable is read.
+     * <p>
+     * A holder with a single definition keeps its value everywhere after it, otherwise all the uses of the variable
+     * must follow in the same block, before the holder is written again.
+     *
+     * @return true if the uses were replaced
+     */
+    private static boolean replaceDef(Method method, int index, String name, Operand holder, boolean holderSingleDef) {
+        var code = method.getInstructions();
+        var replacements = Map.of(name, holder);
+
+        if (holderSingleDef) {
+            for (int i = 0; i < code.size(); i++) {
+                replaceUses(method, i, replacements);
+            }
+            return true;
+        }
+
+        int lastUse = index;
+        int holderWrite = code.size();
+        for (int i = index + 1; i < code.size() && !hasLabels(method, code.get(i)); i++) {
+            var instruction = code.get(i);
+
+            if (getUses(instruction).contains(name)) {
+                lastUse = i;
+            }
+            if (holderWrite == code.size() && getDef(instruction).filter(holder.getName()::equals).isPresent()) {
+                holderWrite = i;
+            }
+
+            if (endsBlock(instruction)) {
+                break;
+            }
+        }
+
+        // the instruction that writes the holder may still read the variable
+        if (lastUse > holderWrite) {
+            return false;
+        }
+
+        for (int i = 0; i < code.size(); i++) {
+            if ((i <= index || i > lastUse) && getUses(code.get(i)).contains(name)) {
+                return false;
+            }
+        }
+
+        for (int i = index + 1; i <= lastUse; i++) {
+            replaceUses(method, i, replacements);
+        }
+
+        return true;
+    }
+
+    private static boolean endsBlock(Instruction instruction) {
+        return getJumpLabel(instruction).isPresent() || instruction.getInstType() == InstructionType.RETURN;
+    }
+
+    /**
+     * @return the key of the value computed by the instruction, if it can be reused
+     */
+    private static Optional<Key> getKey(Instruction rhs) {
+        switch (rhs.getInstType()) {
+            case BINARYOPER -> {
+                var op = (BinaryOpInstruction) rhs;
+                var opType = op.getOperation().getOpType();
+                var left = getKey(op.getLeftOperand());
+                var right = getKey(op.getRightOperand());
+
+                if (left == null || right == null) {
+                    return Optional.empty();
+                }
+
+                // the order of the operands of a commutative operation does not change its value
+                if (isCommutative(opType) && left.compareTo(right) > 0) {
+                    var swap = left;
+                    left = right;
+                    right = swap;
+                }
+
+                return Optional.of(new Key(opType.name(), List.of(left, right)));
+            }
+            case UNARYOPER -> {
+                var op = (UnaryOpInstruction) rhs;
+                var operand = getKey(op.getOperand());
+
+                return operand == null ? Optional.empty()
+                        : Optional.of(new Key(op.getOperation().getOpType().name(), List.of(operand)));
+            }
+            case GETFIELD -> {
+                var getField = (GetFieldInstruction) rhs;
+                if (!getField.getObject().getName().equals("this")) {
+                    return Optional.empty();
+                }
+
+                return Optional.of(new Key(FIELD_READ, List.of(getField.getField().getName())));
+            }
+            case CALL -> {
+                var call = (CallInstruction) rhs;
+                var array = getKey(call.getCaller());
+
+                return call.getInvocationType() != CallType.arraylength || array == null ? Optional.empty()
+                        : Optional.of(new Key("arraylength", List.of(array)));
+            }
+            case NOPER -> {
+                // only loads of array elements, copies are left to other passes
+                if (!(((SingleOpInstruction) rhs).getSingleOperand() instanceof ArrayOperand array)
+                        || array.getIndexOperands().size() != 1) {
+                    return Optional.empty();
+                }
+
+                var index = getKey(array.getIndexOperands().get(0));
+                if (index == null) {
+                    return Optional.empty();
+                }
+
+                return Optional.of(new Key(ARRAY_LOAD, List.of(VAR + array.getName(), index)));
+            }
+            default -> {
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * @return the key of an operand, or null if it is an array element
+     */
+    private static String getKey(Element element) {
+        if (element.isLiteral()) {
+            return CONSTANT + ((LiteralElement) element).getLiteral() + "." + element.getType().getTypeOfElement();
+        }
+
+        if (element instanceof ArrayOperand || !(element instanceof Operand operand)) {
+            return null;
+        }
+
+        return VAR + operand.getName();
+    }
+
+    private static boolean isCommutative(OperationType opType) {
+        return switch (opType) {
+            case ADD, MUL, AND, OR, XOR, EQ, NEQ, ANDB, ORB -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * The value of a computation, given by its operation and the keys of its operands.
+     */
+    private record Key(String operation, List<String> operands) {
+
+        /**
+         * @return true if the value changes when the variable is written
+         */
+        public boolean reads(String var) {
+            return operands.contains(VAR + var);
+        }
+
+        /**
+         * @return true if the value changes when a field or an array element is written
+         */
+        public boolean readsMemory() {
+            return operation.equals(FIELD_READ) || operation.equals(ARRAY_LOAD);
+        }
+    }
+
+    /**
+     * The computations available at a point of a basic block, and the variable that holds each one.
+     */
+    private static class AvailableValues {
+
+        private final Map<Key, Operand> values = new HashMap<>();
+
+        public Operand get(Key key) {
+            return values.get(key);
+        }
+
+        public void put(Key key, Operand holder) {
+            values.put(key, holder);
+        }
+
+        public void clear() {
+            values.clear();
+        }
+
+        /**
+         * Removes the computations whose value may be changed by the instruction.
+         */
+        public void kill(Instruction instruction) {
+            getDef(instruction).ifPresent(var -> values.entrySet().removeIf(entry ->
+                    entry.getValue().getName().equals(var) || entry.getKey().reads(var)));
+
+            if (writesMemory(instruction)) {
+                values.keySet().removeIf(Key::readsMemory);
+            }
+        }
+
+        private static boolean writesMemory(Instruction instruction) {
+            if (instruction instanceof PutFieldInstruction) {
+                return true;
+            }
+
+            if (instruction instanceof AssignInstruction assign && assign.getDest() instanceof ArrayOperand) {
+                return true;
+            }
+
+            var call = instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction;
+            if (!(call instanceof CallInstruction callInstruction)) {
+                return false;
+            }
+
+            return switch (callInstruction.getInvocationType()) {
+                case NEW, arraylength, ldc -> false;
+                default -> true;
+            };
+        }
+    }
+}
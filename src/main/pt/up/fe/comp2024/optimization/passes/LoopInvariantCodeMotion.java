@@ -0,0 +1,211 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.InstructionUtils;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.Profile;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.*;
+
+/**
+ * Hoists the computations of a loop that give the same value in every iteration into a preheader, so they are only
+ * evaluated once each time the loop is entered.
+ * <p>
+ * Loops must have the shape of a rotated while, see {@link InstructionUtils#findLoops}: the only way into them is the
+ * goto just before their first instruction, which jumps to the condition. The hoisted instructions are placed before
+ * that goto.
+ * <p>
+ * An instruction is hoisted when it assigns a variable that has no other definition in the method, with an
+ * arithmetic operation, a read of a field of 'this' or the length of an array, whose operands are not defined inside
+ * the loop. Array elements are never hoisted, and neither are field reads of loops that write the field or call other
+ * methods. Instructions that may throw, such as the length of an array or a division by a variable, are only hoisted
+ * from the part of the condition that always runs when the loop is entered.
+ * <p>
+ * Loops whose body never ran in the {@link Profile} are left alone, since the preheader would only add work.
+ */
+public class LoopInvariantCodeMotion implements OllirPass {
+
+    private final Profile profile;
+
+    public LoopInvariantCodeMotion() {
+        this(Profile.NONE);
+    }
+
+    public LoopInvariantCodeMotion(Profile profile) {
+        this.profile = profile;
+    }
+
+    @Override
+    public boolean apply(Method method) {
+        boolean changed = false;
+
+        // nested loops end before the loops around them, so their instructions may be hoisted again in a later round
+        while (hoistFromAnyLoop(method)) {
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    private boolean hoistFromAnyLoop(Method method) {
+        for (var loop : findLoops(method)) {
+            if (!profile.neverIterates(method, loop) && hoist(method, loop)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Hoists the invariant instructions of the loop.
+     *
+     * @return true if any instruction was hoisted
+     */
+    private boolean hoist(Method method, Loop bounds) {
+        var code = method.getInstructions();
+        var entry = code.get(bounds.entry());
+        int header = bounds.header();
+        int condition = bounds.condition();
+        int end = bounds.end();
+
+        var loop = new LoopInfo(code.subList(header, end + 1));
+
+        // the instructions from the condition up to its first jump run every time the loop is entered
+        int alwaysRunEnd = condition;
+        while (getJumpLabel(code.get(alwaysRunEnd)).isEmpty()) {
+            alwaysRunEnd++;
+        }
+
+        var defCounts = countDefs(method);
+        var params = getParamNames(method);
+        var hoisted = new ArrayList<Instruction>();
+
+        for (int i = header; i <= end; i++) {
+            var instruction = code.get(i);
+            var dest = getDef(instruction);
+
+            if (dest.isEmpty() || params.contains(dest.get()) || defCounts.get(dest.get()) != 1) {
+                continue;
+            }
+
+            var rhs = ((AssignInstruction) instruction).getRhs();
+            boolean alwaysRuns = i >= condition && i < alwaysRunEnd;
+
+            if (isInvariant(rhs, loop, alwaysRuns)) {
+                hoisted.add(instruction);
+
+                // its only definition is now outside the loop
+                loop.defined.remove(dest.get());
+            }
+        }
+
+        if (hoisted.isEmpty()) {
+            return false;
+        }
+
+        // the labels of a hoisted instruction go to the next one that stays in the loop, which at least is the jump
+        var moved = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+        moved.addAll(hoisted);
+
+        Instruction next = null;
+        for (int i = end; i >= header; i--) {
+            var instruction = code.get(i);
+
+            if (moved.contains(instruction)) {
+                moveLabels(method, instruction, next);
+                code.remove(i);
+            } else {
+                next = instruction;
+            }
+        }
+
+        code.addAll(header - 1, hoisted);
+        moveLabels(method, entry, hoisted.get(0));
+
+        return true;
+    }
+
+    private boolean isInvariant(Instruction rhs, LoopInfo loop, boolean alwaysRuns) {
+        switch (rhs.getInstType()) {
+            case BINARYOPER -> {
+                var op = (BinaryOpInstruction) rhs;
+                if (!isInvariant(op.getLeftOperand(), loop) || !isInvariant(op.getRightOperand(), loop)) {
+                    return false;
+                }
+
+                // a division by zero throws, so it may only be hoisted if it would run anyway
+                return op.getOperation().getOpType() != OperationType.DIV || alwaysRuns
+                        || isNonZeroLiteral(op.getRightOperand());
+            }
+            case UNARYOPER -> {
+                return isInvariant(((UnaryOpInstruction) rhs).getOperand(), loop);
+            }
+            case GETFIELD -> {
+                var getField = (GetFieldInstruction) rhs;
+
+                return getField.getObject().getName().equals("this") && !loop.hasCalls
+                        && !loop.writtenFields.contains(getField.getField().getName());
+            }
+            case CALL -> {
+                var call = (CallInstruction) rhs;
+
+                // the length of a null array throws
+                return call.getInvocationType() == CallType.arraylength && alwaysRuns
+                        && isInvariant(call.getCaller(), loop);
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    private boolean isInvariant(Element element, LoopInfo loop) {
+        if (element.isLiteral()) {
+            return true;
+        }
+
+        return !(element instanceof ArrayOperand)
+                && element instanceof Operand operand
+                && !loop.defined.contains(operand.getName());
+    }
+
+    /**
+     * The variables and fields written inside a loop.
+     */
+    private static class LoopInfo {
+
+        private final Set<String> defined = new HashSet<>();
+        private final Set<String> writtenFields = new HashSet<>();
+        private boolean hasCalls = false;
+
+        private LoopInfo(List<Instruction> body) {
+            for (var instruction : body) {
+                getDef(instruction).ifPresent(defined::add);
+
+                if (instruction instanceof PutFieldInstruction putField) {
+                    writtenFields.add(putField.getField().getName());
+                }
+
+                var call = instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction;
+                if (call instanceof CallInstruction callInstruction && mayWriteFields(callInstruction)) {
+                    hasCalls = true;
+                }
+            }
+        }
+
+        // allocations and array lengths do not run code of the class
+        private static boolean mayWriteFields(CallInstruction call) {
+            return switch (call.getInvocationType()) {
+                case NEW, arraylength, ldc -> false;
+                case invokespecial -> !call.getMethodNameTry()
+                        .filter(name -> name instanceof LiteralElement literal
+                                && literal.getLiteral().equals("\"<init>\""))
+                        .isPresent();
+                default -> true;
+            };
+        }
+    }
+}
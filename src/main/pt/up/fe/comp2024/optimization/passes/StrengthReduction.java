@@ -0,0 +1,396 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.OptUtils;
+import pt.up.fe.comp2024.optimization.Profile;
+import pt.up.fe.comp2024.utils.Diagnostics;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.*;
+
+/**
+ * Replaces multiplications and divisions with cheaper operations.
+ * <p>
+ * In loops, a product of an induction variable by a constant, such as {@code i * 4} where {@code i} only changes by
+ * {@code i = i + 1}, is kept in a new variable. That variable is set before the loop and increased by the step times
+ * the constant right after each increment of the induction variable. The addition becomes an {@code iinc} in the
+ * backend, as do the increments of the induction variables themselves.
+ * <p>
+ * Multiplications by a power of two become left shifts, which give the same result even when they overflow. Divisions
+ * by a power of two only become right shifts when the dividend is never negative, since a shift rounds negative values
+ * down instead of towards zero. A variable is known to never be negative when all its definitions are non-negative
+ * literals, lengths of arrays, or copies, divisions and right shifts of values that are never negative.
+ * <p>
+ * Products and shifts of two literals, such as the value set before the loop once the induction variable is known to
+ * start at a constant, are replaced with their result.
+ * <p>
+ * Induction variables are not reduced in loops whose body never ran in the {@link Profile}.
+ */
+public class StrengthReduction implements OllirPass {
+
+    private static final Type INT_TYPE = new Type(ElementType.INT32);
+
+    private final Profile profile;
+
+    public StrengthReduction() {
+        this(Profile.NONE);
+    }
+
+    public StrengthReduction(Profile profile) {
+        this.profile = profile;
+    }
+
+    @Override
+    public boolean apply(Method method) {
+        int reduced = 0;
+
+        // every reduction changes the positions of the loops, so they are found again
+        while (reduceAnyInductionVariable(method)) {
+            reduced++;
+        }
+
+        int shifts = replaceWithShifts(method);
+        int folded = foldConstantProducts(method);
+
+        if (reduced > 0 || shifts > 0 || folded > 0) {
+            int inductions = reduced;
+            Diagnostics.info(() -> "Strength reduction replaced " + inductions + " products of induction variables, "
+                    + shifts + " operations with shifts and " + folded + " products of constants in method "
+                    + method.getMethodName());
+        }
+
+        return reduced > 0 || shifts > 0 || folded > 0;
+    }
+
+    private boolean reduceAnyInductionVariable(Method method) {
+        for (var loop : findLoops(method)) {
+            if (!profile.neverIterates(method, loop) && reduceInductionVariable(method, loop)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Reduces the first product of an induction variable by a constant found in the loop.
+     *
+     * @return true if a product was reduced
+     */
+    private boolean reduceInductionVariable(Method method, Loop loop) {
+        var code = method.getInstructions();
+        var steps = findInductionVariables(code, loop);
+        if (steps.isEmpty()) {
+            return false;
+        }
+
+        var defCounts = countDefs(method);
+        var params = getParamNames(method);
+
+        for (int i = loop.header(); i <= loop.end(); i++) {
+            var dest = getDef(code.get(i));
+            if (dest.isEmpty() || params.contains(dest.get()) || defCounts.get(dest.get()) != 1) {
+                continue;
+            }
+
+            var rhs = ((AssignInstruction) code.get(i)).getRhs();
+            var product = getProduct(rhs).filter(found -> steps.containsKey(found.variable().getName()));
+            if (product.isEmpty()) {
+                continue;
+            }
+
+            var variable = product.get().variable();
+            int factor = product.get().factor();
+            int increment = getIncrement(code, loop, variable.getName());
+
+            var reduced = new Operand(OptUtils.getTemp(), INT_TYPE);
+            var update = new AssignInstruction(reduced, INT_TYPE, new BinaryOpInstruction(reduced,
+                    new Operation(OperationType.ADD, INT_TYPE), intLiteral(factor * steps.get(variable.getName()))));
+
+            // the copy of the product is removed by copy propagation, and the reduced variable set before the loop
+            var copy = new AssignInstruction(((AssignInstruction) code.get(i)).getDest(), INT_TYPE,
+                    new SingleOpInstruction(reduced));
+            moveLabels(method, code.get(i), copy);
+            code.set(i, copy);
+
+            code.add(increment + 1, update);
+
+            var init = new AssignInstruction(reduced, INT_TYPE, rhs);
+            moveLabels(method, code.get(loop.entry()), init);
+            code.add(loop.entry(), init);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the step of each variable whose only definition in the loop adds a constant to it
+     */
+    private static Map<String, Integer> findInductionVariables(List<Instruction> code, Loop loop) {
+        var defs = new HashMap<String, Integer>();
+        var steps = new HashMap<String, Integer>();
+
+        for (int i = loop.header(); i <= loop.end(); i++) {
+            var dest = getDef(code.get(i));
+            if (dest.isEmpty()) {
+                continue;
+            }
+
+            defs.merge(dest.get(), 1, Integer::sum);
+            getStep(dest.get(), ((AssignInstruction) code.get(i)).getRhs())
+                    .ifPresent(step -> steps.put(dest.get(), step));
+        }
+
+        steps.keySet().removeIf(var -> defs.get(var) != 1);
+        return steps;
+    }
+
+    /**
+     * @return the position of the only definition of the induction variable in the loop
+     */
+    private static int getIncrement(List<Instruction> code, Loop loop, String variable) {
+        for (int i = loop.header(); i <= loop.end(); i++) {
+            if (getDef(code.get(i)).filter(variable::equals).isPresent()) {
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException("Variable " + variable + " is not defined in the loop");
+    }
+
+    /**
+     * @return the constant added to the variable, if the value is the variable plus or minus a constant
+     */
+    private static Optional<Integer> getStep(String variable, Instruction rhs) {
+        if (!(rhs instanceof BinaryOpInstruction op)) {
+            return Optional.empty();
+        }
+
+        var left = op.getLeftOperand();
+        var right = op.getRightOperand();
+
+        return switch (op.getOperation().getOpType()) {
+            case ADD -> isVariable(left, variable) ? getIntLiteral(right)
+                    : isVariable(right, variable) ? getIntLiteral(left) : Optional.empty();
+            case SUB -> isVariable(left, variable) ? getIntLiteral(right).map(step -> -step) : Optional.empty();
+            default -> Optional.empty();
+        };
+    }
+
+    /**
+     * @return the variable and the constant it is multiplied by, if the value is such a product
+     */
+    private static Optional<Product> getProduct(Instruction rhs) {
+        if (!(rhs instanceof BinaryOpInstruction op)) {
+            return Optional.empty();
+        }
+
+        var left = op.getLeftOperand();
+        var right = op.getRightOperand();
+
+        return switch (op.getOperation().getOpType()) {
+            case MUL -> {
+                if (isPlainOperand(left) && getIntLiteral(right).isPresent()) {
+                    yield Optional.of(new Product((Operand) left, getIntLiteral(right).get()));
+                }
+                if (isPlainOperand(right) && getIntLiteral(left).isPresent()) {
+                    yield Optional.of(new Product((Operand) right, getIntLiteral(left).get()));
+                }
+                yield Optional.empty();
+            }
+            case SHL -> isPlainOperand(left) ? getIntLiteral(right)
+                    .filter(shift -> shift >= 0 && shift < Integer.SIZE)
+                    .map(shift -> new Product((Operand) left, 1 << shift)) : Optional.empty();
+            default -> Optional.empty();
+        };
+    }
+
+    /**
+     * Replaces the multiplications by a power of two with left shifts, and the divisions of values that are never
+     * negative by a power of two with right shifts.
+     *
+     * @return the number of operations replaced
+     */
+    private static int replaceWithShifts(Method method) {
+        var code = method.getInstructions();
+        var nonNegative = findNonNegative(method);
+        int count = 0;
+
+        for (int i = 0; i < code.size(); i++) {
+            if (!(code.get(i) instanceof AssignInstruction assign)
+                    || !(assign.getRhs() instanceof BinaryOpInstruction op)) {
+                continue;
+            }
+
+            var left = op.getLeftOperand();
+            var right = op.getRightOperand();
+            BinaryOpInstruction shift = null;
+
+            switch (op.getOperation().getOpType()) {
+                case MUL -> {
+                    if (getPowerOfTwo(right).isPresent()) {
+                        shift = shiftLeft(left, getPowerOfTwo(right).get());
+                    } else if (getPowerOfTwo(left).isPresent()) {
+                        shift = shiftLeft(right, getPowerOfTwo(left).get());
+                    }
+                }
+                case DIV -> {
+                    if (getPowerOfTwo(right).isPresent() && isNonNegative(left, nonNegative)) {
+                        shift = new BinaryOpInstruction(left, new Operation(OperationType.SHR, INT_TYPE),
+                                intLiteral(getPowerOfTwo(right).get()));
+                    }
+                }
+                default -> {
+                }
+            }
+
+            if (shift != null) {
+                var replaced = new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(), shift);
+                moveLabels(method, assign, replaced);
+                code.set(i, replaced);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Replaces the multiplications and left shifts of two literals with their result.
+     *
+     * @return the number of operations replaced
+     */
+    private static int foldConstantProducts(Method method) {
+        var code = method.getInstructions();
+        int count = 0;
+
+        for (int i = 0; i < code.size(); i++) {
+            if (!(code.get(i) instanceof AssignInstruction assign)
+                    || !(assign.getRhs() instanceof BinaryOpInstruction op)) {
+                continue;
+            }
+
+            var left = getIntLiteral(op.getLeftOperand());
+            var right = getIntLiteral(op.getRightOperand());
+            if (left.isEmpty() || right.isEmpty()) {
+                continue;
+            }
+
+            // same results as the JVM, which wraps products around and only uses the low five bits of a shift
+            Integer value = switch (op.getOperation().getOpType()) {
+                case MUL -> left.get() * right.get();
+                case SHL -> left.get() << right.get();
+                default -> null;
+            };
+
+            if (value != null) {
+                var folded = new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                        new SingleOpInstruction(intLiteral(value)));
+                moveLabels(method, assign, folded);
+                code.set(i, folded);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static BinaryOpInstruction shiftLeft(Element value, int shift) {
+        return new BinaryOpInstruction(value, new Operation(OperationType.SHL, INT_TYPE), intLiteral(shift));
+    }
+
+    /**
+     * @return the variables whose definitions all give values that are never negative
+     */
+    private static Set<String> findNonNegative(Method method) {
+        var candidates = new HashSet<>(countDefs(method).keySet());
+        candidates.removeAll(getParamNames(method));
+
+        // each round removes the variables with a definition that may be negative, until none is removed
+        boolean changed;
+        do {
+            changed = false;
+
+            for (var instruction : method.getInstructions()) {
+                var dest = getDef(instruction);
+
+                if (dest.isPresent() && candidates.contains(dest.get())
+                        && !isNonNegative(((AssignInstruction) instruction).getRhs(), candidates)) {
+                    candidates.remove(dest.get());
+                    changed = true;
+                }
+            }
+        } while (changed);
+
+        return candidates;
+    }
+
+    private static boolean isNonNegative(Instruction rhs, Set<String> nonNegative) {
+        return switch (rhs.getInstType()) {
+            case NOPER -> isNonNegative(((SingleOpInstruction) rhs).getSingleOperand(), nonNegative);
+            case CALL -> ((CallInstruction) rhs).getInvocationType() == CallType.arraylength;
+            case BINARYOPER -> {
+                var op = (BinaryOpInstruction) rhs;
+
+                yield switch (op.getOperation().getOpType()) {
+                    case DIV -> isNonNegative(op.getLeftOperand(), nonNegative)
+                            && getIntLiteral(op.getRightOperand()).filter(divisor -> divisor > 0).isPresent();
+                    case SHR, SHRR -> isNonNegative(op.getLeftOperand(), nonNegative);
+                    default -> false;
+                };
+            }
+            default -> false;
+        };
+    }
+
+    private static boolean isNonNegative(Element element, Set<String> nonNegative) {
+        if (element.isLiteral()) {
+            return getIntLiteral(element).filter(value -> value >= 0).isPresent();
+        }
+
+        return isPlainOperand(element) && nonNegative.contains(((Operand) element).getName());
+    }
+
+    /**
+     * @return the exponent of the literal, if it is a power of two greater than one
+     */
+    private static Optional<Integer> getPowerOfTwo(Element element) {
+        return getIntLiteral(element)
+                .filter(value -> value > 1 && Integer.bitCount(value) == 1)
+                .map(Integer::numberOfTrailingZeros);
+    }
+
+    private static Optional<Integer> getIntLiteral(Element element) {
+        if (!(element instanceof LiteralElement literal) || element.getType().getTypeOfElement() != ElementType.INT32) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(Integer.parseInt(literal.getLiteral()));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static LiteralElement intLiteral(int value) {
+        return new LiteralElement(Integer.toString(value), INT_TYPE);
+    }
+
+    private static boolean isPlainOperand(Element element) {
+        return !element.isLiteral() && element instanceof Operand && !(element instanceof ArrayOperand);
+    }
+
+    private static boolean isVariable(Element element, String variable) {
+        return isPlainOperand(element) && ((Operand) element).getName().equals(variable);
+    }
+
+    /**
+     * A variable multiplied by a constant.
+     */
+    private record Product(Operand variable, int factor) {
+    }
+}
@@ -0,0 +1,185 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.OptUtils;
+import pt.up.fe.comp2024.utils.Diagnostics;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.*;
+
+/**
+ * Replaces the calls of a method to itself on 'this' whose value is returned right away with the assignment of the
+ * arguments to the parameters and a jump to the start of the method, so the recursion runs in a single frame.
+ * <p>
+ * A call is in tail position when only gotos lead from it to a return of its result. Methods whose returns all give
+ * the same literal, such as a quicksort that returns true, may also discard the result of the call before the return,
+ * since the call would return that literal too.
+ * <p>
+ * Arguments that read parameters are first copied into temporaries, so all of them are computed with the values the
+ * parameters had before the call.
+ */
+public class TailCallElimination implements OllirPass {
+
+    private static final String ENTRY_LABEL = "methodStart";
+
+    @Override
+    public boolean apply(Method method) {
+        if (method.isStaticMethod() || method.isConstructMethod()) {
+            return false;
+        }
+
+        var code = method.getInstructions();
+        var labels = indexLabels(method, indexInstructions(code));
+        var constantReturn = getConstantReturn(method);
+
+        String entryLabel = null;
+        int count = 0;
+
+        // the positions of the instructions before the ones replaced stay the same
+        for (int i = code.size() - 1; i >= 0; i--) {
+            var instruction = code.get(i);
+
+            if (isSelfCall(method, instruction) && isTailCall(code, i, labels, constantReturn)) {
+                if (entryLabel == null) {
+                    entryLabel = getEntryLabel(method);
+                }
+
+                var call = (CallInstruction) (instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction);
+                reassignParams(method, i, call, entryLabel);
+                count++;
+            }
+        }
+
+        if (count > 0) {
+            int replaced = count;
+            Diagnostics.info(() -> "Replaced " + replaced + " tail calls of method " + method.getMethodName());
+        }
+
+        return count > 0;
+    }
+
+    private static boolean isSelfCall(Method method, Instruction instruction) {
+        var rhs = instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction;
+
+        return rhs instanceof CallInstruction call && call.getInvocationType() == CallType.invokevirtual
+                && call.getCaller() instanceof Operand caller && caller.getName().equals("this")
+                && call.getMethodName() instanceof LiteralElement name
+                && name.getLiteral().replace("\"", "").equals(method.getMethodName())
+                && call.getArguments().size() == method.getParams().size();
+    }
+
+    /**
+     * @param constantReturn the literal all returns of the method give, if any
+     * @return true if only gotos lead from the call at the given position to a return of its value
+     */
+    private static boolean isTailCall(List<Instruction> code, int index, Map<String, Integer> labels,
+                                      Optional<String> constantReturn) {
+        var visited = new HashSet<Integer>();
+        int next = index + 1;
+
+        while (next < code.size() && code.get(next) instanceof GotoInstruction jump && visited.add(next)) {
+            next = labels.get(jump.getLabel());
+        }
+
+        if (next >= code.size() || !(code.get(next) instanceof ReturnInstruction ret)) {
+            return false;
+        }
+
+        if (!ret.hasReturnValue()) {
+            return true;
+        }
+
+        if (ret.getOperand() instanceof LiteralElement) {
+            return constantReturn.isPresent();
+        }
+
+        var dest = getDef(code.get(index));
+        return dest.isPresent() && ret.getOperand() instanceof Operand operand
+                && !(operand instanceof ArrayOperand) && operand.getName().equals(dest.get());
+    }
+
+    /**
+     * @return the literal returned by all returns of the method, if they all return the same one
+     */
+    private static Optional<String> getConstantReturn(Method method) {
+        String constant = null;
+
+        for (var instruction : method.getInstructions()) {
+            if (!(instruction instanceof ReturnInstruction ret)) {
+                continue;
+            }
+
+            if (!ret.hasReturnValue() || !(ret.getOperand() instanceof LiteralElement literal)
+                    || (constant != null && !constant.equals(literal.getLiteral()))) {
+                return Optional.empty();
+            }
+
+            constant = literal.getLiteral();
+        }
+
+        return Optional.ofNullable(constant);
+    }
+
+    /**
+     * Replaces the call at the given position with the assignment of its arguments to the parameters, followed by a
+     * jump to the start of the method.
+     */
+    private static void reassignParams(Method method, int index, CallInstruction call, String entryLabel) {
+        var code = method.getInstructions();
+        var params = getParamNames(method);
+
+        var reads = new ArrayList<Instruction>();
+        var writes = new ArrayList<Instruction>();
+
+        for (int i = 0; i < method.getParams().size(); i++) {
+            var param = (Operand) method.getParams().get(i);
+            var argument = call.getArguments().get(i);
+
+            if (argument instanceof Operand operand && !(operand instanceof ArrayOperand)
+                    && operand.getName().equals(param.getName())) {
+                continue;
+            }
+
+            var value = argument;
+            if (argument instanceof ArrayOperand
+                    || argument instanceof Operand operand && params.contains(operand.getName())) {
+                var temp = new Operand(OptUtils.getTemp(), param.getType());
+                reads.add(new AssignInstruction(temp, param.getType(), new SingleOpInstruction(argument)));
+                value = temp;
+            }
+
+            writes.add(new AssignInstruction(param, param.getType(), new SingleOpInstruction(value)));
+        }
+
+        var replacement = new ArrayList<>(reads);
+        replacement.addAll(writes);
+        replacement.add(new GotoInstruction(entryLabel));
+
+        var callSite = code.remove(index);
+        code.addAll(index, replacement);
+        moveLabels(method, callSite, replacement.get(0));
+    }
+
+    /**
+     * @return the label of the first instruction of the method, which is added if it has none
+     */
+    private static String getEntryLabel(Method method) {
+        var first = method.getInstructions().get(0);
+
+        for (var entry : method.getLabels().entrySet()) {
+            if (entry.getValue() == first) {
+                return entry.getKey();
+            }
+        }
+
+        var label = ENTRY_LABEL;
+        while (method.getLabels().containsKey(label)) {
+            label = "_" + label;
+        }
+
+        method.addLabel(label, first);
+        return label;
+    }
+}
@@ -0,0 +1,154 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.OllirPass;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.*;
+
+/**
+ * Removes the instructions that can never run, and the jumps that are not needed.
+ * <p>
+ * Branches on a condition with only literals, such as the ones left by constant propagation, become a goto when the
+ * condition holds and are removed otherwise. The instructions that cannot be reached from the start of the method
+ * are then removed, e.g. the ones after a goto or a return. Finally, jumps to the instruction right after them are
+ * removed.
+ */
+public class UnreachableCodeElimination implements OllirPass {
+
+    @Override
+    public boolean apply(Method method) {
+        boolean changed = foldConstantBranches(method);
+        changed |= removeUnreachable(method);
+        changed |= removeJumpsToNext(method);
+
+        return changed;
+    }
+
+    private boolean foldConstantBranches(Method method) {
+        var code = method.getInstructions();
+        boolean changed = false;
+
+        for (int i = code.size() - 1; i >= 0; i--) {
+            if (!(code.get(i) instanceof CondBranchInstruction branch)) {
+                continue;
+            }
+
+            var holds = evaluate(branch);
+            if (holds.isEmpty()) {
+                continue;
+            }
+
+            if (holds.get()) {
+                var jump = new GotoInstruction(branch.getLabel());
+                code.set(i, jump);
+                moveLabels(method, branch, jump);
+            } else if (i + 1 < code.size()) {
+                moveLabels(method, branch, code.get(i + 1));
+                code.remove(i);
+            } else {
+                continue;
+            }
+
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return the value of the condition of the branch, if it only has literals
+     */
+    private static Optional<Boolean> evaluate(CondBranchInstruction branch) {
+        var values = new ArrayList<Integer>();
+
+        for (var operand : branch.getOperands()) {
+            if (!(operand instanceof LiteralElement literal)) {
+                return Optional.empty();
+            }
+
+            try {
+                values.add(Integer.parseInt(literal.getLiteral()));
+            } catch (NumberFormatException e) {
+                return Optional.empty();
+            }
+        }
+
+        var condition = branch.getCondition();
+
+        if (condition instanceof BinaryOpInstruction op) {
+            int left = values.get(0);
+            int right = values.get(1);
+
+            return switch (op.getOperation().getOpType()) {
+                case LTH -> Optional.of(left < right);
+                case GTH -> Optional.of(left > right);
+                case LTE -> Optional.of(left <= right);
+                case GTE -> Optional.of(left >= right);
+                case EQ -> Optional.of(left == right);
+                case NEQ -> Optional.of(left != right);
+                case ANDB -> Optional.of(left != 0 && right != 0);
+                case ORB -> Optional.of(left != 0 || right != 0);
+                default -> Optional.empty();
+            };
+        }
+
+        if (condition instanceof UnaryOpInstruction op) {
+            return op.getOperation().getOpType() == OperationType.NOTB ? Optional.of(values.get(0) == 0)
+                    : Optional.empty();
+        }
+
+        return Optional.of(values.get(0) != 0);
+    }
+
+    private boolean removeUnreachable(Method method) {
+        var code = method.getInstructions();
+        var labels = indexLabels(method, indexInstructions(code));
+
+        var reachable = new boolean[code.size()];
+        var pending = new ArrayDeque<Integer>();
+        if (!code.isEmpty()) {
+            pending.push(0);
+        }
+
+        while (!pending.isEmpty()) {
+            int i = pending.pop();
+            if (reachable[i]) {
+                continue;
+            }
+
+            reachable[i] = true;
+            getSuccessors(code, i, labels).forEach(pending::push);
+        }
+
+        var removed = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+        for (int i = code.size() - 1; i >= 0; i--) {
+            if (!reachable[i]) {
+                removed.add(code.remove(i));
+            }
+        }
+
+        // no jump that can run goes to the labels of the removed instructions
+        method.getLabels().values().removeIf(removed::contains);
+
+        return !removed.isEmpty();
+    }
+
+    private boolean removeJumpsToNext(Method method) {
+        var code = method.getInstructions();
+        boolean changed = false;
+
+        for (int i = code.size() - 2; i >= 0; i--) {
+            var label = getJumpLabel(code.get(i));
+
+            if (label.isPresent() && method.getLabels().get(label.get()) == code.get(i + 1)) {
+                moveLabels(method, code.get(i), code.get(i + 1));
+                code.remove(i);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+}
@@ -0,0 +1,83 @@
+package pt.up.fe.comp2024.utils;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Leveled output of the compiler for diagnostic messages, which are not part of the reports of a stage.
+ * <p>
+ * Only warnings and errors are printed by default. Messages are given as suppliers so they are only built when their
+ * level is enabled, and are printed to the standard error so they do not mix with the output of the program.
+ */
+public class Diagnostics {
+
+    public enum Level {
+        OFF,
+        ERROR,
+        WARN,
+        INFO,
+        DEBUG;
+
+        public static Level fromString(String level) {
+            try {
+                return valueOf(level.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Unknown diagnostics level '" + level + "'");
+            }
+        }
+    }
+
+    private static volatile Level level = Level.WARN;
+    private static volatile PrintStream out = System.err;
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static void setLevel(Level level) {
+        Diagnostics.level = level;
+    }
+
+    public static void setOutput(PrintStream out) {
+        Diagnostics.out = out;
+    }
+
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel != Level.OFF && messageLevel.compareTo(level) <= 0;
+    }
+
+    public static void error(Supplier<String> message) {
+        log(Level.ERROR, message);
+    }
+
+    public static void warn(Supplier<String> message) {
+        log(Level.WARN, message);
+    }
+
+    public static void info(Supplier<String> message) {
+        log(Level.INFO, message);
+    }
+
+    public static void debug(Supplier<String> message) {
+        log(Level.DEBUG, message);
+    }
+
+    public static void log(Level messageLevel, Supplier<String> message) {
+        if (!isEnabled(messageLevel)) {
+            return;
+        }
+
+        var text = "[" + messageLevel.name().toLowerCase(Locale.ROOT) + "] " + message.get();
+        text = switch (messageLevel) {
+            case ERROR -> Formatter.errorMsg(text);
+            case WARN -> Formatter.warnMsg(text);
+            default -> text;
+        };
+
+        // messages of different threads are not interleaved
+        synchronized (Diagnostics.class) {
+            out.println(text);
+        }
+    }
+}
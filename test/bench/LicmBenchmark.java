@@ -0,0 +1,93 @@
+package bench;
+
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.specs.util.SpecsIo;
+import utils.ProjectTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the loop-invariant code motion of -o on LicmBench.jmm: a loop summing L[i] * field + (hi - lo) * 2 over a
+ * 2000-element array, called 20000 times.
+ * <p>
+ * The program is compiled with and without -o, and each class runs in its own JVM. By default the JVM runs with -Xint,
+ * since the JIT hoists these reads itself and hides the difference. Other JVM options can be given as arguments, e.g.
+ * {@code gradle benchLicm --args=-Xmixed} to run with the JIT.
+ */
+public class LicmBenchmark {
+
+    private static final String RESOURCE = "bench/LicmBench.jmm";
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        var vmArgs = args.length > 0 ? List.of(args) : List.of("-Xint");
+        var code = SpecsIo.getResource(RESOURCE);
+
+        var base = compile(code, Map.of());
+        var optimized = compile(code, Map.of("optimize", "true"));
+
+        // the optimization must not change what the program prints
+        var baseOutput = run(base, List.of());
+        var optimizedOutput = run(optimized, List.of());
+        if (!baseOutput.equals(optimizedOutput)) {
+            throw new RuntimeException("Outputs differ:\n" + baseOutput + "\n" + optimizedOutput);
+        }
+
+        System.out.println("JVM options: " + vmArgs);
+        System.out.println("base:      " + measure(base, vmArgs) + " ms");
+        System.out.println("optimized: " + measure(optimized, vmArgs) + " ms");
+    }
+
+    /**
+     * @return the folder with the compiled class
+     */
+    private static File compile(String code, Map<String, String> config) {
+        var result = TestUtils.backend(code, config);
+        TestUtils.noErrors(result);
+
+        var folder = ProjectTestUtils.getRandomFolder();
+        result.compile(folder);
+
+        return folder;
+    }
+
+    /**
+     * @return the best time of a few runs of the class, which includes the start of the JVM
+     */
+    private static long measure(File classFolder, List<String> vmArgs) throws IOException, InterruptedException {
+        long best = Long.MAX_VALUE;
+
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            run(classFolder, vmArgs);
+            best = Math.min(best, (System.nanoTime() - start) / 1_000_000);
+        }
+
+        return best;
+    }
+
+    /**
+     * @return the output of the class, run in a new JVM
+     */
+    private static String run(File classFolder, List<String> vmArgs) throws IOException, InterruptedException {
+        var command = new ArrayList<String>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(vmArgs);
+        command.add("-cp");
+        command.add(classFolder.getAbsolutePath() + File.pathSeparator + TestUtils.getLibsClasspath());
+        command.add("LicmBench");
+
+        var process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        var output = new String(process.getInputStream().readAllBytes());
+        if (process.waitFor() != 0) {
+            throw new RuntimeException("Benchmark failed:\n" + output);
+        }
+
+        return output;
+    }
+}
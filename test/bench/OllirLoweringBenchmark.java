@@ -0,0 +1,56 @@
+package bench;
+
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
+
+/**
+ * Measures the lowering of the AST to OLLIR code on a method with a nested {@code (a + (a + ...))} expression, which
+ * used to take time exponential in the nesting depth.
+ * <p>
+ * Only the lowering is timed: the program is parsed and analysed once for each depth, and semantic analysis is still
+ * superlinear on such inputs. The depths can be given as arguments, e.g. {@code gradle benchOllirLowering
+ * --args="800 1600"}.
+ */
+public class OllirLoweringBenchmark {
+
+    private static final int[] DEPTHS = {100, 200, 400, 800, 1600};
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        var depths = DEPTHS;
+        if (args.length > 0) {
+            depths = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                depths[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        var optimization = new JmmOptimizationImpl();
+
+        for (var depth : depths) {
+            var semanticsResult = TestUtils.analyse(program(depth));
+            TestUtils.noErrors(semanticsResult);
+
+            long best = Long.MAX_VALUE;
+            int length = 0;
+
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                length = optimization.toOllirCode(semanticsResult).length();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+
+            System.out.println("depth " + depth + ": " + best / 1_000_000 + " ms, " + length + " chars");
+        }
+    }
+
+    private static String program(int depth) {
+        var expr = "a";
+        for (int i = 0; i < depth; i++) {
+            expr = "(a + " + expr + ")";
+        }
+
+        return "class Nested { public int f(int a) { int b; b = " + expr + "; return b; } "
+                + "public static void main(String[] args) { } }";
+    }
+}
@@ -24,6 +24,7 @@ import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
 import pt.up.fe.specs.util.utilities.LineStream;
+import utils.ProjectTestUtils;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -528,7 +529,7 @@ public class CpUtils {
 
     public static void runJasmin(JasminResult jasminResult, String expected) {
         try {
-            var output = SpecsStrings.normalizeFileContents(jasminResult.run(), true);
+            var output = SpecsStrings.normalizeFileContents(ProjectTestUtils.runInMemory(jasminResult), true);
             assertEquals("Jasmin output", expected, output, jasminResult);
         } catch (Exception e) {
             throw new RuntimeException("Problems while running Jasmin code:\n" + jasminResult.getJasminCode(), e);
@@ -0,0 +1,6 @@
+entry count 1
+branch count if0 1000
+fallthrough count if0 10
+branch count whileLoop0 1001
+fallthrough count whileLoop0 1
+entry main 1
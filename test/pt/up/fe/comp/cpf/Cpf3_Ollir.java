@@ -151,6 +151,45 @@ public class Cpf3_Ollir {
         CpUtils.assertTrue("Has return", returns.size() == 1, result);
     }
 
+    /*checks that a while loop is rotated, with the comparison as the condition of a single branch at the bottom*/
+    @Test
+    public void section3_ControlFlow_While_RotatedWithDirectCompare() {
+        var result = getOllirResult("control_flow/SimpleWhileStat.jmm");
+
+        var method = CpUtils.getMethod(result, "func");
+        var code = method.getInstructions();
+
+        var branches = CpUtils.getInstructions(CondBranchInstruction.class, method);
+        CpUtils.assertEquals("Expected a single branch in method " + method.getMethodName(), 1, branches.size(),
+                result);
+
+        // the branch jumps back to the body, which is only entered by the goto before it
+        var branch = branches.get(0);
+        var target = method.getLabels().get(branch.getLabel());
+        CpUtils.assertTrue("Expected the branch to jump back to the body of the loop",
+                code.indexOf(target) < code.indexOf(branch), result);
+
+        CpUtils.assertTrue("Expected the branch to compare i < a directly",
+                branch.getCondition() instanceof BinaryOpInstruction binaryOp
+                        && binaryOp.getOperation().getOpType() == OperationType.LTH,
+                result);
+
+        var booleanAssigns = CpUtils.getInstructions(AssignInstruction.class, method).stream()
+                .filter(assign -> assign.getTypeOfAssign().getTypeOfElement() == ElementType.BOOLEAN)
+                .collect(Collectors.toList());
+        CpUtils.assertTrue("Expected no boolean temporary for the comparison, found " + booleanAssigns,
+                booleanAssigns.isEmpty(), result);
+    }
+
+    /*checks that the right operand of && and || only runs when the left one does not decide the result*/
+    @Test
+    public void section3_ControlFlow_ShortCircuit_SkipsRightOperand() {
+        var code = SpecsIo.getResource("pt/up/fe/comp/cpf/3_ollir/control_flow/ShortCircuit.jmm");
+
+        // each call of 'touch' counts in a field, which is printed after each && and ||
+        CpUtils.runJasmin(TestUtils.backend(code), "0\n0\n1\n2\n2\n2");
+    }
+
     /*checks if an array is correctly initialized*/
     @Test
     public void section4_Arrays_New_Array() {
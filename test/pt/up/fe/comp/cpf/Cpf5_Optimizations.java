@@ -14,13 +14,25 @@
 package pt.up.fe.comp.cpf;
 
 import org.junit.Test;
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.CallInstruction;
+import org.specs.comp.ollir.CallType;
+import org.specs.comp.ollir.ElementType;
+import org.specs.comp.ollir.GetFieldInstruction;
+import org.specs.comp.ollir.GotoInstruction;
+import org.specs.comp.ollir.LiteralElement;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.OperationType;
 import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
+import utils.ProjectTestUtils;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -32,6 +44,12 @@ public class Cpf5_Optimizations {
         return TestUtils.optimize(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename));
     }
 
+    static OllirResult getOllirResultOpt(String filename) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        return TestUtils.optimize(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
+    }
+
     static JasminResult getJasminResult(String filename) {
         String resource = SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename);
         return TestUtils.backend(resource);
@@ -43,6 +61,17 @@ public class Cpf5_Optimizations {
         return TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
     }
 
+    static JasminResult getJasminResultProfile(String filename, String profileFilename) {
+        // the profile is read from a file, as written by a run of the class compiled with profiling
+        File profile = new File(ProjectTestUtils.getRandomFolder(), profileFilename);
+        SpecsIo.write(profile, SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + profileFilename));
+
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        config.put("profileData", profile.getAbsolutePath());
+        return TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
+    }
+
     static JasminResult getJasminResultReg(String filename, int numReg) {
         Map<String, String> config = new HashMap<>();
         config.put("registerAllocation", String.valueOf(numReg));
@@ -195,4 +224,348 @@ public class Cpf5_Optimizations {
     }
 
 
+    @Test
+    public void section4_TailCall_SelfCallBecomesGoto() {
+
+        String filename = "tail_call/TailCall_SumTo.jmm";
+
+        JasminResult optimized = getJasminResultOpt(filename);
+        CpUtils.runJasmin(optimized, "705082704");
+
+        String method = CpUtils.getJasminMethod(optimized, "sumTo");
+        CpUtils.matches(method, CpUtils.GOTO_REGEX);
+        CpUtils.assertTrue("Expected the tail call in 'sumTo' to be replaced with a jump",
+                !method.contains("invokevirtual"),
+                optimized);
+    }
+
+
+    @Test
+    public void section5_Licm_HoistsInvariantFieldRead() {
+
+        String filename = "licm/Licm_FieldRead.jmm";
+
+        JasminResult optimized = getJasminResultOpt(filename);
+        CpUtils.runJasmin(optimized, "135\n30");
+
+        // the read of 'scale' moves before the loop, and is the only one
+        String method = CpUtils.getJasminMethod(optimized, "scaled");
+        int read = method.indexOf("getfield Licm_FieldRead/scale");
+        CpUtils.assertTrue("Expected 'scale' to be read before the loop of 'scaled'",
+                read != -1 && read < method.indexOf("whileLoop"),
+                optimized);
+        CpUtils.assertEquals("Expected 'scale' to be read once in 'scaled'", read,
+                method.lastIndexOf("getfield Licm_FieldRead/scale"),
+                optimized);
+    }
+
+    @Test
+    public void section5_Licm_KeepsReadOfFieldWrittenInLoop() {
+
+        String filename = "licm/Licm_FieldRead.jmm";
+
+        JasminResult optimized = getJasminResultOpt(filename);
+        CpUtils.runJasmin(optimized, "135\n30");
+
+        // 'total' is written in the loop, so it is read again in every iteration
+        String method = CpUtils.getJasminMethod(optimized, "accumulate");
+        CpUtils.matches(method, "whileLoop\\w*:\\s+aload_0\\s+getfield\\s+Licm_FieldRead/total\\s+I");
+    }
+
+
+    @Test
+    public void section6_Wide_LocalsBeyondRegister255() {
+
+        String filename = "wide/Wide_ManyLocals.jmm";
+
+        JasminResult jasminResult = getJasminResult(filename);
+        CpUtils.runJasmin(jasminResult, "5722");
+
+        String method = CpUtils.getJasminMethod(jasminResult, "run");
+        CpUtils.matches(method, "iinc\\s+261\\s+1000");
+        CpUtils.matches(method, "iload\\s+260");
+
+        // Jasmin code has no wide prefix, it is added by the backend when it writes the class file directly
+        OllirResult ollirResult = getOllirResult(filename);
+        byte[] classFile = new JasminBackendImpl().toClassFile(ollirResult);
+
+        CpUtils.assertTrue("Expected 'wide iinc 261 1000' in the class file",
+                containsBytes(classFile, 0xc4, 0x84, 0x01, 0x05, 0x03, 0xe8),
+                jasminResult);
+        CpUtils.assertTrue("Expected 'wide iload 260' in the class file",
+                containsBytes(classFile, 0xc4, 0x15, 0x01, 0x04),
+                jasminResult);
+
+        var output = SpecsStrings.normalizeFileContents(
+                ProjectTestUtils.runInMemory(ollirResult.getOllirClass().getClassName(), classFile, ""), true);
+        CpUtils.assertEquals("Output of the class file", "5722", output, jasminResult);
+    }
+
+    @Test
+    public void section7_StrengthReduction_InductionProductBecomesIinc() {
+
+        String filename = "strength_reduction/StrengthReduction_Induction.jmm";
+
+        JasminResult optimized = getJasminResultOpt(filename);
+        CpUtils.runJasmin(optimized, "540");
+
+        // 'i * 12' is kept in a variable that grows by 12 with each increment of 'i'
+        String method = CpUtils.getJasminMethod(optimized, "sumOfMultiples");
+        CpUtils.matches(method, "iinc\\s+\\d+\\s+12");
+        CpUtils.assertTrue("Expected no multiplication or shift in 'sumOfMultiples'",
+                !method.contains("imul") && !method.contains("ishl"),
+                optimized);
+    }
+
+    @Test
+    public void section8_EscapeAnalysis_RemovesNonEscapingObject() {
+
+        String filename = "escape_analysis/EscapeAnalysis_Counter.jmm";
+
+        JasminResult optimized = getJasminResultOpt(filename);
+        CpUtils.runJasmin(optimized, "75");
+
+        // the counter created in each iteration never leaves 'sumTo', so its field becomes a local
+        String method = CpUtils.getJasminMethod(optimized, "sumTo");
+        CpUtils.assertTrue("Expected no object to be created in 'sumTo'",
+                !method.contains("new EscapeAnalysis_Counter"),
+                optimized);
+        CpUtils.assertTrue("Expected no field access in 'sumTo'",
+                !method.contains("getfield") && !method.contains("putfield"),
+                optimized);
+    }
+
+    @Test
+    public void section9_BlockLayout_HotBranchFallsThrough() {
+
+        String filename = "block_layout/BlockLayout_HotBranch.jmm";
+
+        JasminResult optimized = getJasminResultOpt(filename);
+        JasminResult profiled = getJasminResultProfile(filename, "block_layout/BlockLayout_HotBranch.profile");
+        CpUtils.runJasmin(profiled, "1010");
+
+        // without a profile, the then block is reached by the jump of the if
+        CpUtils.matches(CpUtils.getJasminMethod(optimized, "count"), "if_icmplt\\s+\\w+\\s+iinc\\s+\\d+\\s+2\\b");
+
+        // the profile shows the branch is taken 990 times out of 1000, so the then block falls through
+        CpUtils.matches(CpUtils.getJasminMethod(profiled, "count"), "if_icmpge\\s+\\w+\\s+iinc\\s+\\d+\\s+1\\b");
+    }
+
+    @Test
+    public void section10_Inlining_RemovesCallWithBranches() {
+
+        String filename = "inlining/Inlining_Branches.jmm";
+
+        OllirResult ollirResult = getOllirResultOpt(filename);
+        Method method = CpUtils.getMethod(ollirResult, "run");
+
+        // 'clamp' has an if/else, and its value is used inside an expression
+        CpUtils.assertEquals("Expected the call of 'clamp' in 'run' to be inlined", 0,
+                countCalls(method, "clamp"), ollirResult);
+
+        String expected = SpecsStrings.normalizeFileContents(
+                ProjectTestUtils.runInMemory(getJasminResult(filename)), true);
+        CpUtils.runJasmin(getJasminResultOpt(filename), expected);
+    }
+
+    @Test
+    public void section10_Inlining_KeepsRecursiveCall() {
+
+        String filename = "inlining/Inlining_Branches.jmm";
+
+        OllirResult ollirResult = getOllirResultOpt(filename);
+
+        // inlining a recursive method would never end
+        CpUtils.assertEquals("Expected the call of the recursive 'fact' in 'run' to be kept", 1,
+                countCalls(CpUtils.getMethod(ollirResult, "run"), "fact"), ollirResult);
+        CpUtils.assertEquals("Expected the call of 'fact' in 'fact' to be kept", 1,
+                countCalls(CpUtils.getMethod(ollirResult, "fact"), "fact"), ollirResult);
+    }
+
+    @Test
+    public void section11_RegisterCompaction_TemporariesShareRegisters() {
+
+        String filename = "reg_compaction/RegisterCompaction_Temporaries.jmm";
+
+        JasminResult original = getJasminResult(filename);
+        JasminResult optimized = getJasminResultOpt(filename);
+
+        String expected = SpecsStrings.normalizeFileContents(ProjectTestUtils.runInMemory(original), true);
+        CpUtils.runJasmin(optimized, expected);
+
+        String originalMethod = CpUtils.getJasminMethod(original, "work");
+        String method = CpUtils.getJasminMethod(optimized, "work");
+        CpUtils.assertTrue("Expected fewer locals in 'work' with -o, original code:\n" + originalMethod,
+                getLimitLocals(method, optimized) < getLimitLocals(originalMethod, original),
+                optimized);
+
+        // 'a' is dead once 'arr' is created, so the array takes the register of an int
+        Matcher arrayStore = Pattern.compile("astore(?:_|\\s+)(\\d+)").matcher(method);
+        CpUtils.assertTrue("Expected an astore in 'work'", arrayStore.find(), optimized);
+        CpUtils.matches(method, "istore(_|\\s+)" + arrayStore.group(1) + "\\b");
+    }
+
+    @Test
+    public void section11_RegisterCompaction_SharedTemporaryStaysOnStack() {
+
+        String filename = "reg_compaction/RegisterCompaction_Temporaries.jmm";
+
+        JasminResult optimized = getJasminResultOpt(filename);
+
+        // the temporaries of 'n * n' and 'n * n + 1' share a register, and the first is read only by the second
+        String method = CpUtils.getJasminMethod(optimized, "chain");
+        CpUtils.matches(method, "iload_1\\s+iload_1\\s+imul\\s+iconst_1\\s+iadd");
+    }
+
+    @Test
+    public void section12_ValueNumbering_ReadsFieldAgainAfterCall() {
+
+        String filename = "value_numbering/ValueNumbering_Reuse.jmm";
+
+        OllirResult ollirResult = getOllirResultOpt(filename);
+        Method method = CpUtils.getMethod(ollirResult, "readAroundCall");
+
+        // 'addUpTo' writes 'total', so the read after the call cannot reuse the one before it
+        CpUtils.assertEquals("Expected 'total' to be read twice in 'readAroundCall'", 2,
+                CpUtils.getInstructions(GetFieldInstruction.class, method).size(), ollirResult);
+
+        CpUtils.runJasmin(getJasminResultOpt(filename), "10\n7");
+    }
+
+    @Test
+    public void section12_ValueNumbering_ComputesRepeatedSumOnce() {
+
+        String filename = "value_numbering/ValueNumbering_Reuse.jmm";
+
+        OllirResult ollirResult = getOllirResultOpt(filename);
+        Method method = CpUtils.getMethod(ollirResult, "sumTwice");
+
+        CpUtils.assertNumberOfOperations(OperationType.ADD, 1, method, ollirResult);
+
+        CpUtils.runJasmin(getJasminResultOpt(filename), "10\n7");
+    }
+
+    @Test
+    public void section13_ArrayLiteral_LargeLiteralClonesTable() {
+
+        String filename = "array_literal/ArrayLiteral_Table.jmm";
+
+        JasminResult jasminResult = getJasminResult(filename);
+        CpUtils.runJasmin(jasminResult, "80\n9\n24");
+
+        // both literals have the same elements, so they share the table built by the static initializer
+        CpUtils.assertEquals("Expected a single table field", 1,
+                CpUtils.countOccurrencesRegex(jasminResult, "\\.field\\s+private\\s+static\\s+final\\s+table"),
+                jasminResult);
+        CpUtils.matches(CpUtils.getJasminMethod(jasminResult, "static\\s+<clinit>"), "putstatic\\s+ArrayLiteral_Table/table");
+
+        String cloneRegex = "getstatic\\s+ArrayLiteral_Table/table\\S*\\s+\\[I\\s+"
+                + "invokevirtual\\s+\\[I/clone\\(\\)Ljava/lang/Object;\\s+checkcast\\s+\\[I";
+        CpUtils.matches(CpUtils.getJasminMethod(jasminResult, "sumTable"), cloneRegex);
+        CpUtils.matches(CpUtils.getJasminMethod(jasminResult, "pick"), cloneRegex);
+    }
+
+    @Test
+    public void section13_ArrayLiteral_SmallLiteralStaysOnStack() {
+
+        String filename = "array_literal/ArrayLiteral_Table.jmm";
+
+        JasminResult jasminResult = getJasminResult(filename);
+        CpUtils.runJasmin(jasminResult, "80\n9\n24");
+
+        // each element is stored in the array kept on the stack, which is only stored once it is complete
+        String method = CpUtils.getJasminMethod(jasminResult, "small");
+        CpUtils.matches(method, "newarray\\s+int\\s+(dup\\s+iconst_\\d\\s+bipush\\s+\\d+\\s+iastore\\s+){3}astore");
+        CpUtils.assertTrue("Expected no table for a short literal", !method.contains("getstatic"), jasminResult);
+    }
+
+    @Test
+    public void section14_ConstantArguments_HoistsVarargsArray() {
+
+        String filename = "constant_arguments/ConstantArguments_Varargs.jmm";
+
+        OllirResult ollirResult = getOllirResultOpt(filename);
+        Method method = CpUtils.getMethod(ollirResult, "sumInLoop");
+
+        // 'sum' only reads its varargs, so a single array of 1, 2, 3, 4 is built before the goto that enters the loop
+        int newArray = indexOfNewArray(method);
+        CpUtils.assertTrue("Expected the array of 'sum(1, 2, 3, 4)' to be built before the loop of 'sumInLoop'",
+                newArray != -1 && newArray < indexOfFirstGoto(method),
+                ollirResult);
+
+        CpUtils.runJasmin(getJasminResultOpt(filename), "50\n30");
+    }
+
+    @Test
+    public void section14_ConstantArguments_KeepsArrayPassedOn() {
+
+        String filename = "constant_arguments/ConstantArguments_Varargs.jmm";
+
+        OllirResult ollirResult = getOllirResultOpt(filename);
+        Method method = CpUtils.getMethod(ollirResult, "forwardInLoop");
+
+        // 'forward' passes its varargs on to other methods, so the array stays in the loop
+        CpUtils.assertTrue("Expected the array of 'forward(2, 1, 2, 3, 4)' to be built in the loop of 'forwardInLoop'",
+                indexOfNewArray(method) > indexOfFirstGoto(method),
+                ollirResult);
+
+        // the elements are stored in the array kept on the stack, without a temporary for each argument
+        JasminResult jasminResult = getJasminResultOpt(filename);
+        CpUtils.runJasmin(jasminResult, "50\n30");
+        CpUtils.matches(CpUtils.getJasminMethod(jasminResult, "forwardInLoop"),
+                "newarray\\s+int\\s+(dup\\s+iconst_\\d\\s+iconst_\\d\\s+iastore\\s+){4}");
+    }
+
+    private static int getLimitLocals(String method, JasminResult result) {
+        Matcher matcher = CpUtils.getLimitLocalsRegex().matcher(method);
+        CpUtils.assertTrue("Expected to find a .limit locals directive", matcher.find(), result);
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    private static int indexOfNewArray(Method method) {
+        var code = method.getInstructions();
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i) instanceof AssignInstruction assign && assign.getRhs() instanceof CallInstruction call
+                    && call.getInvocationType() == CallType.NEW
+                    && call.getReturnType().getTypeOfElement() == ElementType.ARRAYREF) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int indexOfFirstGoto(Method method) {
+        var code = method.getInstructions();
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i) instanceof GotoInstruction) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static long countCalls(Method method, String methodName) {
+        return CpUtils.getInstructions(CallInstruction.class, method).stream()
+                .filter(call -> call.getInvocationType() == CallType.invokevirtual)
+                .filter(call -> ((LiteralElement) call.getMethodName()).getLiteral().equals("\"" + methodName + "\""))
+                .count();
+    }
+
+    private static boolean containsBytes(byte[] bytes, int... sequence) {
+        for (int i = 0; i + sequence.length <= bytes.length; i++) {
+            int matched = 0;
+            while (matched < sequence.length && (bytes[i + matched] & 0xff) == sequence[matched]) {
+                matched++;
+            }
+
+            if (matched == sequence.length) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
 }
@@ -3,6 +3,7 @@ package utils;
 import org.specs.comp.ollir.*;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.backend.JasminRunner;
 import pt.up.fe.specs.util.SpecsCollections;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
@@ -12,10 +13,16 @@ import pt.up.fe.specs.util.system.ProcessOutputAsString;
 import pt.up.fe.specs.util.utilities.LineStream;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -323,8 +330,135 @@ public class ProjectTestUtils {
         assertTrue("Expected code to match /" + regex + "/:\n" + code + "", matches);
     }
 
+    private static final long RUN_TIMEOUT_MS = 5_000;
+
+    /**
+     * Runs the Jasmin code inside the test JVM, without writing files or starting a new java process.
+     *
+     * @return the output of the program
+     */
+    public static String runInMemory(JasminResult jasminResult) {
+        return runInMemory(jasminResult, "");
+    }
+
+    /**
+     * Runs the Jasmin code inside the test JVM, with the given standard input, and fails if it takes longer than
+     * {@value #RUN_TIMEOUT_MS}ms.
+     * <p>
+     * Each run has its own standard streams, see {@link RunStreams}. Like running the class in a new process, an
+     * exception thrown by the program is printed to the standard error and the output printed until then is returned.
+     *
+     * @return the output of the program
+     */
+    public static String runInMemory(JasminResult jasminResult, String input) {
+        return runInMemory(jasminResult.getClassName(), JasminRunner.assemble(jasminResult.getJasminCode()), input);
+    }
+
+    /**
+     * Runs a class file inside the test JVM, e.g. one written directly by the backend without going through Jasmin.
+     * <p>
+     * Generated code never checks for interrupts, so the thread of a run that times out is stopped, and the class runs
+     * again in a new process, which is killed if it also times out.
+     *
+     * @see #runInMemory(JasminResult, String)
+     */
+    public static synchronized String runInMemory(String className, byte[] classFile, String input) {
+        var main = JasminRunner.getMain(className, classFile);
+        var run = RunStreams.start(input);
+
+        try {
+            var error = new AtomicReference<IllegalAccessException>();
+            var thread = run.newThread(() -> {
+                try {
+                    main.invoke(null, (Object) new String[0]);
+                } catch (InvocationTargetException e) {
+                    // a thread stopped after a timeout is not an exception of the program
+                    if (!(e.getCause() instanceof ThreadDeath)) {
+                        e.getCause().printStackTrace();
+                    }
+                } catch (IllegalAccessException e) {
+                    error.set(e);
+                }
+            }, "jmm-main");
+            thread.setDaemon(true);
+            thread.setContextClassLoader(main.getDeclaringClass().getClassLoader());
+
+            thread.start();
+            thread.join(RUN_TIMEOUT_MS);
+
+            if (thread.isAlive()) {
+                run.finish();
+                stop(thread);
+                return runInNewProcess(className, classFile, input);
+            }
+
+            if (error.get() != null) {
+                throw new RuntimeException("Could not run class '" + className + "'", error.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            run.finish();
+        }
+
+        return run.getOutput();
+    }
+
+    /**
+     * Stops the thread of a program that does not end. Where threads cannot be stopped (Java 20 onwards), the thread
+     * keeps running, but without access to the streams of the other runs.
+     */
+    @SuppressWarnings({"deprecation", "removal"})
+    private static void stop(Thread thread) {
+        try {
+            thread.stop();
+            thread.join(RUN_TIMEOUT_MS);
+        } catch (UnsupportedOperationException e) {
+            // the run is already finished, so the thread can no longer read or write the standard streams
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs a class file in a new java process, and kills it if it takes longer than {@value #RUN_TIMEOUT_MS}ms.
+     *
+     * @return the output of the program
+     */
+    private static String runInNewProcess(String className, byte[] classFile, String input) {
+        var folder = getRandomFolder();
+        var outputFile = new File(folder, "output.txt");
+        var inputFile = new File(folder, "input.txt");
+        SpecsIo.write(inputFile, input);
+
+        var java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        var classpath = folder.getAbsolutePath() + File.pathSeparator + new File("libs-jmm/compiled").getAbsolutePath();
+        var builder = new ProcessBuilder(java, "-cp", classpath, className)
+                .redirectInput(inputFile)
+                .redirectOutput(outputFile)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+
+        try {
+            Files.write(new File(folder, className + ".class").toPath(), classFile);
+            var process = builder.start();
+            if (!process.waitFor(RUN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly().waitFor();
+                throw new RuntimeException("Execution of class '" + className + "' timed out after "
+                        + RUN_TIMEOUT_MS + "ms");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not run class '" + className + "'", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        return SpecsIo.read(outputFile);
+    }
+
     public static void runJasmin(JasminResult jasminResult, String expected) {
-        var output = SpecsStrings.normalizeFileContents(jasminResult.run(), true);
+        var output = SpecsStrings.normalizeFileContents(runInMemory(jasminResult), true);
 
         // No expected output, just run test
         if (expected == null) {
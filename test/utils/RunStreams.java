@@ -0,0 +1,132 @@
+package utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The standard input and output of a program run inside the test JVM.
+ * <p>
+ * System.out and System.in are global, so they are replaced once by streams that send each thread to the streams of
+ * the run that started it, and every other thread to the original streams. Once a run is finished, the writes of a
+ * thread that outlives it, e.g. a program that never ends and could not be stopped, are dropped and its reads see the
+ * end of the input, instead of going to the real streams or to the streams of a later run.
+ */
+class RunStreams {
+
+    // the run of each thread, inherited by the threads it creates
+    private static final InheritableThreadLocal<RunStreams> CURRENT = new InheritableThreadLocal<>();
+
+    private static PrintStream routedOut;
+    private static InputStream routedIn;
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final ByteArrayInputStream input;
+    private volatile boolean finished;
+
+    private RunStreams(String input) {
+        this.input = new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return a run with the given standard input
+     */
+    static RunStreams start(String input) {
+        install();
+
+        return new RunStreams(input);
+    }
+
+    /**
+     * @return a thread that uses the streams of the run, as do the threads it creates
+     */
+    Thread newThread(Runnable task, String name) {
+        CURRENT.set(this);
+        try {
+            return new Thread(task, name);
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Ends the run. Writes of the threads of the run are dropped from now on, and reads see the end of the input.
+     */
+    void finish() {
+        finished = true;
+    }
+
+    /**
+     * @return the output written by the run
+     */
+    String getOutput() {
+        synchronized (output) {
+            return output.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private void write(byte[] bytes, int offset, int length) {
+        synchronized (output) {
+            if (!finished) {
+                output.write(bytes, offset, length);
+            }
+        }
+    }
+
+    private int read(byte[] bytes, int offset, int length) {
+        return finished ? -1 : input.read(bytes, offset, length);
+    }
+
+    /**
+     * Replaces the standard streams by the routed ones, if something else replaced them since, e.g. the test runner.
+     */
+    private static synchronized void install() {
+        if (System.out != routedOut) {
+            var originalOut = System.out;
+            routedOut = new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) {
+                    var run = CURRENT.get();
+                    if (run != null) {
+                        run.write(bytes, offset, length);
+                    } else {
+                        originalOut.write(bytes, offset, length);
+                    }
+                }
+
+                @Override
+                public void flush() {
+                    originalOut.flush();
+                }
+            }, true, StandardCharsets.UTF_8);
+            System.setOut(routedOut);
+        }
+
+        if (System.in != routedIn) {
+            var originalIn = System.in;
+            routedIn = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    var b = new byte[1];
+                    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) throws IOException {
+                    var run = CURRENT.get();
+                    return run != null ? run.read(bytes, offset, length) : originalIn.read(bytes, offset, length);
+                }
+            };
+            System.setIn(routedIn);
+        }
+    }
+}